@@ -0,0 +1,58 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-18T10:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigNode.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text> A file of the archive shown on the tree of the
+ * viewer. </text>
+ */
+
+package GUI;
+
+import big.BigCompactIndex;
+import big.BigEntry;
+import java.io.File;
+
+/**
+ * The object that we will store on the treeview
+ */
+class BigNode{
+        final BigCompactIndex index;
+        final int number;
+        // show the whole path, not only the name (search results)
+        final boolean showPath;
+        // Create the node
+        BigNode(final BigCompactIndex index, final int number,
+                final boolean showPath){
+            this.index = index;
+            this.number = number;
+            this.showPath = showPath;
+        }
+
+        /**
+         * @return The entry of the archive, created on each call
+         */
+        BigEntry getEntry(){
+            return index.getEntry(number);
+        }
+
+        /**
+         * Used after downloading a big file
+         * @return The pointer the file on disk
+         */
+        File getExtractedFile(){
+            final String filename = index.getPath(number);
+            String lastName = filename.substring(filename.lastIndexOf("/")+1);
+            return new File(lastName);
+        }
+
+        @Override
+        public String toString(){
+            final String filename = index.getPath(number);
+            return showPath ? filename
+                    : filename.substring(filename.lastIndexOf("/")+1);
+        }
+}
@@ -0,0 +1,313 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-18T10:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigTreeModel.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ * Tree of folders and files of an archive, for the viewer. The entries
+ * come from a BigCompactIndex, the model only groups them by folder: a
+ * single pass over the paths gives each folder a number and counts its
+ * files, then the numbers of the files are ordered by folder. That costs
+ * 8 bytes per file, no object is created for a file until its folder is
+ * expanded. Only then the children of the folder are sorted by name and
+ * turned into nodes, the tree asks for them on expansion.
+ *
+ * When searching, the model is a flat list with the matching files. The
+ * matches are added while the search runs and the tree is told about them.
+ * </text>
+ */
+
+package GUI;
+
+import big.BigCompactIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+/**
+ * Lazy tree model over the entries of an archive.
+ */
+public class BigTreeModel implements TreeModel {
+
+    private final BigCompactIndex index;
+    private final Folder root;
+
+    // name and parent of each folder, the first one is the root
+    private final ArrayList<String> folderNames = new ArrayList<>();
+    private int[] folderParents = new int[64];
+    // the subfolders of each folder, in the order they were found
+    private int[] subfolderStarts, subfolders;
+    // the files of each folder, numbers of the index ordered by folder
+    private int[] fileStarts, files;
+    // the nodes of the search results, null when showing the folders
+    private final ArrayList<BigNode> results;
+    private final EventListenerList listeners = new EventListenerList();
+
+    /**
+     * A folder of the tree, its children are created on expansion.
+     */
+    static class Folder{
+        final int number;
+        final String name;
+        Object[] children = null;
+
+        Folder(final int number, final String name){
+            this.number = number;
+            this.name = name;
+        }
+
+        @Override
+        public String toString(){
+            return name;
+        }
+    }
+
+    /**
+     * Groups the entries of an index by folder.
+     * @param index The entries of the archive
+     * @param name  The name shown for the root
+     */
+    public BigTreeModel(final BigCompactIndex index, final String name) {
+        this.index = index;
+        this.root = new Folder(0, name);
+        this.results = null;
+        final HashMap<String, Integer> folders = new HashMap<>();
+        folders.put("", 0);
+        folderNames.add(name);
+        folderParents[0] = -1;
+        // the folder of each file, then ordered by folder
+        final int[] fileFolders = new int[index.size()];
+        for(int i = 0; i < fileFolders.length; i++){
+            final String path = index.getPath(i);
+            fileFolders[i] = getFolder(folders, path.substring(0,
+                    Math.max(0, path.lastIndexOf('/'))));
+        }
+        final int count = folderNames.size();
+        fileStarts = new int[count + 1];
+        files = new int[fileFolders.length];
+        for(final int folder : fileFolders){
+            fileStarts[folder + 1]++;
+        }
+        for(int i = 0; i < count; i++){
+            fileStarts[i + 1] += fileStarts[i];
+        }
+        final int[] next = Arrays.copyOf(fileStarts, count);
+        for(int i = 0; i < fileFolders.length; i++){
+            files[next[fileFolders[i]]++] = i;
+        }
+        // the same for the subfolders, the root has no parent
+        subfolderStarts = new int[count + 1];
+        subfolders = new int[count - 1];
+        for(int i = 1; i < count; i++){
+            subfolderStarts[folderParents[i] + 1]++;
+        }
+        for(int i = 0; i < count; i++){
+            subfolderStarts[i + 1] += subfolderStarts[i];
+        }
+        final int[] nextFolder = Arrays.copyOf(subfolderStarts, count);
+        for(int i = 1; i < count; i++){
+            subfolders[nextFolder[folderParents[i]]++] = i;
+        }
+        folderParents = null;
+    }
+
+    /**
+     * A flat list with some of the entries, used for the search results.
+     * More can be added while the search runs.
+     * @param index     The entries of the archive
+     * @param name      The name shown for the root
+     * @param matches   The numbers of the entries to show first
+     */
+    public BigTreeModel(final BigCompactIndex index, final String name,
+            final int[] matches) {
+        this.index = index;
+        this.root = new Folder(0, name);
+        this.results = new ArrayList<>();
+        folderNames.add(name);
+        fileStarts = new int[]{0, 0};
+        files = new int[0];
+        subfolderStarts = new int[]{0, 0};
+        subfolders = new int[0];
+        folderParents = null;
+        // keep the order of the index
+        for(final int number : matches){
+            results.add(new BigNode(index, number, true));
+        }
+    }
+
+    /**
+     * Adds entries at the end of the search results, must be called from
+     * the event thread.
+     * @param numbers   The numbers of the entries to add
+     */
+    public void addMatches(final int[] numbers){
+        if(numbers.length == 0){
+            return;
+        }
+        final int[] positions = new int[numbers.length];
+        final Object[] nodes = new Object[numbers.length];
+        for(int i = 0; i < numbers.length; i++){
+            positions[i] = results.size();
+            nodes[i] = new BigNode(index, numbers[i], true);
+            results.add((BigNode) nodes[i]);
+        }
+        final TreeModelEvent event = new TreeModelEvent(this,
+                new Object[]{root}, positions, nodes);
+        for(final TreeModelListener listener
+                : listeners.getListeners(TreeModelListener.class)){
+            listener.treeNodesInserted(event);
+        }
+    }
+
+    /**
+     * Gives the number of a folder, registering it and its parents when
+     * seen for the first time.
+     */
+    private int getFolder(final HashMap<String, Integer> folders,
+            final String folder){
+        final Integer known = folders.get(folder);
+        if(known != null){
+            return known;
+        }
+        final int separator = folder.lastIndexOf('/');
+        final int parent = getFolder(folders,
+                separator < 0 ? "" : folder.substring(0, separator));
+        final int number = folderNames.size();
+        folderNames.add(folder.substring(separator + 1));
+        if(number == folderParents.length){
+            folderParents = Arrays.copyOf(folderParents, number * 2);
+        }
+        folderParents[number] = parent;
+        folders.put(folder, number);
+        return number;
+    }
+
+    /**
+     * Creates the nodes of a folder: subfolders first, then the files,
+     * each group sorted by name.
+     */
+    private Object[] getChildren(final Folder folder){
+        if(results != null){
+            return results.toArray();
+        }
+        if(folder.children != null){
+            return folder.children;
+        }
+        final int number = folder.number;
+        final Folder[] folderNodes = new Folder[subfolderStarts[number + 1]
+                - subfolderStarts[number]];
+        for(int i = 0; i < folderNodes.length; i++){
+            final int child = subfolders[subfolderStarts[number] + i];
+            folderNodes[i] = new Folder(child, folderNames.get(child));
+        }
+        // the names are decoded once, not on every comparison
+        final int fileCount = fileStarts[number + 1] - fileStarts[number];
+        final String[] names = new String[fileCount];
+        final Integer[] order = new Integer[fileCount];
+        for(int i = 0; i < fileCount; i++){
+            final String path = index.getPath(files[fileStarts[number] + i]);
+            names[i] = path.substring(path.lastIndexOf('/') + 1);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>(){
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return names[o1].compareToIgnoreCase(names[o2]);
+            }
+        });
+        Arrays.sort(folderNodes, new Comparator<Folder>(){
+            @Override
+            public int compare(Folder o1, Folder o2) {
+                return o1.name.compareToIgnoreCase(o2.name);
+            }
+        });
+        final BigNode[] fileNodes = new BigNode[fileCount];
+        for(int i = 0; i < fileCount; i++){
+            fileNodes[i] = new BigNode(index, files[fileStarts[number] + order[i]],
+                    false);
+        }
+        final Object[] result = new Object[folderNodes.length + fileNodes.length];
+        System.arraycopy(folderNodes, 0, result, 0, folderNodes.length);
+        System.arraycopy(fileNodes, 0, result, folderNodes.length, fileNodes.length);
+        folder.children = result;
+        return result;
+    }
+
+    /**
+     * @return The number of files shown by this model
+     */
+    public int getFileCount(){
+        return results != null ? results.size() : files.length;
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(final Object parent, final int position) {
+        if(results != null){
+            return results.get(position);
+        }
+        return getChildren((Folder) parent)[position];
+    }
+
+    @Override
+    public int getChildCount(final Object parent) {
+        if(results != null){
+            return parent == root ? results.size() : 0;
+        }
+        if(parent instanceof Folder){
+            return getChildren((Folder) parent).length;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean isLeaf(final Object node) {
+        // folders are never leaves, no need to create their children yet
+        return node instanceof Folder == false;
+    }
+
+    @Override
+    public int getIndexOfChild(final Object parent, final Object child) {
+        if(parent instanceof Folder == false || child == null){
+            return -1;
+        }
+        if(results != null){
+            return results.indexOf(child);
+        }
+        final Object[] children = getChildren((Folder) parent);
+        for(int i = 0; i < children.length; i++){
+            if(children[i] == child){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void valueForPathChanged(final TreePath path, final Object newValue) {
+        // the archive is read-only
+    }
+
+    @Override
+    public void addTreeModelListener(final TreeModelListener listener) {
+        listeners.add(TreeModelListener.class, listener);
+    }
+
+    @Override
+    public void removeTreeModelListener(final TreeModelListener listener) {
+        listeners.remove(TreeModelListener.class, listener);
+    }
+}
@@ -13,24 +13,28 @@
 
 package GUI;
 
+import big.BigCompactIndex;
+import big.BigEntry;
+import big.BigTrigramIndex;
 import big.BigZip;
 import java.awt.Color;
 import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
 
 /**
  *
@@ -48,8 +52,15 @@ public class view extends javax.swing.JFrame {
     static final File lastFolder = new File(lastFolderFilename);
     private int counter;
     private BigZip big;
-    private DefaultTreeModel model;
-    private DefaultMutableTreeNode root;
+    // the index of the last archive, read again when the archive changes
+    private BigCompactIndex index;
+    private File indexSource;
+    private long indexLength;
+    // trigrams of the paths, to search without looking at every path
+    private BigTrigramIndex trigrams;
+    // reads the index or searches in the background, only the last one
+    // is shown
+    private SwingWorker<BigTreeModel, int[]> loader;
     private final String searchTerm = "Search files..";
       
     
@@ -433,39 +444,30 @@ public class view extends javax.swing.JFrame {
         
         doSettings();
         processLines(big);
-        doFinish();
     }
 
     /**
-     * Extract the data that we find interesting to show
-     * @param line 
+     * Provides the index of an archive, reading it only when it is not the
+     * one that was read before or when it changed since then.
+     * @param file  The .big file
+     * @return The compact index of the archive
+     * @throws IOException When the index can't be read
      */
-    private void processLine(final String line) {
-       // we expect a line on the following format:
-       //000000026039957 4b7b96a4c76fb230ac055cad145dbbfb346a5663 /github.com/trankas/opentesarenapp/WinArena/World.cpp
-       
-        // cut the string into pieces
-        final String 
-                signature = line.substring(16, 56),
-                filename  = line.substring(57);
-        
-        // do we have filtering active?
-        if(hasKeywordSearch){
-            // does the file name contain part of what we are looking for?
-            if(filename.toLowerCase().contains(keywordSearch)==false){
-                // nope, just keep moving to the next line
-                return;
-            }
+    private synchronized BigCompactIndex loadIndex(final File file) 
+            throws IOException {
+        final File fileIndex = new File(file.getParentFile(), 
+                file.getName() + "-index");
+        final long length = fileIndex.length();
+        if(index == null || file.equals(indexSource) == false 
+                || length != indexLength){
+            index = new BigCompactIndex(file);
+            indexSource = file;
+            indexLength = length;
+            // kept beside the index, built once and then updated
+            trigrams = new BigTrigramIndex(fileIndex, new File(
+                    file.getParentFile(), file.getName() + "-trigramidx"));
         }
-        
-        // convert the long number
-        final Long position = Long.parseLong(line.substring(00, 15));
-        // create the node
-        final BigNode node = new BigNode(position, signature, filename);
-        
-        // add it up to the tree view listing
-        root.add(new DefaultMutableTreeNode(node));
-        counter++;
+        return index;
     }
 
     /**
@@ -473,14 +475,10 @@ public class view extends javax.swing.JFrame {
      */
     private void doSettings() {
         File file = getLastFile();
-        this.setTitle(file.getName());
-        // get the tree object
-        model = (DefaultTreeModel)tree.getModel();
-        root = (DefaultMutableTreeNode)model.getRoot();
+        this.setTitle(file.getName() + " (loading)");
         
         // reset the treeview and counter
-        root.removeAllChildren();
-        model.setRoot(root);
+        tree.setModel(null);
         counter = 0;
         // this is needed to ensure we get line-wrapping
         jScrollPane2.setViewportView(text);
@@ -496,33 +494,119 @@ public class view extends javax.swing.JFrame {
      * @param big 
      */
     private void processLines(BigZip big) {
-        // list the contents
-        BufferedReader reader;
-        try {
-            // open up the index file
-            FileReader fileReader = new FileReader(big.getFileIndex());
-            reader = new BufferedReader(fileReader);
-            // avoid the signature line
-            reader.readLine();
-            // read the first line of data
-            String line = reader.readLine();
+        final File file = big.getFile();
+        final boolean filtered = hasKeywordSearch;
+        final String keyword = keywordSearch;
+        // a new search replaces the one still running
+        if(loader != null){
+            loader.cancel(false);
+        }
+        // read the index away from the event thread, the window stays usable
+        loader = new SwingWorker<BigTreeModel, int[]>(){
+            // the search results, shown as soon as the first ones come
+            private BigTreeModel results;
             
-            // iterate all lines?
-            while (line != null) {
-                // get this line of data handled
-                processLine(line);
-                // read the line afterwards
-                line = reader.readLine();
-            } 
-        
-            // close the streams
-            reader.close();
-            fileReader.close();
+            @Override
+            protected BigTreeModel doInBackground() throws Exception {
+                final BigCompactIndex current = loadIndex(file);
+                if(filtered == false){
+                    // folders are shown and their files added when expanded
+                    return new BigTreeModel(current, file.getName());
+                }
+                results = new BigTreeModel(current, file.getName(), new int[0]);
+                search(current, getTrigrams(), keyword);
+                return results;
+            }
             
-        }catch (Exception e){
-            System.err.println("V458 - Something went wrong while reading the archive");
-        }
-        
+            /**
+             * Finds the paths with the keyword, the candidates come from
+             * the trigrams and are confirmed against the path.
+             */
+            private void search(final BigCompactIndex current, 
+                    final BigTrigramIndex sidecar, final String keyword) 
+                    throws IOException{
+                sidecar.refresh();
+                final int runs = sidecar.getRunCount();
+                for(int run = 0; run < runs && isCancelled() == false; run++){
+                    final long[] candidates = sidecar.find(keyword, run);
+                    if(candidates == null){
+                        // too short for trigrams, look at every path
+                        scan(current, keyword);
+                        return;
+                    }
+                    int[] matches = new int[candidates.length];
+                    int count = 0;
+                    for(final long ordinal : candidates){
+                        final int number = current.findByOrdinal(ordinal);
+                        if(number >= 0 && current.getPath(number)
+                                .toLowerCase(Locale.ROOT).contains(keyword)){
+                            matches[count++] = number;
+                        }
+                    }
+                    publish(java.util.Arrays.copyOf(matches, count));
+                }
+            }
+            
+            /**
+             * Looks at every path, in steps so that the results are shown
+             * as they come.
+             */
+            private void scan(final BigCompactIndex current, final String keyword){
+                for(int start = 0; start < current.size() 
+                        && isCancelled() == false; start += 65536){
+                    final int end = Math.min(current.size(), start + 65536);
+                    int[] matches = new int[end - start];
+                    int count = 0;
+                    for(int i = start; i < end; i++){
+                        if(current.getPath(i).toLowerCase(Locale.ROOT)
+                                .contains(keyword)){
+                            matches[count++] = i;
+                        }
+                    }
+                    publish(java.util.Arrays.copyOf(matches, count));
+                }
+            }
+            
+            @Override
+            protected void process(final List<int[]> chunks) {
+                if(isCancelled() || loader != this){
+                    return;
+                }
+                if(tree.getModel() != results){
+                    tree.setModel(results);
+                }
+                for(final int[] chunk : chunks){
+                    results.addMatches(chunk);
+                }
+            }
+
+            @Override
+            protected void done() {
+                if(isCancelled() || loader != this){
+                    return;
+                }
+                try {
+                    final BigTreeModel model = get();
+                    counter = model.getFileCount();
+                    if(tree.getModel() != model){
+                        tree.setModel(model);
+                    }
+                    doFinish();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    System.err.println("V458 - Something went wrong while reading the archive");
+                }
+            }
+        };
+        loader.execute();
+    }
+
+    /**
+     * @return The trigrams of the archive whose index was loaded last
+     */
+    private synchronized BigTrigramIndex getTrigrams() {
+        return trigrams;
     }
 
     /**
@@ -538,8 +622,6 @@ public class view extends javax.swing.JFrame {
                 + ")"
         );
         
-        // reload the treeview
-        model.reload(root);
         big.close();
     }
 
@@ -547,13 +629,15 @@ public class view extends javax.swing.JFrame {
      * This method is triggered when the user clicks on the tree view
      */
     private synchronized void getSelectedTreeNode() {
-        DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) tree.getSelectionPath().getLastPathComponent();
-        if(treeNode == null){
+        final TreePath selection = tree.getSelectionPath();
+        // folders have nothing to show
+        if(selection == null 
+                || selection.getLastPathComponent() instanceof BigNode == false){
             buttonSave.setEnabled(false);
             return;
         }
         // get the associated object
-        BigNode result = (BigNode) treeNode.getUserObject();
+        BigNode result = (BigNode) selection.getLastPathComponent();
         buttonSave.setEnabled(true);
             
         processClick(result);
@@ -569,15 +653,16 @@ public class view extends javax.swing.JFrame {
             return;
         }
         
-        // extract the file to disk
-        final String content = big.extractBytesToRAM(result.positionStart);
+        // extract the file to memory, also from solid blocks and segments
+        final BigEntry entry = result.getEntry();
+        final String content = big.extractBytesToRAM(entry);
         
         // output to screen
         text.setText(content);
         // place the text back on top
         text.setCaretPosition(0);
         
-        System.out.println("Loaded " + result.filename);
+        System.out.println("Loaded " + entry.getPath());
     }
 
     /**
@@ -642,6 +727,12 @@ public class view extends javax.swing.JFrame {
             String temp = search.getText().replace(searchTerm, "");
             search.setText(temp);
         }
+        
+        // search while typing, each key cancels the search before
+        if(evt.getID() == KeyEvent.KEY_RELEASED && search.getText()
+                .toLowerCase(Locale.ROOT).equals(keywordSearch) == false){
+            launchSearch();
+        }
     }
 
     /**
@@ -656,10 +747,15 @@ public class view extends javax.swing.JFrame {
         
         // enable the search
         hasKeywordSearch = true;
-        keywordSearch = search.getText().toLowerCase();
+        keywordSearch = search.getText().toLowerCase(Locale.ROOT);
         
-        // process all files again
-        displayContents();
+        // the archive is only opened again when nothing was shown yet
+        if(big == null){
+            displayContents();
+            return;
+        }
+        doSettings();
+        processLines(big);
     }
     
 
@@ -679,8 +775,7 @@ public class view extends javax.swing.JFrame {
      */
     private void saveSelectedFile() {
         // get the tree node
-        DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) tree.getSelectionPath().getLastPathComponent();
-        BigNode result = (BigNode) treeNode.getUserObject();
+        BigNode result = (BigNode) tree.getSelectionPath().getLastPathComponent();
         // prepare the file
         File output = result.getExtractedFile();
         // save the text from the window to the file
@@ -696,35 +791,3 @@ public class view extends javax.swing.JFrame {
     
     
 }
-
-
-// the object that we will store on the treeview
-class BigNode{
-        final Long
-                positionStart;
-        public Long
-                positionEnd;
-        final String 
-                signature,
-                filename;
-        // Create the node
-        BigNode(final long position, final String signature, final String filename){
-            this.positionStart = position;
-            this.signature = signature;
-            this.filename = filename;
-        }
-        
-        /**
-         * Used after downloading a big file
-         * @return The pointer the file on disk
-         */
-        File getExtractedFile(){
-            String lastName = filename.substring(filename.lastIndexOf("/")+1);
-            return new File(lastName);
-        }
-        
-        @Override
-        public String toString(){
-            return filename;
-        }
-}
\ No newline at end of file
@@ -0,0 +1,58 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T18:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigAdaptiveSelector.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Files that are compressed already (jars, images, archives) don't get
+ * smaller when compressed again, the time is wasted. This selector
+ * compresses the first bytes of each file with the fastest level and only
+ * compresses the whole file when the sample became small enough, otherwise
+ * the file is stored as it is.
+ * </text>
+ */
+
+package big;
+
+/**
+ * Stores files that don't compress well.
+ */
+public class BigAdaptiveSelector implements BigCodecSelector {
+
+    // how many bytes are compressed to test the file
+    public static final int sampleSize = 4096;
+
+    private final BigCodec
+            compressed,
+            stored;
+    private final double maxRatio;
+
+    /**
+     * @param compressed    The codec for files that compress well
+     * @param stored        The codec for the other files
+     * @param maxRatio      The compressed size of the sample divided by its
+     *                      original size must be below this value to use
+     *                      the compressed codec, e.g. 0.9
+     */
+    public BigAdaptiveSelector(final BigCodec compressed, final BigCodec stored,
+            final double maxRatio) {
+        this.compressed = compressed;
+        this.stored = stored;
+        this.maxRatio = maxRatio;
+    }
+
+    @Override
+    public BigCodec select(final String path, final byte[] sample, final int length) {
+        final int size = Math.min(length, sampleSize);
+        // nothing to measure
+        if(size == 0){
+            return compressed;
+        }
+        final int result = BigDeflate.measure(sample, size);
+        return result < size * maxRatio ? compressed : stored;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T15:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigBlock.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * A file that was already compressed and hashed, waiting to be appended to
+ * the BIG archive. Preparing blocks doesn't touch the archive, so many of
+ * them can be prepared at the same time on different threads while a single
+ * thread appends the finished ones.
+ * </text>
+ */
+
+package big;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Compressed content, signature and path of one file.
+ */
+public class BigBlock {
+
+    private final File file;
+    private final String
+            path,
+            signature,
+            codec;
+    // the compressed data, without the magic signature
+    private final byte[] data;
+
+    private BigBlock(final File file, final String path, final String signature,
+            final String codec, final byte[] data) {
+        this.file = file;
+        this.path = path;
+        this.signature = signature;
+        this.codec = codec;
+        this.data = data;
+    }
+
+    /**
+     * Compresses a file and calculates its SHA1 signature, the file is
+     * only read once.
+     * @param file          The file to compress
+     * @param path          The path/name that will be written on the index
+     * @param selector      Chooses the codec from the first bytes
+     * @param statistics    Where the time spent on the codec is counted
+     * @return The prepared block
+     * @throws IOException When the file couldn't be read or compressed
+     */
+    public static BigBlock create(final File file, final String path,
+            final BigCodecSelector selector, final BigCodecStatistics statistics)
+            throws IOException{
+        final ByteArrayOutputStream outputZipStream = new ByteArrayOutputStream(
+                (int) Math.min(Integer.MAX_VALUE - 8, Math.max(64, file.length() / 2)));
+        final MessageDigest hash;
+        try {
+            hash = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        final BigCodec codec;
+        final InputStream stream = new FileInputStream(file);
+        try {
+            // the first bytes tell which codec suits this file
+            final byte[] buffer = new byte[16384];
+            int length = BigCodecs.fill(stream, buffer);
+            codec = selector.select(path, buffer, length);
+            final long time = System.nanoTime();
+            long total = 0;
+            final OutputStream logical_zip = codec.create(outputZipStream, file.getName());
+            // compress and calculate the SHA1 signature on the same loop
+            while (length > 0) {
+                total += length;
+                logical_zip.write(buffer, 0, length);
+                hash.update(buffer, 0, length);
+                length = stream.read(buffer);
+            }
+            logical_zip.close();
+            statistics.addWrite(codec.getName(), total, outputZipStream.size(), 
+                    System.nanoTime() - time);
+        } finally {
+            stream.close();
+        }
+        final String signature = utils.hashing.checksum.convertHash(hash.digest());
+        return new BigBlock(file, path, signature, codec.getName(), 
+                outputZipStream.toByteArray());
+    }
+
+    /**
+     * Reads a small file and calculates its SHA1 signature without 
+     * compressing it, the content is packed later on a solid block.
+     * @param file  The file to read
+     * @param path  The path/name that will be written on the index
+     * @return The prepared block, without codec
+     * @throws IOException When the file couldn't be read
+     */
+    public static BigBlock read(final File file, final String path)
+            throws IOException{
+        final byte[] content = new byte[(int) file.length()];
+        final InputStream stream = new FileInputStream(file);
+        try {
+            if(BigCodecs.fill(stream, content) < content.length){
+                throw new IOException("BIG-BLOCK-114 - File became smaller: " 
+                        + file.getAbsolutePath());
+            }
+        } finally {
+            stream.close();
+        }
+        final MessageDigest hash;
+        try {
+            hash = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        final String signature = utils.hashing.checksum.convertHash(hash.digest(content));
+        return new BigBlock(file, path, signature, null, content);
+    }
+
+    /**
+     * @return The file on disk that was compressed
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The path/name that will be written on the index
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return The SHA1 signature of the uncompressed content
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return The name of the codec that compressed the content, null when
+     * the content is not compressed yet (solid blocks)
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return The compressed content, header of the codec included, or 
+     * the original content when there is no codec
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T11:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigBufferInputStream.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text> Exposes a ByteBuffer as an InputStream so that the
+ * compressed bytes can be given to the decompressor without copies. </text>
+ */
+
+package big;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the remaining bytes of a ByteBuffer (heap or direct).
+ */
+public class BigBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer The bytes between position and limit are read, the
+     * position of the original buffer is not changed.
+     */
+    public BigBufferInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+        if(buffer.hasRemaining() == false){
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+        if(length == 0){
+            return 0;
+        }
+        if(buffer.hasRemaining() == false){
+            return -1;
+        }
+        final int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(final long count) {
+        final int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
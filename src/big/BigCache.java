@@ -0,0 +1,267 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T13:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigCache.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Keeps the decompressed content of recently read entries in memory, so
+ * that reading the same file again costs neither disk access nor inflating
+ * the zip container again.
+ *
+ * Entries are identified by the offset of their block inside the BIG file
+ * and the cache is limited by the number of bytes that it holds, not by the
+ * number of entries. When the budget is exceeded the least recently used
+ * entries are removed first. To reduce contention between threads the
+ * entries are split across a few segments, each with its own lock, while
+ * the budget is shared by all of them: every read marks the entry with a
+ * global counter and the segment whose eldest entry has the lowest mark is
+ * the one that gives up an entry.
+ *
+ * Since the key is an offset, a cache must only be used with one archive.
+ * </text>
+ */
+
+package big;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-aware LRU cache of decompressed entries.
+ */
+public class BigCache {
+
+    // number of independent segments, must be a power of two
+    private static final int segmentCount = 16;
+
+    private final Segment[] segments = new Segment[segmentCount];
+    private final long maxBytes;
+    // bytes kept on all the segments
+    private final AtomicLong size = new AtomicLong();
+    // orders the reads of all segments
+    private final AtomicLong clock = new AtomicLong();
+
+    // statistics
+    private final AtomicLong
+            hits = new AtomicLong(),
+            misses = new AtomicLong(),
+            evictions = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     * @param maxBytes How many bytes of content can be kept in memory. A
+     * single entry can use the whole budget, bigger entries are not kept.
+     */
+    public BigCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+        for(int i = 0; i < segmentCount; i++){
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Gets the content of an entry when available.
+     * @param position  The offset of the entry inside the BIG file
+     * @return The decompressed bytes or null when not cached. The array is
+     * shared, it must not be modified.
+     */
+    public byte[] get(final long position){
+        final byte[] result = getSegment(position).get(position);
+        if(result == null){
+            misses.incrementAndGet();
+        }else{
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Places the content of an entry on the cache. Entries bigger than the
+     * whole budget are not kept.
+     * @param position  The offset of the entry inside the BIG file
+     * @param content   The decompressed bytes, must not be modified afterwards
+     */
+    public void put(final long position, final byte[] content){
+        if(content == null || content.length > maxBytes){
+            return;
+        }
+        if(size.addAndGet(getSegment(position).put(position, content)) > maxBytes){
+            evict();
+        }
+    }
+
+    /**
+     * Removes the least recently used entries of all segments until the
+     * budget is respected.
+     */
+    private void evict(){
+        while(size.get() > maxBytes){
+            Segment oldest = null;
+            long oldestMark = Long.MAX_VALUE;
+            for(final Segment segment : segments){
+                final long mark = segment.getEldestMark();
+                if(mark < oldestMark){
+                    oldestMark = mark;
+                    oldest = segment;
+                }
+            }
+            if(oldest == null){
+                return;
+            }
+            final long removed = oldest.removeEldest();
+            if(removed >= 0){
+                size.addAndGet(-removed);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries, the statistics are kept.
+     */
+    public void clear(){
+        for(final Segment segment : segments){
+            size.addAndGet(-segment.clear());
+        }
+    }
+
+    private Segment getSegment(final long position){
+        // spread the bits, offsets of neighbour entries are quite similar
+        long hash = position * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return segments[(int) hash & (segmentCount - 1)];
+    }
+
+    /**
+     * @return How many times the content was found on the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return How many times the content was not found on the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return How many entries were removed to respect the budget
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The number of bytes currently kept on the cache
+     */
+    public long getSize(){
+        return size.get();
+    }
+
+    /**
+     * @return The maximum number of bytes that we keep on the cache
+     */
+    public long getMaxSize() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The percentage of reads that were served from the cache
+     */
+    public double getHitRatio(){
+        final long total = hits.get() + misses.get();
+        return total == 0 ? 0 : hits.get() * 100.0 / total;
+    }
+
+    @Override
+    public String toString(){
+        return "hits: " + getHits()
+                + ", misses: " + getMisses()
+                + String.format(" (%.1f%%)", getHitRatio())
+                + ", evictions: " + getEvictions()
+                + ", size: " + getSize() + "/" + maxBytes + " bytes";
+    }
+
+    /**
+     * The content of an entry and when it was last read.
+     */
+    private static final class Item {
+        final byte[] content;
+        long mark;
+
+        Item(final byte[] content, final long mark) {
+            this.content = content;
+            this.mark = mark;
+        }
+    }
+
+    /**
+     * One part of the cache, protected by its own lock.
+     */
+    private class Segment {
+
+        // access order, the eldest entry is the least recently used
+        private final LinkedHashMap<Long, Item> map
+                = new LinkedHashMap<>(64, 0.75f, true);
+
+        synchronized byte[] get(final long position){
+            final Item item = map.get(position);
+            if(item == null){
+                return null;
+            }
+            item.mark = clock.incrementAndGet();
+            return item.content;
+        }
+
+        /**
+         * @return How many bytes were added to the segment
+         */
+        synchronized long put(final long position, final byte[] content){
+            final Item previous = map.put(position,
+                    new Item(content, clock.incrementAndGet()));
+            return previous == null ? content.length
+                    : content.length - previous.content.length;
+        }
+
+        /**
+         * @return The mark of the least recently used entry, the highest
+         * value possible when the segment is empty
+         */
+        synchronized long getEldestMark(){
+            final Iterator<Item> iterator = map.values().iterator();
+            return iterator.hasNext() ? iterator.next().mark : Long.MAX_VALUE;
+        }
+
+        /**
+         * @return The size of the entry that was removed, -1 when empty
+         */
+        synchronized long removeEldest(){
+            final Iterator<Item> iterator = map.values().iterator();
+            if(iterator.hasNext() == false){
+                return -1;
+            }
+            final long result = iterator.next().content.length;
+            iterator.remove();
+            return result;
+        }
+
+        /**
+         * @return The number of bytes that were removed
+         */
+        synchronized long clear(){
+            long result = 0;
+            for(final Item item : map.values()){
+                result += item.content.length;
+            }
+            map.clear();
+            return result;
+        }
+    }
+}
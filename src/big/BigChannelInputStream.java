@@ -0,0 +1,120 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T14:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigChannelInputStream.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Reads a range of bytes from a FileChannel as an InputStream. The reads are
+ * positional, so the stream doesn't move the position of the channel and
+ * many streams can read from the same channel at the same time. Closing the
+ * stream doesn't close the channel.
+ *
+ * Used to give the compressed bytes of an entry to the decompressor without
+ * loading the whole block into memory or copying it to a temporary file.
+ * </text>
+ */
+
+package big;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bounded stream over a region of a channel.
+ */
+public class BigChannelInputStream extends InputStream {
+
+    private static final int bufferSize = 8192;
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+    // bytes read from the channel that were not yet consumed
+    private final ByteBuffer buffer;
+
+    /**
+     * @param channel   The channel to read, remains open after the stream
+     * @param start     The first byte to read
+     * @param end       The position after the last byte to read
+     */
+    public BigChannelInputStream(final FileChannel channel, final long start,
+            final long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+        this.buffer = ByteBuffer.allocate((int) Math.max(0,
+                Math.min(bufferSize, end - start)));
+        // nothing was read yet
+        buffer.flip();
+    }
+
+    /**
+     * Fills the buffer when it is empty.
+     * @return False when there is nothing left to read
+     */
+    private boolean fill() throws IOException{
+        if(buffer.hasRemaining()){
+            return true;
+        }
+        if(position >= end){
+            return false;
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+        while(buffer.hasRemaining()){
+            final int count = channel.read(buffer, position);
+            if(count < 0){
+                throw new IOException("BIG-STREAM-73 - Unexpected end of file at "
+                        + position);
+            }
+            position += count;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(fill() == false){
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        if(length == 0){
+            return 0;
+        }
+        if(fill() == false){
+            return -1;
+        }
+        final int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(final long count) {
+        if(count <= 0){
+            return 0;
+        }
+        final int fromBuffer = (int) Math.min(count, buffer.remaining());
+        buffer.position(buffer.position() + fromBuffer);
+        final long fromChannel = Math.min(count - fromBuffer, end - position);
+        position += fromChannel;
+        return fromBuffer + fromChannel;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, buffer.remaining() + end - position);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T18:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigCodec.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * The format used to store the content of one binary block. Every block
+ * begins with the identifier of its codec, so the blocks of an archive can
+ * use different codecs and are still read without looking at the index.
+ *
+ * Blocks inside a zip container begin with the letter "P" of the zip
+ * header, the other codecs write their identifier as the first byte.
+ * </text>
+ */
+
+package big;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses and decompresses the binary blocks of an archive.
+ */
+public interface BigCodec {
+
+    /**
+     * @return The first byte of each block written with this codec
+     */
+    byte getId();
+
+    /**
+     * @return The name written on the index, e.g. "stored"
+     */
+    String getName();
+
+    /**
+     * Starts a new block on the given stream, the header is written first.
+     * @param target    Where the block is written, it is not closed
+     * @param name      The name of the file that is stored
+     * @return The stream that receives the uncompressed content, closing it
+     * finishes the block
+     * @throws IOException When the block couldn't be started
+     */
+    OutputStream create(OutputStream target, String name) throws IOException;
+
+    /**
+     * Decompresses a block that is kept in memory.
+     * @param block The bytes of the block, header included, from position
+     *              to limit
+     * @return The uncompressed content
+     * @throws IOException When the block is not valid
+     */
+    byte[] decompress(ByteBuffer block) throws IOException;
+
+    /**
+     * Opens a block, the bytes are decompressed while they are read.
+     * @param block The bytes of the block, header included
+     * @return The stream with the uncompressed content, closing it also
+     * closes the block stream
+     * @throws IOException When the block is not valid
+     */
+    InputStream open(InputStream block) throws IOException;
+}
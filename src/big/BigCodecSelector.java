@@ -0,0 +1,29 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T18:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigCodecSelector.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text> Chooses the codec of each file that is written to
+ * the archive. Selectors are called from many threads when a folder is
+ * added in parallel. </text>
+ */
+
+package big;
+
+/**
+ * Picks a codec for a file based on its path and first bytes.
+ */
+public interface BigCodecSelector {
+
+    /**
+     * @param path      The path/name written on the index
+     * @param sample    The first bytes of the content
+     * @param length    How many bytes of the sample are valid, smaller than
+     *                  the sample when the content is short
+     * @return The codec that stores this file
+     */
+    BigCodec select(String path, byte[] sample, int length);
+}
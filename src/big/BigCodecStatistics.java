@@ -0,0 +1,166 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T18:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigCodecStatistics.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text> Counts how many files each codec has written and
+ * read, how many bytes went in and out and how much time was spent. The
+ * counters are shared by all the threads that use the archive. </text>
+ */
+
+package big;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Usage of each codec.
+ */
+public class BigCodecStatistics {
+
+    // positions of the counters of each codec
+    private static final int
+            writes = 0,
+            bytesIn = 1,
+            bytesOut = 2,
+            writeTime = 3,
+            reads = 4,
+            readBytes = 5,
+            readTime = 6;
+
+    private final Map<String, long[]> counters = new TreeMap<>();
+
+    private long[] getCounters(final String codec){
+        long[] result = counters.get(codec);
+        if(result == null){
+            result = new long[7];
+            counters.put(codec, result);
+        }
+        return result;
+    }
+
+    /**
+     * Counts a file that was written.
+     * @param codec         The name of the codec
+     * @param sizeIn        The uncompressed size
+     * @param sizeOut       The size of the block
+     * @param nanoseconds   Time spent compressing
+     */
+    public synchronized void addWrite(final String codec, final long sizeIn,
+            final long sizeOut, final long nanoseconds){
+        final long[] values = getCounters(codec);
+        values[writes]++;
+        values[bytesIn] += sizeIn;
+        values[bytesOut] += sizeOut;
+        values[writeTime] += nanoseconds;
+    }
+
+    /**
+     * Counts a file that was read.
+     * @param codec         The name of the codec
+     * @param size          The uncompressed size
+     * @param nanoseconds   Time spent decompressing
+     */
+    public synchronized void addRead(final String codec, final long size,
+            final long nanoseconds){
+        final long[] values = getCounters(codec);
+        values[reads]++;
+        values[readBytes] += size;
+        values[readTime] += nanoseconds;
+    }
+
+    /**
+     * @return The names of the codecs that were used
+     */
+    public synchronized List<String> getCodecs(){
+        return new ArrayList<>(counters.keySet());
+    }
+
+    private synchronized long get(final String codec, final int index){
+        final long[] values = counters.get(codec);
+        return values == null ? 0 : values[index];
+    }
+
+    /**
+     * @param codec The name of the codec
+     * @return How many files were written with this codec
+     */
+    public long getWrites(final String codec){
+        return get(codec, writes);
+    }
+
+    /**
+     * @param codec The name of the codec
+     * @return The uncompressed bytes given to this codec
+     */
+    public long getBytesIn(final String codec){
+        return get(codec, bytesIn);
+    }
+
+    /**
+     * @param codec The name of the codec
+     * @return The bytes written by this codec
+     */
+    public long getBytesOut(final String codec){
+        return get(codec, bytesOut);
+    }
+
+    /**
+     * @param codec The name of the codec
+     * @return Nanoseconds spent writing with this codec
+     */
+    public long getWriteTime(final String codec){
+        return get(codec, writeTime);
+    }
+
+    /**
+     * @param codec The name of the codec
+     * @return How many files were read with this codec
+     */
+    public long getReads(final String codec){
+        return get(codec, reads);
+    }
+
+    /**
+     * @param codec The name of the codec
+     * @return Nanoseconds spent reading with this codec
+     */
+    public long getReadTime(final String codec){
+        return get(codec, readTime);
+    }
+
+    /**
+     * Sets all the counters back to zero.
+     */
+    public synchronized void clear(){
+        counters.clear();
+    }
+
+    /**
+     * @return One line per codec, e.g.
+     * "stored: 12 writes, 340000 -> 340012 bytes (100%), 3 ms; 4 reads, 1 ms"
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder result = new StringBuilder();
+        for(final Map.Entry<String, long[]> entry : counters.entrySet()){
+            final long[] values = entry.getValue();
+            final long ratio = values[bytesIn] == 0 ? 0
+                    : values[bytesOut] * 100 / values[bytesIn];
+            result.append(entry.getKey()).append(": ")
+                    .append(values[writes]).append(" writes, ")
+                    .append(values[bytesIn]).append(" -> ")
+                    .append(values[bytesOut]).append(" bytes (")
+                    .append(ratio).append("%), ")
+                    .append(values[writeTime] / 1000000).append(" ms; ")
+                    .append(values[reads]).append(" reads, ")
+                    .append(values[readTime] / 1000000).append(" ms\n");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T18:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigCodecs.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * The codecs known to an archive, found by the first byte of each block.
+ * The zip, stored and deflate codecs are always known, the dictionary codec
+ * must be registered with the same dictionary that was used for writing.
+ *
+ * The time spent on each codec is counted on the statistics, so that the
+ * codec selection can be tuned.
+ * </text>
+ */
+
+package big;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Registry of the codecs used to read and write the blocks of an archive.
+ */
+public class BigCodecs {
+
+    // identifiers written as the first byte of each block
+    public static final byte
+            idStored = 0,
+            idDeflate = 1,
+            idDictionary = 2,
+            idZip = 'P';
+
+    private final BigCodec[] codecs = new BigCodec[256];
+    private final BigCodecStatistics statistics = new BigCodecStatistics();
+
+    public BigCodecs() {
+        register(zip());
+        register(stored());
+        register(deflate(Deflater.DEFAULT_COMPRESSION));
+    }
+
+    /**
+     * Adds a codec, replacing the one with the same identifier.
+     * @param codec The codec to add
+     */
+    public synchronized void register(final BigCodec codec){
+        codecs[codec.getId() & 0xff] = codec;
+    }
+
+    /**
+     * @param id    The first byte of a block
+     * @return The codec that reads the block
+     * @throws IOException When no codec is known for this identifier
+     */
+    public synchronized BigCodec get(final int id) throws IOException{
+        final BigCodec codec = codecs[id & 0xff];
+        if(codec == null){
+            throw new IOException("BIG-CODECS-72 - Unknown codec: " + (id & 0xff));
+        }
+        return codec;
+    }
+
+    /**
+     * @param name  The name of a codec, as written on the index
+     * @return The codec or null when no codec has this name
+     */
+    public synchronized BigCodec get(final String name){
+        for(final BigCodec codec : codecs){
+            if(codec != null && codec.getName().equals(name)){
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The time and bytes spent on each codec
+     */
+    public BigCodecStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Decompresses a block with the codec given on its first byte.
+     * @param block The bytes of the block, from position to limit
+     * @return The uncompressed content
+     * @throws IOException When the block is not valid
+     */
+    public byte[] decompress(final ByteBuffer block) throws IOException{
+        if(block.hasRemaining() == false){
+            throw new IOException("BIG-CODECS-103 - Empty block");
+        }
+        final BigCodec codec = get(block.get(block.position()));
+        final long time = System.nanoTime();
+        final byte[] result = codec.decompress(block);
+        statistics.addRead(codec.getName(), result.length, System.nanoTime() - time);
+        return result;
+    }
+
+    /**
+     * Opens a block with the codec given on its first byte.
+     * @param block The bytes of the block
+     * @return The stream with the uncompressed content, closing it also
+     * closes the block stream
+     * @throws IOException When the block is not valid
+     */
+    public InputStream open(final InputStream block) throws IOException{
+        final PushbackInputStream input = new PushbackInputStream(block, 1);
+        final int id = input.read();
+        if(id < 0){
+            throw new IOException("BIG-CODECS-121 - Empty block");
+        }
+        input.unread(id);
+        return get(id).open(input);
+    }
+
+    /**
+     * Reads from a stream until the buffer is full or the stream ends.
+     * @return How many bytes were read
+     */
+    static int fill(final InputStream stream, final byte[] buffer) throws IOException{
+        int count = 0;
+        int length;
+        while(count < buffer.length
+                && (length = stream.read(buffer, count, buffer.length - count)) > 0){
+            count += length;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the header of a block, it must be complete.
+     */
+    private static void readHeader(final InputStream block, final byte[] header)
+            throws IOException{
+        if(fill(block, header) < header.length){
+            throw new IOException("BIG-CODECS-146 - Incomplete header");
+        }
+    }
+
+    /**
+     * @return The block after a header of the given length
+     */
+    private static ByteBuffer skip(final ByteBuffer block, final int length){
+        final ByteBuffer body = block.duplicate();
+        body.position(block.position() + length);
+        return body;
+    }
+
+    /**
+     * Files inside a zip container, they can be opened with any zip tool
+     * and keep the original file name. This is the default codec.
+     * @return The codec
+     */
+    public static BigCodec zip(){
+        return new BigCodec() {
+            @Override
+            public byte getId() {
+                return idZip;
+            }
+
+            @Override
+            public String getName() {
+                return "zip";
+            }
+
+            @Override
+            public OutputStream create(final OutputStream target, final String name)
+                    throws IOException {
+                return big.zip.create(target, name);
+            }
+
+            @Override
+            public byte[] decompress(final ByteBuffer block) throws IOException {
+                return big.zip.decompress(block);
+            }
+
+            @Override
+            public InputStream open(final InputStream block) throws IOException {
+                return big.zip.open(block);
+            }
+        };
+    }
+
+    /**
+     * Content kept without compression, for files that are compressed
+     * already (archives, images) and would not get any smaller.
+     * @return The codec
+     */
+    public static BigCodec stored(){
+        return new BigCodec() {
+            @Override
+            public byte getId() {
+                return idStored;
+            }
+
+            @Override
+            public String getName() {
+                return "stored";
+            }
+
+            @Override
+            public OutputStream create(final OutputStream target, final String name)
+                    throws IOException {
+                target.write(idStored);
+                return new BigCountingOutputStream(target);
+            }
+
+            @Override
+            public byte[] decompress(final ByteBuffer block) throws IOException {
+                final ByteBuffer body = skip(block, 1);
+                final byte[] result = new byte[body.remaining()];
+                body.get(result);
+                return result;
+            }
+
+            @Override
+            public InputStream open(final InputStream block) throws IOException {
+                readHeader(block, new byte[1]);
+                return block;
+            }
+        };
+    }
+
+    /**
+     * Raw deflate without a zip container, smaller and faster than zip.
+     * @param level The compression level, 0 to 9 or -1 for the default
+     * @return The codec
+     */
+    public static BigCodec deflate(final int level){
+        return new BigCodec() {
+            @Override
+            public byte getId() {
+                return idDeflate;
+            }
+
+            @Override
+            public String getName() {
+                return "deflate";
+            }
+
+            @Override
+            public OutputStream create(final OutputStream target, final String name)
+                    throws IOException {
+                target.write(idDeflate);
+                return BigDeflate.create(target, level, null);
+            }
+
+            @Override
+            public byte[] decompress(final ByteBuffer block) throws IOException {
+                return BigDeflate.decompress(skip(block, 1), null);
+            }
+
+            @Override
+            public InputStream open(final InputStream block) throws IOException {
+                readHeader(block, new byte[1]);
+                return BigDeflate.open(block, null);
+            }
+        };
+    }
+
+    /**
+     * Raw deflate with a preset dictionary, small files that share a lot
+     * of text with the dictionary become much smaller. The header keeps the
+     * checksum of the dictionary, blocks written with another dictionary
+     * are refused.
+     * @param dictionary    The preset dictionary, up to 32KB are used
+     * @param level         The compression level, 0 to 9 or -1 for the default
+     * @return The codec
+     */
+    public static BigCodec dictionary(final byte[] dictionary, final int level){
+        final Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        final int checksum = (int) adler.getValue();
+        final byte[] header = ByteBuffer.allocate(5)
+                .put(idDictionary).putInt(checksum).array();
+        return new BigCodec() {
+            @Override
+            public byte getId() {
+                return idDictionary;
+            }
+
+            @Override
+            public String getName() {
+                return "dictionary";
+            }
+
+            @Override
+            public OutputStream create(final OutputStream target, final String name)
+                    throws IOException {
+                target.write(header);
+                return BigDeflate.create(target, level, dictionary);
+            }
+
+            @Override
+            public byte[] decompress(final ByteBuffer block) throws IOException {
+                if(block.remaining() < header.length
+                        || block.getInt(block.position() + 1) != checksum){
+                    throw new IOException("BIG-CODECS-287 - Block was written with another dictionary");
+                }
+                return BigDeflate.decompress(skip(block, header.length), dictionary);
+            }
+
+            @Override
+            public InputStream open(final InputStream block) throws IOException {
+                final byte[] read = new byte[header.length];
+                readHeader(block, read);
+                if(Arrays.equals(read, header) == false){
+                    block.close();
+                    throw new IOException("BIG-CODECS-297 - Block was written with another dictionary");
+                }
+                return BigDeflate.open(block, dictionary);
+            }
+        };
+    }
+}
@@ -0,0 +1,628 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-18T09:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigCompactIndex.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * In-memory view of the .big-index that doesn't keep an object per entry.
+ * A list of BigEntry objects costs a Long, a signature String and a path
+ * String for each file, about 200 bytes or more, so an archive with tens of
+ * millions of files doesn't fit on a normal heap.
+ *
+ * Here every field of the entries is stored on its own primitive array,
+ * indexed by the number of the entry: positions, data ends, ordinals,
+ * segments, solid offsets and lengths, one byte with the codec and the 20
+ * raw bytes of each digest packed together. The paths are front-coded in
+ * buckets of 16: the first path of a bucket is complete, the next ones only
+ * keep what differs from the path before them. Paths written one after the
+ * other usually share their folders, so the bytes shrink a lot. The path
+ * bytes are kept on pages of 16MB, so they can grow beyond 2GB.
+ *
+ * Lookups by path use an open-addressing hash table of entry numbers and
+ * lookups by signature a binary search over the entry numbers sorted by
+ * digest, sorted on the first lookup. When several files share a path or a signature, the first one
+ * that was written is found, like on BigZipReader.
+ *
+ * Entries are created as BigEntry objects only when asked for. The memory
+ * used is 70 to 80 bytes per entry plus the front-coded paths, known in
+ * advance for a given number of entries, see getMemoryUsage().
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact read-only index of a BIG archive, thread-safe after loading.
+ */
+public class BigCompactIndex {
+
+    private static final int
+            digestSize = 20,
+            // paths per front-coded bucket
+            bucketShift = 4,
+            // path bytes per page (16 Mb)
+            pageShift = 24,
+            pageMask = (1 << pageShift) - 1;
+    // bit of the flags telling that the line recorded its size
+    private static final byte flagSize = (byte) 0x80;
+
+    private int count = 0;
+    private long[]
+            positions = new long[1024],
+            ends = new long[1024];
+    private int[]
+            ordinals = new int[1024],
+            segments = new int[1024],
+            solidOffsets = new int[1024],
+            solidLengths = new int[1024],
+            // hash of each path, avoids decoding paths that can't match
+            pathHashes = new int[1024];
+    // codec number (index of codecNames) and the size flag
+    private byte[] flags = new byte[1024];
+    private byte[] digests = new byte[1024 * digestSize];
+    // codec names found on the index, the first one is "not recorded"
+    private final ArrayList<String> codecNames = new ArrayList<>();
+
+    // front-coded paths and where each bucket starts
+    private byte[][] pages = new byte[][]{new byte[4096]};
+    private long pathLength = 0;
+    private long[] bucketStarts = new long[64];
+    // the path written before, to find the shared prefix
+    private byte[] previousPath = new byte[0];
+
+    // entry number + 1 of each path, zero marks an empty slot
+    private int[] pathTable;
+    // entry numbers sorted by digest, then by number, sorted when first used
+    private volatile int[] bySignature = null;
+
+    /**
+     * Loads the index of an archive.
+     * @param fileMainBIG   The .big file, the index is expected beside it
+     * @throws IOException  When the index can't be read
+     */
+    public BigCompactIndex(final File fileMainBIG) throws IOException {
+        this(new File(fileMainBIG.getParentFile(),
+                fileMainBIG.getName() + "-index"), fileMainBIG.length());
+    }
+
+    /**
+     * Loads the lines of an index file. Lines without size end where the
+     * next block of the archive starts (the next line with a bigger
+     * position, lines in between point to older blocks) and the last one
+     * ends with the .big file, these lines are never on other segments.
+     * @param fileIndex     The .big-index file
+     * @param dataEnd       The size of the .big file
+     * @throws IOException  When the index can't be read
+     */
+    public BigCompactIndex(final File fileIndex, final long dataEnd)
+            throws IOException {
+        codecNames.add(null);
+        final BigIndexReader reader = new BigIndexReader(fileIndex, 0);
+        try{
+            // the entries waiting for the end of a line without size are
+            // always the last ones that were added
+            int pendingFirst = -1;
+            long pendingPosition = -1;
+            int ordinal = 0;
+            while(reader.next()){
+                final String line = reader.getLine();
+                final long position = BigEntry.parsePosition(line);
+                if(pendingFirst >= 0 && (BigEntry.parseSegment(line) > 0
+                        || position > pendingPosition)){
+                    resolve(pendingFirst, BigEntry.parseSegment(line) > 0
+                            ? dataEnd : position);
+                    pendingFirst = -1;
+                }
+                if(position >= 0 && line.length() >= 57){
+                    add(line, ordinal);
+                    if(pendingFirst < 0 && (flags[count - 1] & flagSize) == 0){
+                        pendingFirst = count - 1;
+                        pendingPosition = position;
+                    }
+                }
+                if(ordinal == Integer.MAX_VALUE){
+                    throw new IOException("BIG-COMPACT-137 - Too many lines on "
+                            + fileIndex.getName());
+                }
+                ordinal++;
+            }
+            if(pendingFirst >= 0){
+                resolve(pendingFirst, dataEnd);
+            }
+        }finally{
+            reader.close();
+        }
+        trim();
+        buildPathTable();
+    }
+
+    /**
+     * Adds the entry of a line at the end of the arrays.
+     */
+    private void add(final String line, final int ordinal){
+        if(count == positions.length){
+            grow();
+        }
+        final int i = count;
+        final long position = BigEntry.parsePosition(line);
+        // the attributes are read in a single pass over the line
+        long size = -1;
+        String codec = null;
+        int offset = -1, length = -1, segment = 0;
+        final int pathEnd = line.indexOf(BigEntry.attributeSeparator, 57);
+        int separator = pathEnd;
+        while(separator >= 0){
+            final int next = line.indexOf(BigEntry.attributeSeparator, separator + 1);
+            final String attribute = line.substring(separator + 1,
+                    next < 0 ? line.length() : next);
+            if(attribute.startsWith(BigEntry.attributeSize)){
+                size = parseNumber(attribute, BigEntry.attributeSize);
+            }else if(attribute.startsWith(BigEntry.attributeCodec)){
+                codec = attribute.substring(BigEntry.attributeCodec.length());
+            }else if(attribute.startsWith(BigEntry.attributeOffset)){
+                offset = (int) parseNumber(attribute, BigEntry.attributeOffset);
+            }else if(attribute.startsWith(BigEntry.attributeLength)){
+                length = (int) parseNumber(attribute, BigEntry.attributeLength);
+            }else if(attribute.startsWith(BigEntry.attributeSegment)){
+                segment = (int) Math.max(0,
+                        parseNumber(attribute, BigEntry.attributeSegment));
+            }
+            separator = next;
+        }
+        positions[i] = position;
+        ends[i] = size >= 0 ? position + BigEntry.signatureLength + size : -1;
+        ordinals[i] = ordinal;
+        segments[i] = segment;
+        solidOffsets[i] = offset;
+        solidLengths[i] = length;
+        int codecNumber = codecNames.indexOf(codec);
+        if(codecNumber < 0){
+            codecNumber = codecNames.size();
+            codecNames.add(codec);
+        }
+        flags[i] = (byte) (codecNumber & 0x7f);
+        if(size >= 0){
+            flags[i] |= flagSize;
+        }
+        final byte[] digest = BigSHA1Index.toDigest(line, 16);
+        if(digest != null){
+            System.arraycopy(digest, 0, digests, i * digestSize, digestSize);
+        }
+        final String path = pathEnd < 0 ? line.substring(57)
+                : line.substring(57, pathEnd);
+        pathHashes[i] = hash(path);
+        addPath(i, path.getBytes(StandardCharsets.UTF_8));
+        count++;
+    }
+
+    /**
+     * Reads the value of a numeric attribute.
+     * @return The value or -1 when it is not a number
+     */
+    private static long parseNumber(final String attribute, final String name){
+        try{
+            return Long.parseLong(attribute.substring(name.length()));
+        }catch(NumberFormatException e){
+            return -1;
+        }
+    }
+
+    /**
+     * The entries from a given one until the last end at a given position.
+     */
+    private void resolve(final int first, final long end){
+        for(int i = first; i < count; i++){
+            if((flags[i] & flagSize) == 0){
+                ends[i] = end;
+            }
+        }
+    }
+
+    private void grow(){
+        final int capacity = count + Math.max(1024, count >> 1);
+        positions = Arrays.copyOf(positions, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        ordinals = Arrays.copyOf(ordinals, capacity);
+        segments = Arrays.copyOf(segments, capacity);
+        solidOffsets = Arrays.copyOf(solidOffsets, capacity);
+        solidLengths = Arrays.copyOf(solidLengths, capacity);
+        pathHashes = Arrays.copyOf(pathHashes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        digests = Arrays.copyOf(digests, capacity * digestSize);
+    }
+
+    /**
+     * Releases the room that was reserved for more entries.
+     */
+    private void trim(){
+        positions = Arrays.copyOf(positions, count);
+        ends = Arrays.copyOf(ends, count);
+        ordinals = Arrays.copyOf(ordinals, count);
+        segments = Arrays.copyOf(segments, count);
+        solidOffsets = Arrays.copyOf(solidOffsets, count);
+        solidLengths = Arrays.copyOf(solidLengths, count);
+        pathHashes = Arrays.copyOf(pathHashes, count);
+        flags = Arrays.copyOf(flags, count);
+        digests = Arrays.copyOf(digests, count * digestSize);
+        bucketStarts = Arrays.copyOf(bucketStarts,
+                ((count - 1) >> bucketShift) + 1);
+        final int last = (int) (pathLength >> pageShift);
+        pages = Arrays.copyOf(pages, last + 1);
+        pages[last] = Arrays.copyOf(pages[last], (int) (pathLength & pageMask));
+        previousPath = null;
+    }
+
+    /**
+     * Writes the path of an entry, front-coded against the previous path
+     * unless it starts a new bucket.
+     */
+    private void addPath(final int number, final byte[] path){
+        int prefix = 0;
+        if((number & ((1 << bucketShift) - 1)) == 0){
+            final int bucket = number >> bucketShift;
+            if(bucket == bucketStarts.length){
+                bucketStarts = Arrays.copyOf(bucketStarts, bucket * 2);
+            }
+            bucketStarts[bucket] = pathLength;
+        }else{
+            final int limit = Math.min(path.length, previousPath.length);
+            while(prefix < limit && path[prefix] == previousPath[prefix]){
+                prefix++;
+            }
+        }
+        writeNumber(prefix);
+        writeNumber(path.length - prefix);
+        for(int i = prefix; i < path.length; i++){
+            writeByte(path[i]);
+        }
+        previousPath = path;
+    }
+
+    private void writeNumber(int value){
+        while(value >= 0x80){
+            writeByte((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        writeByte((byte) value);
+    }
+
+    private void writeByte(final byte value){
+        final int page = (int) (pathLength >> pageShift);
+        final int offset = (int) (pathLength & pageMask);
+        if(page == pages.length){
+            pages = Arrays.copyOf(pages, page + 1);
+            pages[page] = new byte[4096];
+        }
+        if(offset == pages[page].length){
+            // pages start small and double until the full size
+            pages[page] = Arrays.copyOf(pages[page], offset * 2);
+        }
+        pages[page][offset] = value;
+        pathLength++;
+    }
+
+    /**
+     * Decodes the path bytes of an entry.
+     * @return The number of bytes of the path, placed on the given buffer
+     * that might be replaced by a bigger one (result[0])
+     */
+    private int readPath(final int number, final byte[][] result){
+        byte[] buffer = result[0];
+        final int first = number & ~((1 << bucketShift) - 1);
+        long position = bucketStarts[number >> bucketShift];
+        int length = 0;
+        for(int i = first; i <= number; i++){
+            // the length of the prefix and of the suffix, seven bits a byte
+            int prefix = 0, suffix = 0, shift = 0;
+            byte read;
+            do{
+                read = readByte(position++);
+                prefix |= (read & 0x7f) << shift;
+                shift += 7;
+            }while((read & 0x80) != 0);
+            shift = 0;
+            do{
+                read = readByte(position++);
+                suffix |= (read & 0x7f) << shift;
+                shift += 7;
+            }while((read & 0x80) != 0);
+            length = prefix + suffix;
+            if(length > buffer.length){
+                buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+            }
+            for(int b = prefix; b < length; b++){
+                buffer[b] = readByte(position++);
+            }
+        }
+        result[0] = buffer;
+        return length;
+    }
+
+    private byte readByte(final long position){
+        return pages[(int) (position >> pageShift)][(int) (position & pageMask)];
+    }
+
+    /**
+     * Creates the hash table of the paths, the first entry with a path
+     * is the one kept.
+     */
+    private void buildPathTable(){
+        int capacity = 16;
+        while(capacity < count * 2L){
+            capacity <<= 1;
+        }
+        pathTable = new int[capacity];
+        final byte[][] buffer = new byte[][]{new byte[256]};
+        for(int i = 0; i < count; i++){
+            int slot = pathHashes[i] & (capacity - 1);
+            while(true){
+                final int found = pathTable[slot] - 1;
+                if(found < 0){
+                    pathTable[slot] = i + 1;
+                    break;
+                }
+                if(pathHashes[found] == pathHashes[i]
+                        && samePath(found, i, buffer)){
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+    }
+
+    private boolean samePath(final int number1, final int number2,
+            final byte[][] buffer){
+        final int length1 = readPath(number1, buffer);
+        final byte[] path1 = Arrays.copyOf(buffer[0], length1);
+        final int length2 = readPath(number2, buffer);
+        return length1 == length2
+                && Arrays.equals(path1, Arrays.copyOf(buffer[0], length2));
+    }
+
+    /**
+     * Sorts the entry numbers by digest, keeping the written order for the
+     * same digest.
+     */
+    private synchronized int[] getSignatureOrder(){
+        if(bySignature == null){
+            final int[] order = new int[count];
+            for(int i = 0; i < count; i++){
+                order[i] = i;
+            }
+            sort(order, 0, count - 1);
+            bySignature = order;
+        }
+        return bySignature;
+    }
+
+    /**
+     * In-place quicksort of the entry numbers.
+     */
+    private void sort(final int[] order, int low, int high){
+        while(low < high){
+            final int pivot = order[(low + high) >>> 1];
+            int i = low, j = high;
+            while(i <= j){
+                while(compare(order[i], pivot) < 0){
+                    i++;
+                }
+                while(compare(order[j], pivot) > 0){
+                    j--;
+                }
+                if(i <= j){
+                    final int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            // recurse on the smaller side to keep the stack small
+            if(j - low < high - i){
+                sort(order, low, j);
+                low = i;
+            }else{
+                sort(order, i, high);
+                high = j;
+            }
+        }
+    }
+
+    /**
+     * Compares two entries by digest and then by number.
+     */
+    private int compare(final int number1, final int number2){
+        final int difference = compare(number1, digests, number2 * digestSize);
+        return difference != 0 ? difference : Integer.compare(number1, number2);
+    }
+
+    /**
+     * Compares the digest of an entry with the digest on a given array.
+     */
+    private int compare(final int number, final byte[] digest, final int offset){
+        final int position = number * digestSize;
+        for(int i = 0; i < digestSize; i++){
+            final int difference = (digests[position + i] & 0xff)
+                    - (digest[offset + i] & 0xff);
+            if(difference != 0){
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    private static int hash(final String path){
+        final int value = path.hashCode() * 0x9E3779B9;
+        return value ^ (value >>> 16);
+    }
+
+    /**
+     * Finds the first entry written with a given path.
+     * @param path  The full path/name as written on the index
+     * @return The number of the entry, -1 when not found
+     */
+    public int find(final String path){
+        final byte[] wanted = path.getBytes(StandardCharsets.UTF_8);
+        final int hash = hash(path);
+        final byte[][] buffer = new byte[][]{new byte[wanted.length]};
+        int slot = hash & (pathTable.length - 1);
+        while(true){
+            final int found = pathTable[slot] - 1;
+            if(found < 0){
+                return -1;
+            }
+            if(pathHashes[found] == hash){
+                final int length = readPath(found, buffer);
+                if(length == wanted.length && Arrays.equals(wanted,
+                        Arrays.copyOf(buffer[0], length))){
+                    return found;
+                }
+            }
+            slot = (slot + 1) & (pathTable.length - 1);
+        }
+    }
+
+    /**
+     * Finds the first entry written with a given SHA1 signature.
+     * @param idSHA1 The SHA1 signature in hex format
+     * @return The number of the entry, -1 when not found
+     */
+    public int findBySHA1(final String idSHA1){
+        final byte[] digest = BigSHA1Index.toDigest(idSHA1, 0);
+        if(digest == null || count == 0){
+            return -1;
+        }
+        final int[] order = getSignatureOrder();
+        int low = 0, high = count;
+        while(low < high){
+            final int middle = (low + high) >>> 1;
+            if(compare(order[middle], digest, 0) < 0){
+                low = middle + 1;
+            }else{
+                high = middle;
+            }
+        }
+        if(low < count && compare(order[low], digest, 0) == 0){
+            return order[low];
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the entry of a line of the index.
+     * @param ordinal   The number of the line on the index, first is zero
+     * @return The number of the entry, -1 when the line has no entry
+     */
+    public int findByOrdinal(final long ordinal){
+        if(ordinal < 0 || ordinal > Integer.MAX_VALUE){
+            return -1;
+        }
+        final int result = Arrays.binarySearch(ordinals, 0, count, (int) ordinal);
+        return result < 0 ? -1 : result;
+    }
+
+    /**
+     * @return The number of entries
+     */
+    public int size(){
+        return count;
+    }
+
+    /**
+     * @param number The number of the entry, in the order they were written
+     * @return The path/name of the file
+     */
+    public String getPath(final int number){
+        final byte[][] buffer = new byte[][]{new byte[256]};
+        final int length = readPath(number, buffer);
+        return new String(buffer[0], 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param number The number of the entry, in the order they were written
+     * @return The SHA1 signature in hex format, lower case
+     */
+    public String getSignature(final int number){
+        final char[] result = new char[digestSize * 2];
+        for(int i = 0; i < digestSize; i++){
+            final int value = digests[number * digestSize + i] & 0xff;
+            result[i * 2] = Character.forDigit(value >> 4, 16);
+            result[i * 2 + 1] = Character.forDigit(value & 0xf, 16);
+        }
+        return new String(result);
+    }
+
+    /**
+     * @param number The number of the entry, in the order they were written
+     * @return Where the block starts inside its segment
+     */
+    public long getPosition(final int number){
+        return positions[number];
+    }
+
+    /**
+     * Creates the complete entry, a new object on each call.
+     * @param number The number of the entry, in the order they were written
+     * @return The entry
+     */
+    public BigEntry getEntry(final int number){
+        final boolean sizeKnown = (flags[number] & flagSize) != 0;
+        final long position = positions[number];
+        return new BigEntry(ordinals[number], position,
+                getSignature(number), getPath(number),
+                sizeKnown ? ends[number] - position - BigEntry.signatureLength : -1,
+                sizeKnown ? -1 : ends[number],
+                codecNames.get(flags[number] & 0x7f),
+                solidOffsets[number], solidLengths[number], segments[number]);
+    }
+
+    /**
+     * @return The entries as a list, created when they are read
+     */
+    public List<BigEntry> asList(){
+        return new EntryList();
+    }
+
+    private class EntryList extends AbstractList<BigEntry> implements RandomAccess{
+        @Override
+        public BigEntry get(final int index) {
+            if(index < 0 || index >= count){
+                throw new IndexOutOfBoundsException("Entry " + index);
+            }
+            return getEntry(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+
+    /**
+     * @return The bytes used by the arrays of this index
+     */
+    public long getMemoryUsage(){
+        long result = count * (8L + 8 + 4 + 4 + 4 + 4 + 4 + 1 + digestSize)
+                + bucketStarts.length * 8L
+                + pathTable.length * 4L
+                // the order by signature, also when not yet sorted
+                + count * 4L;
+        for(final byte[] page : pages){
+            result += page.length;
+        }
+        return result;
+    }
+}
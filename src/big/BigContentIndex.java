@@ -0,0 +1,469 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-18T12:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigContentIndex.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Optional sidecar of the .big-index that lists, for each trigram, the
+ * files whose content has it. A search for a text or a regular expression
+ * only needs to decompress the files that have all the trigrams the match
+ * requires, instead of every file of the archive.
+ *
+ * The sidecar (.big-contentidx) has the layout of the path trigrams, runs
+ * with a sorted directory and lists of lines written as variable-length
+ * differences, see BigTrigramIndex. Here the trigrams are the sequences of
+ * three bytes of the content with the ASCII letters lower-cased, so that
+ * searches ignoring the case can use it. A file has thousands of distinct
+ * trigrams instead of a few dozen, the runs are written as soon as their
+ * pairs of trigram and line fill the memory given to them.
+ *
+ * The content is read from the archive when the sidecar catches up with
+ * the new lines, which the archive does at the end of each write. The last
+ * run is kept in memory until it is full or the archive is closed. Files
+ * that look binary (with a NUL byte), are too large or have too many
+ * distinct trigrams are not indexed, their lines are listed as unknown and
+ * are candidates of every search.
+ *
+ * A regular expression is reduced to the literal texts that any match
+ * must contain: characters outside of groups, classes, alternatives and
+ * optional parts. When nothing is left, every file is a candidate.
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Trigram lookup table over the content of the files of a BIG archive.
+ */
+public class BigContentIndex extends BigTrigramIndex {
+
+    private static final int
+            // larger files are not indexed
+            maxFileSize = 1 << 24,
+            // nor files with more distinct trigrams than this
+            maxTrigrams = 1 << 16,
+            // pairs of trigram and line kept in memory for a run (32MB)
+            maxPairs = 1 << 22;
+
+    // spaces are ignored on expressions that turn on comments
+    private static final Pattern commentsFlag = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+
+    private final BigZip archive;
+    // the content of the file being indexed
+    private byte[] content = new byte[65536];
+    // one bit per trigram, the trigrams seen on the current file
+    private final long[] seen = new long[1 << 18];
+    private int[] found = new int[4096];
+
+    /**
+     * Prepares the sidecar, nothing is read or written until needed. The
+     * last run is only written when full or by close().
+     * @param archive   The archive with the files, its index is covered
+     * @param fileSidecar   The .big-contentidx file
+     */
+    public BigContentIndex(final BigZip archive, final File fileSidecar) {
+        super(archive.getFileIndex(), fileSidecar, maxPairs, true);
+        this.archive = archive;
+    }
+
+    /**
+     * Finds the files that might match a regular expression.
+     * @param pattern   The expression
+     * @return The ordinals of the candidate lines in ascending order, null
+     * when the expression requires no text long enough to use the sidecar
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    public long[] find(final Pattern pattern) throws IOException{
+        final int[] trigrams = getTrigrams(pattern);
+        if(trigrams.length == 0){
+            return null;
+        }
+        return find(trigrams);
+    }
+
+    /**
+     * Reads the content of the file of a line and provides its trigrams.
+     */
+    @Override
+    protected int[] getLineTrigrams(final String line, final long ordinal)
+            throws IOException{
+        final BigEntry entry = BigEntry.parse(line, ordinal, -1);
+        if(entry == null){
+            return null;
+        }
+        final int length;
+        try{
+            length = read(entry);
+        }catch(IOException ex){
+            // still found by every search, the sidecar remains usable
+            Logger.getLogger(BigContentIndex.class.getName()).log(Level.SEVERE, null, ex);
+            return new int[]{unknown};
+        }
+        if(length < 0){
+            return new int[]{unknown};
+        }
+        final int[] trigrams = getContentTrigrams(content, length);
+        return trigrams == null ? new int[]{unknown} : trigrams;
+    }
+
+    /**
+     * Texts are searched with the same rules as the content.
+     */
+    @Override
+    protected int[] getQueryTrigrams(final String text){
+        return getLiteralTrigrams(text);
+    }
+
+    /**
+     * Reads the content of a file into the buffer.
+     * @return The number of bytes, -1 when the file is too large
+     */
+    private int read(final BigEntry entry) throws IOException{
+        final InputStream stream = archive.openEntry(entry);
+        try{
+            int length = 0;
+            while(true){
+                if(length == content.length){
+                    if(length >= maxFileSize){
+                        return -1;
+                    }
+                    content = Arrays.copyOf(content, length * 2);
+                }
+                final int count = stream.read(content, length,
+                        content.length - length);
+                if(count < 0){
+                    return length;
+                }
+                length += count;
+            }
+        }finally{
+            stream.close();
+        }
+    }
+
+    /**
+     * Provides the distinct trigrams of some content, ASCII letters are
+     * lower-cased.
+     * @return The trigrams in no particular order, null when the content
+     * should not be indexed
+     */
+    private int[] getContentTrigrams(final byte[] data, final int length){
+        int count = 0,
+                trigram = 0;
+        try{
+            for(int i = 0; i < length; i++){
+                final int value = lowerCase(data[i]);
+                if(value == 0){
+                    // looks binary
+                    return null;
+                }
+                trigram = (trigram << 8 | value) & 0xffffff;
+                if(i < 2 || (seen[trigram >>> 6] & (1L << trigram)) != 0){
+                    continue;
+                }
+                if(count == maxTrigrams){
+                    return null;
+                }
+                seen[trigram >>> 6] |= 1L << trigram;
+                if(count == found.length){
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = trigram;
+            }
+        }finally{
+            // only clear what was set
+            for(int i = 0; i < count; i++){
+                seen[found[i] >>> 6] = 0;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @return The value of a byte, ASCII letters in lower-case
+     */
+    private static int lowerCase(final byte value){
+        return value >= 'A' && value <= 'Z' ? value + 32 : value & 0xff;
+    }
+
+    /**
+     * Provides the trigrams of a text found on the content of files.
+     * @param text  The text, case is ignored for ASCII letters
+     * @return The distinct trigrams in ascending order
+     */
+    static int[] getLiteralTrigrams(final String text){
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length < 3){
+            return new int[0];
+        }
+        final int[] result = new int[bytes.length - 2];
+        for(int i = 0; i < result.length; i++){
+            result[i] = lowerCase(bytes[i]) << 16 | lowerCase(bytes[i + 1]) << 8
+                    | lowerCase(bytes[i + 2]);
+        }
+        return distinct(result);
+    }
+
+    /**
+     * Provides the trigrams that any match of a regular expression has.
+     * @param pattern   The expression
+     * @return The distinct trigrams in ascending order, empty when the
+     * expression requires nothing that can be looked up
+     */
+    static int[] getTrigrams(final Pattern pattern){
+        int[] result = new int[0];
+        for(final String literal : getLiterals(pattern)){
+            final int[] trigrams = getLiteralTrigrams(literal);
+            final int size = result.length;
+            result = Arrays.copyOf(result, size + trigrams.length);
+            System.arraycopy(trigrams, 0, result, size, trigrams.length);
+        }
+        return distinct(result);
+    }
+
+    /**
+     * Finds the texts that every match of a regular expression contains.
+     * Anything that is not understood ends the current text, so the result
+     * might miss texts but never has one that a match could lack.
+     * @param pattern   The expression
+     * @return The texts, possibly none
+     */
+    static ArrayList<String> getLiterals(final Pattern pattern){
+        final ArrayList<String> result = new ArrayList<>();
+        final String text = pattern.pattern();
+        final int flags = pattern.flags();
+        if((flags & Pattern.LITERAL) != 0){
+            result.add(text);
+            return result;
+        }
+        if((flags & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0
+                || commentsFlag.matcher(text).find()){
+            return result;
+        }
+        // other letters than ASCII might be matched in another case
+        final boolean foldCase = (flags & Pattern.CASE_INSENSITIVE) != 0
+                || text.contains("(?");
+        final StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while(i < text.length()){
+            final char c = text.charAt(i);
+            switch(c){
+                case '\\':
+                    final char next = text.charAt(i + 1);
+                    if(next == 'Q'){
+                        final int end = text.indexOf("\\E", i + 2);
+                        final String quoted = end < 0 ? text.substring(i + 2)
+                                : text.substring(i + 2, end);
+                        for(int j = 0; j < quoted.length(); j++){
+                            addChar(quoted.charAt(j), foldCase, literal, result);
+                        }
+                        i = end < 0 ? text.length() : end + 2;
+                    }else if(Character.isLetterOrDigit(next)){
+                        // classes, boundaries, back references, codes
+                        endLiteral(literal, result);
+                        i = skipEscape(text, i + 2, next);
+                    }else{
+                        addChar(next, foldCase, literal, result);
+                        i += 2;
+                    }
+                    break;
+                case '[':
+                case '(':
+                    // groups and classes are skipped as a whole
+                    endLiteral(literal, result);
+                    i = skipGroup(text, i);
+                    break;
+                case '|':
+                    // any side of the alternative might match
+                    result.clear();
+                    return result;
+                case '*':
+                case '?':
+                    // the previous character is optional
+                    removeLast(literal);
+                    endLiteral(literal, result);
+                    i = skipModifier(text, i + 1);
+                    break;
+                case '+':
+                    endLiteral(literal, result);
+                    i = skipModifier(text, i + 1);
+                    break;
+                case '{':
+                    final int close = text.indexOf('}', i);
+                    if(close < 0 || text.charAt(i + 1) == '0'
+                            || text.charAt(i + 1) == ','){
+                        removeLast(literal);
+                    }
+                    endLiteral(literal, result);
+                    i = close < 0 ? text.length() : skipModifier(text, close + 1);
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                case ')':
+                    endLiteral(literal, result);
+                    i++;
+                    break;
+                default:
+                    addChar(c, foldCase, literal, result);
+                    i++;
+            }
+        }
+        endLiteral(literal, result);
+        return result;
+    }
+
+    /**
+     * Adds a character to the current text.
+     */
+    private static void addChar(final char c, final boolean foldCase,
+            final StringBuilder literal, final ArrayList<String> result){
+        if(foldCase && c >= 0x80){
+            endLiteral(literal, result);
+            return;
+        }
+        literal.append(c);
+    }
+
+    /**
+     * Removes the last character of the current text, both halves of a
+     * surrogate pair.
+     */
+    private static void removeLast(final StringBuilder literal){
+        if(literal.length() == 0){
+            return;
+        }
+        literal.setLength(literal.length() - 1);
+        if(literal.length() > 0
+                && Character.isHighSurrogate(literal.charAt(literal.length() - 1))){
+            literal.setLength(literal.length() - 1);
+        }
+    }
+
+    /**
+     * Keeps the current text when it is long enough and starts a new one.
+     */
+    private static void endLiteral(final StringBuilder literal,
+            final ArrayList<String> result){
+        if(literal.toString().getBytes(StandardCharsets.UTF_8).length >= 3){
+            result.add(literal.toString());
+        }
+        literal.setLength(0);
+    }
+
+    /**
+     * Moves after the characters that belong to an escape, e.g. the digits
+     * of a code. Braces are left for the caller.
+     * @param position  Where the escape letter ends
+     * @param letter    The letter after the backslash
+     */
+    private static int skipEscape(final String text, int position,
+            final char letter){
+        int digits;
+        switch(letter){
+            case 'x': digits = 2; break;
+            case 'u': digits = 4; break;
+            case '0': digits = 3; break;
+            case 'c':
+            case 'p':
+            case 'P':
+                // a control character or a single letter category
+                return position < text.length() && text.charAt(position) != '{'
+                        ? position + 1 : position;
+            case 'k':
+                return text.indexOf('>', position) + 1;
+            default:
+                // back references take all the digits
+                digits = Character.isDigit(letter) ? text.length() : 0;
+        }
+        while(digits > 0 && position < text.length()
+                && Character.digit(text.charAt(position), 16) >= 0){
+            position++;
+            digits--;
+        }
+        return position;
+    }
+
+    /**
+     * Moves after the lazy or possessive mark of a quantifier.
+     */
+    private static int skipModifier(final String text, final int position){
+        if(position < text.length() && (text.charAt(position) == '?'
+                || text.charAt(position) == '+')){
+            return position + 1;
+        }
+        return position;
+    }
+
+    /**
+     * Moves after a group or class, with everything nested inside it.
+     * @return The position after the closing character
+     */
+    private static int skipGroup(final String text, final int start){
+        int groups = 0,
+                classes = 0,
+                i = start;
+        while(i < text.length()){
+            final char c = text.charAt(i);
+            if(c == '\\'){
+                // quoted text might have anything
+                if(i + 1 < text.length() && text.charAt(i + 1) == 'Q'){
+                    final int end = text.indexOf("\\E", i + 2);
+                    i = end < 0 ? text.length() : end + 2;
+                }else{
+                    i += 2;
+                }
+                continue;
+            }
+            if(c == '['){
+                classes++;
+                // a bracket right after the opening one is a character
+                if(i + 1 < text.length() && text.charAt(i + 1) == '^'){
+                    i++;
+                }
+                if(i + 1 < text.length() && text.charAt(i + 1) == ']'){
+                    i++;
+                }
+            }else if(c == ']' && classes > 0){
+                classes--;
+            }else if(c == '(' && classes == 0){
+                groups++;
+            }else if(c == ')' && classes == 0){
+                groups--;
+            }
+            i++;
+            if(groups == 0 && classes == 0){
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Sorts some trigrams and removes the repeated ones.
+     */
+    private static int[] distinct(final int[] trigrams){
+        Arrays.sort(trigrams);
+        int size = 0;
+        for(int i = 0; i < trigrams.length; i++){
+            if(size == 0 || trigrams[size - 1] != trigrams[i]){
+                trigrams[size++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, size);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T21:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigContentSpliterator.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Gives the entries of an archive together with their decompressed
+ * content. The entries come from a BigEntrySpliterator and are split the
+ * same way, each part opens its own channels to the segments and keeps its
+ * own buffer, so the parts of a parallel stream only share the codecs,
+ * whose decompressors are kept per thread.
+ *
+ * The files of a solid block are decompressed once per part, the part
+ * keeps the last block it read.
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splittable iterator over the entries of an archive and their content.
+ */
+public class BigContentSpliterator
+        implements Spliterator<Map.Entry<BigEntry, byte[]>> {
+
+    private final Spliterator<BigEntry> entries;
+    private final File fileMainBIG;
+    private final BigCodecs codecs;
+    // opened on the first read, closed when there are no more entries
+    private BigSegments segments = null;
+    private ByteBuffer buffer = null;
+    // the entry given by the last advance of the entries
+    private BigEntry current = null;
+    // the last solid block that was decompressed
+    private long lastSolidKey = -1;
+    private byte[] lastSolidBlock = null;
+
+    /**
+     * @param entries       The entries to read
+     * @param fileMainBIG   The .big file, first segment of the archive
+     * @param codecs        The codecs of the archive, with the dictionary
+     *                      registered when the archive has one
+     */
+    public BigContentSpliterator(final Spliterator<BigEntry> entries,
+            final File fileMainBIG, final BigCodecs codecs) {
+        this.entries = entries;
+        this.fileMainBIG = fileMainBIG;
+        this.codecs = codecs;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Map.Entry<BigEntry, byte[]>> action) {
+        final boolean found = entries.tryAdvance(new Consumer<BigEntry>() {
+            @Override
+            public void accept(final BigEntry entry) {
+                current = entry;
+            }
+        });
+        if(found == false){
+            close();
+            return false;
+        }
+        final byte[] content;
+        try {
+            content = read(current);
+        } catch (IOException ex) {
+            close();
+            throw new UncheckedIOException(ex);
+        }
+        action.accept(new AbstractMap.SimpleImmutableEntry<BigEntry, byte[]>(
+                current, content));
+        return true;
+    }
+
+    /**
+     * Reads the content of an entry, from the last solid block when the
+     * entry is part of it.
+     */
+    private byte[] read(final BigEntry entry) throws IOException{
+        if(entry.isSolid() == false){
+            return readBlock(entry);
+        }
+        if(entry.getBlockKey() != lastSolidKey){
+            lastSolidBlock = readBlock(entry);
+            lastSolidKey = entry.getBlockKey();
+        }
+        if(entry.getOffset() + entry.getLength() > lastSolidBlock.length){
+            throw new IOException("BIG-CONTENT-102 - File is outside of its solid block: "
+                    + entry.getPath());
+        }
+        return Arrays.copyOfRange(lastSolidBlock, (int) entry.getOffset(),
+                (int) (entry.getOffset() + entry.getLength()));
+    }
+
+    /**
+     * Reads and decompresses a whole block.
+     */
+    private byte[] readBlock(final BigEntry entry) throws IOException{
+        final long length = entry.getDataEnd() - entry.getDataStart();
+        if(length < 0 || length > Integer.MAX_VALUE){
+            throw new IOException("BIG-CONTENT-115 - Invalid entry: " + entry.getPath());
+        }
+        if(segments == null){
+            segments = new BigSegments(fileMainBIG);
+        }
+        if(buffer == null || buffer.capacity() < length){
+            buffer = ByteBuffer.allocate((int) Math.max(length, 65536));
+        }
+        buffer.clear();
+        buffer.limit((int) length);
+        final FileChannel channel = segments.getChannel(entry.getSegment());
+        long position = entry.getDataStart();
+        while(buffer.hasRemaining()){
+            final int count = channel.read(buffer, position);
+            if(count < 0){
+                throw new IOException("BIG-CONTENT-130 - Unexpected end of file: "
+                        + entry.getPath());
+            }
+            position += count;
+        }
+        buffer.flip();
+        if(buffer.hasRemaining() == false){
+            throw new IOException("BIG-CONTENT-138 - Empty block: " + entry.getPath());
+        }
+        return codecs.get(buffer.get(0)).decompress(buffer);
+    }
+
+    /**
+     * Closes the channels of this part, they are opened again if needed.
+     */
+    private void close(){
+        if(segments == null){
+            return;
+        }
+        try {
+            segments.close();
+        } catch (IOException ex) {
+            // nothing to do
+        }
+        segments = null;
+    }
+
+    @Override
+    public Spliterator<Map.Entry<BigEntry, byte[]>> trySplit() {
+        final Spliterator<BigEntry> part = entries.trySplit();
+        return part == null ? null
+                : new BigContentSpliterator(part, fileMainBIG, codecs);
+    }
+
+    @Override
+    public long estimateSize() {
+        return entries.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return entries.characteristics();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T16:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigCountingOutputStream.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text> Counts the bytes written to the archive while a file
+ * is compressed straight into it. Closing this stream only flushes, the
+ * archive stays open for the next file. </text>
+ */
+
+package big;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Pass-through stream that counts the written bytes.
+ */
+public class BigCountingOutputStream extends OutputStream {
+
+    private final OutputStream output;
+    private long count = 0;
+
+    /**
+     * @param output Where the bytes are written, it is never closed here
+     */
+    public BigCountingOutputStream(final OutputStream output) {
+        this.output = output;
+    }
+
+    @Override
+    public void write(final int value) throws IOException {
+        output.write(value);
+        count++;
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        output.write(bytes, offset, length);
+        count += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * @return How many bytes were written until now
+     */
+    public long getCount() {
+        return count;
+    }
+}
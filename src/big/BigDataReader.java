@@ -0,0 +1,234 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T11:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigDataReader.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Reads ranges of bytes from the BIG data file. Reading one byte at a time
+ * from a RandomAccessFile costs one system call per byte, here we use
+ * positional reads on a FileChannel into a buffer that is reused between
+ * calls, so an entry comes back in one or a few reads.
+ *
+ * The buffer grows to fit the largest entry that was read and can be
+ * allocated outside of the heap (direct) when the data is not meant to be
+ * copied into Java arrays.
+ *
+ * In the memory mapped mode the bytes are not read at all, each entry is
+ * given as a slice of the mapped file.
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Positional reader of the BIG data file, not thread-safe.
+ */
+public class BigDataReader {
+
+    // how many bytes do we read at once while searching for a signature
+    private static final int scanSize = 65536;
+
+    private final File fileData;
+    private final boolean useDirectBuffers;
+    private RandomAccessFile file = null;
+    private FileChannel channel = null;
+    private ByteBuffer buffer = null;
+    // the mapping of the file in the memory mapped mode, null otherwise
+    private final BigMappedFile mapped;
+
+    /**
+     * Prepares the reader, the file is only opened when needed.
+     * @param fileData          The BIG file with the binary data
+     * @param useDirectBuffers  Allocate the buffer outside of the Java heap
+     */
+    public BigDataReader(final File fileData, final boolean useDirectBuffers) {
+        this(fileData, useDirectBuffers, false);
+    }
+
+    /**
+     * Prepares the reader, the file is only opened or mapped when needed.
+     * @param fileData          The BIG file with the binary data
+     * @param useDirectBuffers  Allocate the buffer outside of the Java heap
+     * @param memoryMapped      Give the entries as slices of the mapped file
+     */
+    public BigDataReader(final File fileData, final boolean useDirectBuffers,
+            final boolean memoryMapped) {
+        this.fileData = fileData;
+        this.useDirectBuffers = useDirectBuffers;
+        this.mapped = memoryMapped ? 
+                new BigMappedFile(fileData, BigMappedFile.defaultWindowSize) : null;
+    }
+
+    /**
+     * Reads the bytes between two positions of the data file.
+     * @param startPosition First byte to read
+     * @param endPosition   Position after the last byte to read
+     * @return A buffer with the bytes between position zero and the limit.
+     * The buffer is reused on the next call, in the memory mapped mode it is
+     * a slice of the mapping that must not be modified.
+     * @throws IOException  When the bytes are not available
+     */
+    public ByteBuffer read(final long startPosition, final long endPosition)
+            throws IOException{
+        if(mapped != null){
+            return mapped.slice(startPosition, endPosition);
+        }
+        final long length = endPosition - startPosition;
+        if(length < 0 || length > Integer.MAX_VALUE){
+            throw new IOException("BIG-DATA-66 - Invalid range: "
+                    + startPosition + " to " + endPosition);
+        }
+        final ByteBuffer result = getBuffer((int) length);
+        readFully(result, startPosition);
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Reads bytes from a given position until the buffer is full.
+     * @param target    Where the bytes are placed
+     * @param position  Where we start reading on the data file
+     * @throws IOException When the file ends before the buffer is full
+     */
+    public void readFully(final ByteBuffer target, final long position)
+            throws IOException{
+        final FileChannel data = getChannel();
+        long offset = position;
+        while(target.hasRemaining()){
+            final int count = data.read(target, offset);
+            if(count < 0){
+                throw new IOException("BIG-DATA-87 - Unexpected end of file at "
+                        + offset + " on " + fileData.getName());
+            }
+            offset += count;
+        }
+    }
+
+    /**
+     * Finds the next place where a given signature is written.
+     * @param signature     The bytes to find
+     * @param startPosition Where to start looking
+     * @return The position of the signature or the size of the data file
+     * when the signature isn't found
+     * @throws IOException  When the file couldn't be read
+     */
+    public long find(final byte[] signature, final long startPosition)
+            throws IOException{
+        final FileChannel data = getChannel();
+        final long size = data.size();
+        final ByteBuffer chunk = ByteBuffer.allocate(scanSize);
+        final byte[] bytes = chunk.array();
+        long position = startPosition;
+        while(position < size){
+            chunk.clear();
+            int count = 0;
+            while(chunk.hasRemaining()){
+                final int read = data.read(chunk, position + count);
+                if(read < 0){
+                    break;
+                }
+                count += read;
+            }
+            final int last = count - signature.length;
+            for(int i = 0; i <= last; i++){
+                if(bytes[i] != signature[0]){
+                    continue;
+                }
+                int j = 1;
+                while(j < signature.length && bytes[i + j] == signature[j]){
+                    j++;
+                }
+                if(j == signature.length){
+                    return position + i;
+                }
+            }
+            // reached the end of the file
+            if(position + count >= size){
+                break;
+            }
+            // overlap the chunks to catch signatures split between them
+            position += Math.max(1, count - signature.length + 1);
+        }
+        return size;
+    }
+
+    /**
+     * Opens the bytes between two positions of the data file as a stream.
+     * @param startPosition First byte to read
+     * @param endPosition   Position after the last byte to read
+     * @return The stream, it doesn't need to be closed
+     * @throws IOException  When the file can't be opened
+     */
+    public InputStream open(final long startPosition, final long endPosition)
+            throws IOException{
+        if(mapped != null){
+            return new BigBufferInputStream(mapped.slice(startPosition, endPosition));
+        }
+        return new BigChannelInputStream(getChannel(), startPosition, endPosition);
+    }
+
+    /**
+     * Provides the channel of the data file, opens it when needed.
+     * @return The open channel
+     * @throws IOException When the file can't be opened
+     */
+    public FileChannel getChannel() throws IOException{
+        if(channel == null){
+            file = new RandomAccessFile(fileData, "r");
+            channel = file.getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * Provides an empty buffer able to hold at least the given size.
+     */
+    private ByteBuffer getBuffer(final int size){
+        if(buffer == null || buffer.capacity() < size){
+            // round up to avoid growing again for slightly bigger entries
+            int capacity = 8192;
+            while(capacity < size && capacity > 0){
+                capacity <<= 1;
+            }
+            if(capacity <= 0){
+                capacity = size;
+            }
+            buffer = useDirectBuffers ? ByteBuffer.allocateDirect(capacity)
+                    : ByteBuffer.allocate(capacity);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Closes the data file, it is opened again if needed.
+     */
+    public void close(){
+        if(mapped != null){
+            mapped.close();
+        }
+        if(file == null){
+            return;
+        }
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException ex) {
+            // nothing to do
+        }
+        file = null;
+        channel = null;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T17:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigDeflate.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Raw deflate streams (without zip or zlib headers) for the binary blocks
+ * of a BIG archive, used by the deflate and dictionary codecs.
+ *
+ * Creating a Deflater or Inflater allocates native memory, so each thread
+ * keeps one of each and resets them between files instead.
+ * </text>
+ */
+
+package big;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Raw deflate with pooled compressors.
+ */
+public class BigDeflate {
+
+    private static final int bufferSize = 16384;
+
+    // one compressor and decompressor per thread, reset before each use
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>(){
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>(){
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+    // buffers without an array (e.g. mapped files) are given in chunks
+    private static final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>(){
+        @Override
+        protected byte[] initialValue() {
+            return new byte[65536];
+        }
+    };
+
+    /**
+     * Starts a new deflate stream on the given output. Only one stream per
+     * thread can be written at a time since the compressor is shared.
+     * @param target        Where the compressed bytes are written, it is
+     *                      not closed
+     * @param level         The compression level, 0 to 9
+     * @param dictionary    Preset dictionary, null when not used
+     * @return The stream that receives the uncompressed content, closing it
+     * finishes the deflate stream
+     */
+    public static OutputStream create(final OutputStream target, final int level,
+            final byte[] dictionary){
+        final Deflater deflater = deflaters.get();
+        // the previous block might have been abandoned half way
+        deflater.reset();
+        deflater.setLevel(level);
+        if(dictionary != null){
+            deflater.setDictionary(dictionary);
+        }
+        return new OutputStream() {
+            private final byte[] buffer = new byte[bufferSize];
+
+            @Override
+            public void write(final int value) throws IOException {
+                write(new byte[]{(byte) value}, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] bytes, final int offset,
+                    final int length) throws IOException {
+                deflater.setInput(bytes, offset, length);
+                while(deflater.needsInput() == false){
+                    drain();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                deflater.finish();
+                while(deflater.finished() == false){
+                    drain();
+                }
+                deflater.reset();
+                target.flush();
+            }
+
+            private void drain() throws IOException{
+                final int count = deflater.deflate(buffer);
+                if(count > 0){
+                    target.write(buffer, 0, count);
+                }
+            }
+        };
+    }
+
+    /**
+     * Calculates how small a sample becomes with the fastest compression.
+     * @param data      The sample
+     * @param length    How many bytes of the sample to use
+     * @return The number of compressed bytes
+     */
+    public static int measure(final byte[] data, final int length){
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(Deflater.BEST_SPEED);
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        final byte[] buffer = new byte[bufferSize];
+        int result = 0;
+        while(deflater.finished() == false){
+            result += deflater.deflate(buffer);
+        }
+        deflater.reset();
+        return result;
+    }
+
+    /**
+     * Decompresses a deflate stream that was kept in memory.
+     * @param data          The compressed bytes, from position to limit
+     * @param dictionary    Preset dictionary, null when not used
+     * @return The uncompressed content
+     * @throws IOException When the data is not valid
+     */
+    public static byte[] decompress(final ByteBuffer data, final byte[] dictionary)
+            throws IOException{
+        final int length = data.remaining();
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        if(dictionary != null){
+            inflater.setDictionary(dictionary);
+        }
+        // the inflater only reads arrays, other buffers are copied in chunks
+        final ByteBuffer source = data.hasArray() ? null : data.duplicate();
+        final byte[] chunk = source == null ? null : chunks.get();
+        if(source == null){
+            inflater.setInput(data.array(), data.arrayOffset() + data.position(), 
+                    length);
+        }
+        // source code usually compresses to a fourth of the size
+        byte[] output = new byte[Math.max(64, length * 4)];
+        int count = 0;
+        try {
+            while(inflater.finished() == false){
+                if(source != null && inflater.needsInput() && source.hasRemaining()){
+                    final int size = Math.min(chunk.length, source.remaining());
+                    source.get(chunk, 0, size);
+                    inflater.setInput(chunk, 0, size);
+                }
+                if(count == output.length){
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                final int inflated = inflater.inflate(output, count, output.length - count);
+                if(inflated == 0 && inflater.finished() == false
+                        && ((inflater.needsInput() 
+                            && (source == null || source.hasRemaining() == false))
+                        || inflater.needsDictionary())){
+                    throw new IOException("BIG-DEFLATE-175 - Incomplete block");
+                }
+                count += inflated;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.reset();
+        }
+        return count == output.length ? output : Arrays.copyOf(output, count);
+    }
+
+    /**
+     * Opens a deflate stream, the bytes are decompressed while they are read.
+     * @param block         The compressed bytes
+     * @param dictionary    Preset dictionary, null when not used
+     * @return The stream with the uncompressed content, closing it also
+     * closes the block stream
+     */
+    public static InputStream open(final InputStream block, final byte[] dictionary){
+        // the stream might be kept open for a while, it gets its own
+        final Inflater inflater = new Inflater(true);
+        if(dictionary != null){
+            inflater.setDictionary(dictionary);
+        }
+        return new InflaterInputStream(block, inflater, bufferSize){
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+}
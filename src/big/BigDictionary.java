@@ -0,0 +1,119 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T19:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigDictionary.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Each file of a BIG archive is compressed on its own so that it can be
+ * read without the others. Small source files compress poorly that way,
+ * the compressor has not seen enough text to find repetitions. A preset
+ * dictionary gives the compressor text to refer to before the file begins.
+ *
+ * The dictionary is trained from a sample of files: lines that appear on
+ * many files (license headers, imports, common declarations) are placed on
+ * the dictionary, the most valuable ones at the end where they are closest
+ * to the data. The dictionary is stored once on the archive as a file
+ * with a reserved path.
+ * </text>
+ */
+
+package big;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trains preset dictionaries for the dictionary codec.
+ */
+public class BigDictionary {
+
+    // where the dictionary of an archive is stored
+    public static final String path = "/.big/dictionary";
+    // deflate can't refer further back than 32KB
+    public static final int maxSize = 32768;
+
+    // lines are compared byte by byte
+    private static final Charset charset = Charset.forName("ISO-8859-1");
+    private static final int
+            minLineLength = 4,
+            maxLineLength = 256;
+
+    /**
+     * Creates a dictionary with the lines that are shared by the samples.
+     * @param samples   The content of some files, typically a few hundred
+     * @param size      The maximum size of the dictionary
+     * @return The dictionary, empty when the samples have nothing in common
+     */
+    public static byte[] train(final List<byte[]> samples, final int size){
+        // count on how many samples each line appears
+        final HashMap<String, Integer> counters = new HashMap<>();
+        for(final byte[] sample : samples){
+            final HashSet<String> lines = new HashSet<>();
+            int start = 0;
+            for(int i = 0; i <= sample.length; i++){
+                if(i < sample.length && sample[i] != '\n'){
+                    continue;
+                }
+                // keep the line break, it is part of the repetition
+                final int end = Math.min(i + 1, sample.length);
+                if(end - start >= minLineLength && end - start <= maxLineLength){
+                    lines.add(new String(sample, start, end - start, charset));
+                }
+                start = i + 1;
+            }
+            for(final String line : lines){
+                final Integer count = counters.get(line);
+                counters.put(line, count == null ? 1 : count + 1);
+            }
+        }
+        // a line is worth as much as the bytes it saves
+        final ArrayList<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for(final Map.Entry<String, Integer> entry : counters.entrySet()){
+            if(entry.getValue() > 1){
+                candidates.add(entry);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(final Map.Entry<String, Integer> a,
+                    final Map.Entry<String, Integer> b) {
+                final long scoreA = (long) (a.getValue() - 1) * a.getKey().length();
+                final long scoreB = (long) (b.getValue() - 1) * b.getKey().length();
+                if(scoreA != scoreB){
+                    return scoreA > scoreB ? -1 : 1;
+                }
+                // same order on every run
+                return a.getKey().compareTo(b.getKey());
+            }
+        });
+        final ArrayList<String> selected = new ArrayList<>();
+        int total = 0;
+        for(final Map.Entry<String, Integer> entry : candidates){
+            final int length = entry.getKey().length();
+            if(total + length > size){
+                continue;
+            }
+            selected.add(entry.getKey());
+            total += length;
+        }
+        // the best lines go to the end, closer to the data
+        final byte[] result = new byte[total];
+        int position = total;
+        for(final String line : selected){
+            final byte[] bytes = line.getBytes(charset);
+            position -= bytes.length;
+            System.arraycopy(bytes, 0, result, position, bytes.length);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T12:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigEntry.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Describes one file stored inside a BIG archive, as written on a line of
+ * the .big-index file. Objects are immutable and can be shared between
+ * threads.
+ *
+ * A line has the format:
+ * 000000000180411 3f1f0990b8200b5e9b5de461a7fa7f7640ae16f7 /C/HappyNuno.txt
+ * with the position of the block, the SHA1 signature and the path. Newer
+ * archives add attributes after the path, each one preceded by a tab:
+ * 000000000180411 3f1f0990b8200b5e9b5de461a7fa7f7640ae16f7 /C/HappyNuno.txt	size=1234
+ * where size is the number of compressed bytes after the magic signature.
+ * Blocks that are not inside a zip container add the name of their codec,
+ * e.g. "codec=stored". Small files packed together on a solid block add
+ * where their content starts inside the decompressed block and its length,
+ * e.g. "offset=1024	length=300". All the files of a solid block share the
+ * position and size of the block. Archives split in segments add the
+ * segment of the block when it is not the first, e.g. "seg=2", the position
+ * is then counted from the start of that segment.
+ * Lines without attributes remain valid, for those the end of the data is
+ * where the block of the next line starts.
+ * </text>
+ */
+
+package big;
+
+/**
+ * One line of the index: where the data starts, signature and path.
+ */
+public class BigEntry {
+
+    // the size of the magic signature written before each data block
+    public static final int signatureLength = 7;
+    // separates the path from the attributes
+    static final char attributeSeparator = '\t';
+    static final String attributeSize = "size=";
+    static final String attributeCodec = "codec=";
+    static final String attributeOffset = "offset=";
+    static final String attributeLength = "length=";
+    static final String attributeSegment = "seg=";
+
+    private final long
+            ordinal,
+            position,
+            size,
+            end,
+            offset,
+            length;
+    private final int segment;
+    private final String
+            signature,
+            path,
+            codec;
+
+    /**
+     * Creates a new entry
+     * @param ordinal   The number of the line on the index (first is zero)
+     * @param position  Where the block starts, magic signature included
+     * @param signature The SHA1 signature of the file
+     * @param path      The path/name of the file
+     * @param size      The number of compressed bytes, -1 when not known
+     * @param end       Where the data ends when the size is not known
+     *                  (usually where the entry of the next line starts),
+     *                  -1 when not known either
+     */
+    public BigEntry(final long ordinal, final long position,
+            final String signature, final String path, final long size,
+            final long end) {
+        this(ordinal, position, signature, path, size, end, null);
+    }
+
+    /**
+     * Creates a new entry
+     * @param ordinal   The number of the line on the index (first is zero)
+     * @param position  Where the block starts, magic signature included
+     * @param signature The SHA1 signature of the file
+     * @param path      The path/name of the file
+     * @param size      The number of compressed bytes, -1 when not known
+     * @param end       Where the data ends when the size is not known,
+     *                  -1 when not known either
+     * @param codec     The name of the codec, null when not recorded
+     */
+    public BigEntry(final long ordinal, final long position,
+            final String signature, final String path, final long size,
+            final long end, final String codec) {
+        this(ordinal, position, signature, path, size, end, codec, -1, -1);
+    }
+
+    /**
+     * Creates a new entry
+     * @param ordinal   The number of the line on the index (first is zero)
+     * @param position  Where the block starts, magic signature included
+     * @param signature The SHA1 signature of the file
+     * @param path      The path/name of the file
+     * @param size      The number of compressed bytes, -1 when not known
+     * @param end       Where the data ends when the size is not known,
+     *                  -1 when not known either
+     * @param codec     The name of the codec, null when not recorded
+     * @param offset    Where the file starts inside a solid block, -1 when
+     *                  the block only has this file
+     * @param length    The size of the file inside a solid block, -1 when
+     *                  the block only has this file
+     */
+    public BigEntry(final long ordinal, final long position,
+            final String signature, final String path, final long size,
+            final long end, final String codec, final long offset,
+            final long length) {
+        this(ordinal, position, signature, path, size, end, codec, offset,
+                length, 0);
+    }
+
+    /**
+     * Creates a new entry
+     * @param ordinal   The number of the line on the index (first is zero)
+     * @param position  Where the block starts inside its segment, magic
+     *                  signature included
+     * @param signature The SHA1 signature of the file
+     * @param path      The path/name of the file
+     * @param size      The number of compressed bytes, -1 when not known
+     * @param end       Where the data ends when the size is not known,
+     *                  -1 when not known either
+     * @param codec     The name of the codec, null when not recorded
+     * @param offset    Where the file starts inside a solid block, -1 when
+     *                  the block only has this file
+     * @param length    The size of the file inside a solid block, -1 when
+     *                  the block only has this file
+     * @param segment   The segment with the block, zero is the .big file
+     */
+    public BigEntry(final long ordinal, final long position,
+            final String signature, final String path, final long size,
+            final long end, final String codec, final long offset,
+            final long length, final int segment) {
+        this.ordinal = ordinal;
+        this.position = position;
+        this.size = size;
+        this.end = size >= 0 ? position + signatureLength + size : end;
+        this.signature = signature;
+        this.path = path;
+        this.codec = codec;
+        this.offset = offset;
+        this.length = length;
+        this.segment = segment;
+    }
+
+    /**
+     * Interprets a line from the index file.
+     * @param line      A line from the index
+     * @param ordinal   The number of the line on the index
+     * @param end       Where the data ends when the line doesn't tell its
+     *                  size, -1 when not known
+     * @return The entry or null when the line is not valid
+     */
+    public static BigEntry parse(final String line, final long ordinal,
+            final long end){
+        if(line == null || line.length() < 57){
+            return null;
+        }
+        final long position = parsePosition(line);
+        if(position < 0){
+            return null;
+        }
+        return new BigEntry(ordinal, position, line.substring(16, 56),
+                parsePath(line), parseSize(line), end,
+                parseAttribute(line, attributeCodec),
+                parseNumber(line, attributeOffset),
+                parseNumber(line, attributeLength),
+                parseSegment(line));
+    }
+
+    /**
+     * Reads only the position where the block of a line starts.
+     * @param line  A line from the index
+     * @return The position or -1 when the line is not valid
+     */
+    static long parsePosition(final String line){
+        if(line == null || line.length() < 15){
+            return -1;
+        }
+        try{
+            return Long.parseLong(line.substring(0, 15));
+        }catch(NumberFormatException e){
+            return -1;
+        }
+    }
+
+    /**
+     * Reads only the path of a line.
+     * @param line  A line from the index
+     * @return The path/name, without attributes
+     */
+    static String parsePath(final String line){
+        if(line == null || line.length() < 57){
+            return "";
+        }
+        final int separator = line.indexOf(attributeSeparator, 57);
+        return separator < 0 ? line.substring(57) : line.substring(57, separator);
+    }
+
+    /**
+     * Reads the value of an attribute written after the path.
+     * @param line  A line from the index
+     * @param name  The attribute name, including the "=" sign
+     * @return The value or null when the line doesn't have this attribute
+     */
+    static String parseAttribute(final String line, final String name){
+        int separator = line.indexOf(attributeSeparator, 57);
+        while(separator >= 0){
+            final int next = line.indexOf(attributeSeparator, separator + 1);
+            if(line.startsWith(name, separator + 1)){
+                return line.substring(separator + 1 + name.length(),
+                        next < 0 ? line.length() : next);
+            }
+            separator = next;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the number of compressed bytes of a line.
+     * @param line  A line from the index
+     * @return The size or -1 when the line doesn't have this attribute
+     */
+    static long parseSize(final String line){
+        return parseNumber(line, attributeSize);
+    }
+
+    /**
+     * Reads the segment of the block of a line.
+     * @param line  A line from the index
+     * @return The segment, zero when the line doesn't have this attribute
+     */
+    static int parseSegment(final String line){
+        return (int) Math.max(0, parseNumber(line, attributeSegment));
+    }
+
+    /**
+     * Reads the value of a numeric attribute.
+     * @param line  A line from the index
+     * @param name  The attribute name, including the "=" sign
+     * @return The value or -1 when the line doesn't have this attribute
+     */
+    static long parseNumber(final String line, final String name){
+        final String value = parseAttribute(line, name);
+        if(value == null){
+            return -1;
+        }
+        try{
+            return Long.parseLong(value);
+        }catch(NumberFormatException e){
+            return -1;
+        }
+    }
+
+    /**
+     * Creates the line that is written on the index for a new file.
+     * @param position  Where the block starts, magic signature included
+     * @param signature The SHA1 signature of the file
+     * @param path      The path/name of the file
+     * @param size      The number of compressed bytes after the signature
+     * @param codec     The name of the codec, not written for zip or null
+     * @return The line, without line breaks
+     */
+    static String createLine(final long position, final String signature,
+            final String path, final long size, final String codec){
+        return createLine(position, signature, path, size, codec, -1, -1);
+    }
+
+    /**
+     * Creates the line that is written on the index for a new file.
+     * @param position  Where the block starts, magic signature included
+     * @param signature The SHA1 signature of the file
+     * @param path      The path/name of the file
+     * @param size      The number of compressed bytes after the signature
+     * @param codec     The name of the codec, not written for zip or null
+     * @param offset    Where the file starts inside a solid block, -1 when
+     *                  the block only has this file
+     * @param length    The size of the file inside a solid block
+     * @return The line, without line breaks
+     */
+    static String createLine(final long position, final String signature,
+            final String path, final long size, final String codec,
+            final long offset, final long length){
+        return createLine(position, signature, path, size, codec, offset,
+                length, 0);
+    }
+
+    /**
+     * Creates the line that is written on the index for a new file.
+     * @param position  Where the block starts inside its segment
+     * @param signature The SHA1 signature of the file
+     * @param path      The path/name of the file
+     * @param size      The number of compressed bytes after the signature
+     * @param codec     The name of the codec, not written for zip or null
+     * @param offset    Where the file starts inside a solid block, -1 when
+     *                  the block only has this file
+     * @param length    The size of the file inside a solid block
+     * @param segment   The segment with the block, not written when zero
+     * @return The line, without line breaks
+     */
+    static String createLine(final long position, final String signature,
+            final String path, final long size, final String codec,
+            final long offset, final long length, final int segment){
+        String line = utils.files.getPrettyFileSize(position)
+                .concat(" ")
+                .concat(signature)
+                .concat(" ")
+                .concat(path)
+                .concat(String.valueOf(attributeSeparator))
+                .concat(attributeSize)
+                .concat(Long.toString(size));
+        // zip is the format of the older archives, no need to repeat it
+        if(codec != null && codec.equals("zip") == false){
+            line = line.concat(String.valueOf(attributeSeparator))
+                .concat(attributeCodec)
+                .concat(codec);
+        }
+        if(offset >= 0){
+            line = line.concat(String.valueOf(attributeSeparator))
+                .concat(attributeOffset)
+                .concat(Long.toString(offset))
+                .concat(String.valueOf(attributeSeparator))
+                .concat(attributeLength)
+                .concat(Long.toString(length));
+        }
+        if(segment == 0){
+            return line;
+        }
+        return line.concat(String.valueOf(attributeSeparator))
+                .concat(attributeSegment)
+                .concat(Integer.toString(segment));
+    }
+
+    /**
+     * @return The number of the line on the index, the first is zero
+     */
+    public long getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * @return Where the block of this file starts, magic signature included
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The segment with the block of this file, zero is the .big file
+     */
+    public int getSegment() {
+        return segment;
+    }
+
+    /**
+     * @return Identifies the block among all the segments, used as key
+     * of the caches
+     */
+    public long getBlockKey() {
+        return segment == 0 ? position : ((long) segment << 40) | position;
+    }
+
+    /**
+     * @return Where the compressed data starts (after the magic signature)
+     */
+    public long getDataStart() {
+        return position + signatureLength;
+    }
+
+    /**
+     * @return The position after the last byte of the compressed data, -1
+     * when not known
+     */
+    public long getDataEnd() {
+        return end;
+    }
+
+    /**
+     * @return The number of compressed bytes, -1 when the index of this
+     * archive doesn't record it
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return The name of the codec of the block, null when the index 
+     * doesn't record it (zip, or a block read through its first byte)
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return True when the block is shared with other small files, the
+     * content is a part of the decompressed block
+     */
+    public boolean isSolid() {
+        return length >= 0;
+    }
+
+    /**
+     * @return Where the content starts inside the decompressed solid
+     * block, -1 when the block only has this file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The size of the content inside the decompressed solid block,
+     * -1 when the block only has this file
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return The SHA1 signature of the stored file
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return The path/name of the stored file
+     */
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString(){
+        return path;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T21:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigEntrySpliterator.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Iterates the entries of an archive straight from the text index, without
+ * loading the index into memory. The index is split by byte ranges: a range
+ * is cut in half at the first line break after its middle, so each line
+ * belongs to exactly one range. Every range opens its own reader of the
+ * index, ranges given to other threads don't share anything.
+ *
+ * Older lines without size end where the next block starts, the reader of
+ * a range looks at the lines after its end to find it.
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splittable iterator over the lines of a .big-index file.
+ */
+public class BigEntrySpliterator implements Spliterator<BigEntry> {
+
+    // ranges smaller than this are not split
+    private static final long minSplitSize = 65536;
+    // average length of a line, used to estimate the number of entries
+    private static final int lineSize = 100;
+
+    private final File
+            fileMainBIG,
+            fileIndex;
+    private final long start;
+    private long end;
+    private BigIndexReader reader = null;
+    private boolean finished = false;
+
+    // entries without size waiting for the position of the next block
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private long pendingPosition = -1;
+    // entries ready to be given
+    private final ArrayDeque<BigEntry> ready = new ArrayDeque<>();
+
+    /**
+     * Iterates the lines that start inside a range of the index.
+     * @param fileMainBIG   The .big file, the last older line ends with it
+     * @param fileIndex     The .big-index file
+     * @param start         The first byte of the range, zero for the whole
+     *                      index. Any other value must point to a line break.
+     * @param end           Lines starting at or after this offset belong to
+     *                      another range
+     */
+    public BigEntrySpliterator(final File fileMainBIG, final File fileIndex,
+            final long start, final long end) {
+        this.fileMainBIG = fileMainBIG;
+        this.fileIndex = fileIndex;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super BigEntry> action) {
+        try{
+            while(ready.isEmpty() && finished == false){
+                readLine();
+            }
+        }catch(IOException ex){
+            close();
+            throw new UncheckedIOException(ex);
+        }
+        if(ready.isEmpty()){
+            return false;
+        }
+        action.accept(ready.poll());
+        return true;
+    }
+
+    /**
+     * Reads the next line of the index, the entries that are complete go
+     * to the ready queue.
+     */
+    private void readLine() throws IOException{
+        if(reader == null){
+            reader = new BigIndexReader(fileIndex, start);
+        }
+        if(reader.next() == false){
+            // the last block ends with the .big file
+            resolvePending(fileMainBIG.length());
+            close();
+            return;
+        }
+        final String line = reader.getLine();
+        final long position = BigEntry.parsePosition(line);
+        if(position < 0){
+            return;
+        }
+        // older lines are only found on the .big file
+        if(pending.isEmpty() == false && BigEntry.parseSegment(line) > 0){
+            resolvePending(fileMainBIG.length());
+        }else
+        if(pending.isEmpty() == false && position > pendingPosition){
+            resolvePending(position);
+        }
+        // lines after the range are only read to find where a block ends
+        if(reader.getLineOffset() >= end){
+            if(pending.isEmpty()){
+                close();
+            }
+            return;
+        }
+        if(pending.isEmpty() && BigEntry.parseSize(line) >= 0){
+            final BigEntry entry = BigEntry.parse(line, -1, -1);
+            if(entry != null){
+                ready.add(entry);
+            }
+            return;
+        }
+        if(pending.isEmpty()){
+            pendingPosition = position;
+        }
+        pending.add(line);
+    }
+
+    /**
+     * The entries waiting for the next block end at the given position.
+     */
+    private void resolvePending(final long position){
+        for(final String line : pending){
+            final BigEntry entry = BigEntry.parse(line, -1, position);
+            if(entry != null){
+                ready.add(entry);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Stops reading the index, the entries that are ready are still given.
+     */
+    private void close(){
+        finished = true;
+        if(reader != null){
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                // nothing to do
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<BigEntry> trySplit() {
+        if(finished){
+            return null;
+        }
+        final long current = reader == null ? start : reader.getNextOffset();
+        if(end - current < minSplitSize * 2){
+            return null;
+        }
+        try {
+            final long middle = findLineBreak(current + (end - current) / 2);
+            if(middle <= current || middle >= end){
+                return null;
+            }
+            final BigEntrySpliterator result =
+                    new BigEntrySpliterator(fileMainBIG, fileIndex, middle, end);
+            end = middle;
+            return result;
+        } catch (IOException ex) {
+            // keep the range as it is
+            return null;
+        }
+    }
+
+    /**
+     * Finds the first line break at or after a given offset of the index.
+     * @return The offset of the line break, or the end of the range
+     */
+    private long findLineBreak(final long offset) throws IOException{
+        final RandomAccessFile file = new RandomAccessFile(fileIndex, "r");
+        try{
+            final ByteBuffer buffer = ByteBuffer.allocate(4096);
+            long position = offset;
+            while(position < end){
+                buffer.clear();
+                final int count = file.getChannel().read(buffer, position);
+                if(count <= 0){
+                    break;
+                }
+                for(int i = 0; i < count; i++){
+                    if(buffer.get(i) == '\n'){
+                        return position + i;
+                    }
+                }
+                position += count;
+            }
+            return end;
+        }finally{
+            file.close();
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        if(finished){
+            return ready.size();
+        }
+        final long current = reader == null ? start : reader.getNextOffset();
+        final long length = Math.min(end, fileIndex.length()) - current;
+        return Math.max(0, length / lineSize) + ready.size() + pending.size();
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-18T13:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigGrep.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Finds the lines of the stored files that have a text or match a regular
+ * expression, like grep does on a folder.
+ *
+ * The entries to search (usually all of them, as given by the index) are
+ * divided between the threads of a fork-join pool. A task with too many
+ * entries is cut in two halves until the parts are small, an idle thread
+ * takes the parts that others didn't start yet. The files of a solid
+ * block always stay on the same part.
+ *
+ * Each thread keeps its own channels to the segments, a buffer for the
+ * compressed block and another for the decompressed content, which only
+ * grow and are used for all its files. The content is never turned into
+ * text: a text is found with the Horspool algorithm directly on the bytes
+ * and a regular expression sees the bytes as characters (ISO-8859-1), the
+ * expression being converted to UTF-8 bytes the same way. Only the lines
+ * that matched are decoded, as the snippet of the match.
+ *
+ * Matches are given to the listener as soon as they are found, from the
+ * thread that found them. The lines of a file are given together and in
+ * order, the files arrive in any order.
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parallel search of lines over the files of a BIG archive.
+ */
+public class BigGrep {
+
+    private static final int
+            // parts with fewer entries are not divided
+            minTaskEntries = 16,
+            // longer lines are cut on the snippet
+            maxSnippet = 200;
+
+    // the search as given, used with the content index
+    private final Pattern query;
+    // the expression over the bytes, null when searching a text
+    private final Pattern bytePattern;
+    // the text as bytes, lower-cased when the case is ignored
+    private final byte[] needle;
+    // how each byte is compared, ASCII letters lower-cased or not
+    private final byte[] fold = new byte[256];
+    // how far the text moves when the byte at its end doesn't match
+    private final int[] skip = new int[256];
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Searches the lines that have a text.
+     * @param text          The text to find
+     * @param ignoreCase    True to ignore the case of ASCII letters
+     */
+    public BigGrep(final String text, final boolean ignoreCase) {
+        this.query = Pattern.compile(text, Pattern.LITERAL
+                | (ignoreCase ? Pattern.CASE_INSENSITIVE : 0));
+        this.bytePattern = null;
+        for(int i = 0; i < fold.length; i++){
+            fold[i] = (byte) (ignoreCase && i >= 'A' && i <= 'Z' ? i + 32 : i);
+        }
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        this.needle = new byte[bytes.length];
+        for(int i = 0; i < bytes.length; i++){
+            needle[i] = fold[bytes[i] & 0xff];
+        }
+        // bytes that are not on the text permit moving the whole length
+        for(int i = 0; i < skip.length; i++){
+            skip[i] = Math.max(1, needle.length);
+        }
+        for(int i = 0; i < needle.length - 1; i++){
+            skip[needle[i] & 0xff] = needle.length - 1 - i;
+        }
+        // both cases of a letter move the same
+        if(ignoreCase){
+            for(int i = 'A'; i <= 'Z'; i++){
+                skip[i] = skip[i + 32];
+            }
+        }
+    }
+
+    /**
+     * Searches the lines that match a regular expression.
+     * @param pattern   The expression, the characters that are not ASCII
+     *                  are matched as their UTF-8 bytes. Like grep, ^ and $
+     *                  match at the start and end of each line
+     */
+    public BigGrep(final Pattern pattern) {
+        this.query = pattern;
+        // the whole file is searched at once, not line by line
+        this.bytePattern = Pattern.compile(new String(pattern.pattern()
+                .getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1),
+                pattern.flags() | Pattern.MULTILINE);
+        this.needle = null;
+    }
+
+    /**
+     * Defines how many threads read the files, by default one per processor.
+     * @param threads   The number of threads
+     */
+    public void setThreads(final int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return The search as a regular expression, to find the candidates
+     * on the content index
+     */
+    Pattern getQuery() {
+        return query;
+    }
+
+    /**
+     * Searches the given files, the method returns when all were searched.
+     * @param entries       The files, e.g. from the index
+     * @param fileMainBIG   The .big file, first segment of the archive
+     * @param codecs        The codecs of the archive, with the dictionary
+     *                      registered when the archive has one
+     * @param listener      Gets each match when found, from several threads
+     * @return The number of matches
+     * @throws IOException When a file couldn't be read
+     */
+    public long search(final List<BigEntry> entries, final File fileMainBIG,
+            final BigCodecs codecs, final Consumer<BigMatch> listener)
+            throws IOException{
+        final AtomicLong counter = new AtomicLong();
+        // the state of each thread, closed at the end
+        final ConcurrentLinkedQueue<Worker> workers = new ConcurrentLinkedQueue<>();
+        final ThreadLocal<Worker> worker = new ThreadLocal<Worker>(){
+            @Override
+            protected Worker initialValue(){
+                final Worker result = new Worker(fileMainBIG, codecs);
+                workers.add(result);
+                return result;
+            }
+        };
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+            pool.invoke(new Task(entries, 0, entries.size(), worker, listener,
+                    counter));
+        }catch(UncheckedIOException ex){
+            throw ex.getCause();
+        }finally{
+            pool.shutdown();
+            for(final Worker finished : workers){
+                finished.close();
+            }
+        }
+        return counter.get();
+    }
+
+    /**
+     * Searches a range of the entries, dividing it when too large.
+     */
+    private static final class Task extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+        private final List<BigEntry> entries;
+        private final int start, end;
+        private final ThreadLocal<Worker> worker;
+        private final Consumer<BigMatch> listener;
+        private final AtomicLong counter;
+
+        Task(final List<BigEntry> entries, final int start, final int end,
+                final ThreadLocal<Worker> worker,
+                final Consumer<BigMatch> listener, final AtomicLong counter){
+            this.entries = entries;
+            this.start = start;
+            this.end = end;
+            this.worker = worker;
+            this.listener = listener;
+            this.counter = counter;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start > minTaskEntries){
+                // the files of a solid block are not separated
+                int middle = (start + end) >>> 1;
+                while(middle < end && entries.get(middle).isSolid()
+                        && entries.get(middle).getBlockKey()
+                        == entries.get(middle - 1).getBlockKey()){
+                    middle++;
+                }
+                if(middle < end){
+                    invokeAll(new Task(entries, start, middle, worker, listener, counter),
+                            new Task(entries, middle, end, worker, listener, counter));
+                    return;
+                }
+            }
+            final Worker current = worker.get();
+            for(int i = start; i < end; i++){
+                try {
+                    counter.addAndGet(current.search(entries.get(i), listener));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * The channels and buffers of a thread.
+     */
+    private final class Worker{
+        private final BigSegments segments;
+        private final BigCodecs codecs;
+        private ByteBuffer compressed = ByteBuffer.allocate(65536);
+        private byte[] content = new byte[65536];
+        // the block on the content buffer and its size
+        private long contentKey = -1;
+        private int contentLength = 0;
+        private final Matcher matcher;
+        private final ByteChars chars = new ByteChars();
+
+        Worker(final File fileMainBIG, final BigCodecs codecs){
+            this.segments = new BigSegments(fileMainBIG);
+            this.codecs = codecs;
+            this.matcher = bytePattern == null ? null : bytePattern.matcher("");
+        }
+
+        /**
+         * Searches the lines of a file.
+         * @return The number of matches
+         */
+        long search(final BigEntry entry, final Consumer<BigMatch> listener)
+                throws IOException{
+            // files of a solid block are next to each other, duplicates
+            // might also point to the same block
+            if(entry.getBlockKey() != contentKey){
+                contentKey = -1;
+                readBlock(entry);
+                contentKey = entry.getBlockKey();
+            }
+            int start = 0,
+                    end = contentLength;
+            if(entry.isSolid()){
+                start = (int) entry.getOffset();
+                end = (int) (entry.getOffset() + entry.getLength());
+                if(end > contentLength){
+                    throw new IOException("BIG-GREP-262 - File is outside of its solid block: "
+                            + entry.getPath());
+                }
+            }
+            if(matcher != null){
+                chars.reset(content, start, end);
+                matcher.reset(chars);
+            }
+            long count = 0,
+                    line = 1;
+            int counted = start,
+                    lineStart = start,
+                    from = start;
+            while(from < end){
+                final int found = matcher == null ? indexOf(content, from, end)
+                        : matcher.find(from - start) ? start + matcher.start() : -1;
+                if(found < 0){
+                    break;
+                }
+                // count the lines up to the match
+                for(int i = counted; i < found; i++){
+                    if(content[i] == '\n'){
+                        line++;
+                        lineStart = i + 1;
+                    }
+                }
+                counted = found;
+                int lineEnd = found;
+                while(lineEnd < end && content[lineEnd] != '\n'){
+                    lineEnd++;
+                }
+                listener.accept(new BigMatch(entry, line,
+                        getSnippet(lineStart, lineEnd)));
+                count++;
+                // one match per line
+                from = lineEnd + 1;
+            }
+            return count;
+        }
+
+        /**
+         * Decodes the text of a line.
+         */
+        private String getSnippet(final int lineStart, final int lineEnd){
+            int length = Math.min(lineEnd - lineStart, maxSnippet);
+            if(length > 0 && lineStart + length == lineEnd
+                    && content[lineEnd - 1] == '\r'){
+                length--;
+            }
+            return new String(content, lineStart, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads and decompresses a block into the content buffer.
+         */
+        private void readBlock(final BigEntry entry) throws IOException{
+            final long length = entry.getDataEnd() - entry.getDataStart();
+            if(length <= 0 || length > Integer.MAX_VALUE){
+                throw new IOException("BIG-GREP-320 - Invalid entry: " + entry.getPath());
+            }
+            if(compressed.capacity() < length){
+                compressed = ByteBuffer.allocate((int) length);
+            }
+            compressed.clear();
+            compressed.limit((int) length);
+            final FileChannel channel = segments.getChannel(entry.getSegment());
+            long position = entry.getDataStart();
+            while(compressed.hasRemaining()){
+                final int count = channel.read(compressed, position);
+                if(count < 0){
+                    throw new IOException("BIG-GREP-332 - Unexpected end of file: "
+                            + entry.getPath());
+                }
+                position += count;
+            }
+            compressed.flip();
+            final InputStream stream = codecs.open(new BigBufferInputStream(compressed));
+            try{
+                contentLength = 0;
+                int count;
+                while(true){
+                    if(contentLength == content.length){
+                        if(content.length > Integer.MAX_VALUE / 2){
+                            throw new IOException("BIG-GREP-345 - File too large: "
+                                    + entry.getPath());
+                        }
+                        final byte[] larger = new byte[content.length * 2];
+                        System.arraycopy(content, 0, larger, 0, contentLength);
+                        content = larger;
+                    }
+                    count = stream.read(content, contentLength,
+                            content.length - contentLength);
+                    if(count < 0){
+                        break;
+                    }
+                    contentLength += count;
+                }
+            }finally{
+                stream.close();
+            }
+        }
+
+        void close(){
+            try {
+                segments.close();
+            } catch (IOException ex) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * Finds the text on a range of bytes with the Horspool algorithm.
+     * @return Where the text starts, -1 when not found
+     */
+    private int indexOf(final byte[] data, final int from, final int end){
+        final int last = needle.length - 1;
+        if(last < 0){
+            return from;
+        }
+        int i = from;
+        while(i + last < end){
+            int j = last;
+            while(fold[data[i + j] & 0xff] == needle[j]){
+                if(j == 0){
+                    return i;
+                }
+                j--;
+            }
+            i += skip[data[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Some bytes seen as characters by the regular expressions, each byte
+     * is a character (ISO-8859-1) without decoding anything.
+     */
+    private static final class ByteChars implements CharSequence{
+        private byte[] data;
+        private int start, end;
+
+        ByteChars(){
+            reset(new byte[0], 0, 0);
+        }
+
+        ByteChars(final byte[] data, final int start, final int end){
+            reset(data, start, end);
+        }
+
+        final void reset(final byte[] data, final int start, final int end){
+            this.data = data;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return (char) (data[start + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(final int from, final int to) {
+            return new ByteChars(data, start + from, start + to);
+        }
+
+        @Override
+        public String toString(){
+            return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Prints the lines of an archive that have a text.
+     * @param args  The .big file and the text
+     * @throws IOException When the archive couldn't be read
+     */
+    public static void main(final String[] args) throws IOException{
+        if(args.length < 2){
+            System.err.println("Usage: BigGrep <archive.big> <text>");
+            return;
+        }
+        final File file = new File(args[0]);
+        if(file.exists() == false){
+            System.err.println("Error, couldn't find: " + file.getAbsolutePath());
+            return;
+        }
+        final BigZip big = new BigZip(file, true);
+        final long count = big.grep(new BigGrep(args[1], false),
+                new Consumer<BigMatch>(){
+            @Override
+            public void accept(final BigMatch match) {
+                synchronized(System.out){
+                    System.out.println(match);
+                }
+            }
+        });
+        big.close();
+        System.err.println(count + " matches");
+    }
+}
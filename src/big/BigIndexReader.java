@@ -0,0 +1,243 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T09:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigIndexReader.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Reads the lines of a .big-index file while keeping track of the byte
+ * offset where each line starts. The BufferedReader used elsewhere on BigZip
+ * is convenient but hides the offsets, and we need them for the sidecar
+ * indexes that point back into the text index.
+ *
+ * Each data line is written as "\n" + line, so the header sits alone on the
+ * first line and no line has a trailing line break.
+ * </text>
+ */
+
+package big;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential reader of index lines with their byte offsets.
+ */
+public class BigIndexReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(65536);
+    private final ByteArrayOutputStream lineBytes = new ByteArrayOutputStream(256);
+
+    // where the buffer was loaded from
+    private long bufferPosition;
+    // offset of the line that was last read and where the next one starts
+    private long lineOffset = -1,
+            nextOffset;
+    private final long endOffset;
+    private String line;
+
+    /**
+     * Opens an index file for reading.
+     * @param fileIndex     The .big-index file
+     * @param startOffset   Offset where to start reading. Use 0 to start from
+     *                      the beginning (the header line is skipped), any other
+     *                      value must point to a line break or to the first
+     *                      byte of a line.
+     * @throws IOException  When the file can't be opened
+     */
+    public BigIndexReader(final File fileIndex, final long startOffset) throws IOException{
+        this(fileIndex, startOffset, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens an index file for reading a limited range of lines.
+     * @param fileIndex     The .big-index file
+     * @param startOffset   Offset where to start reading
+     * @param endOffset     Lines starting at or after this offset are not read
+     * @throws IOException  When the file can't be opened
+     */
+    public BigIndexReader(final File fileIndex, final long startOffset,
+            final long endOffset) throws IOException{
+        this.file = new RandomAccessFile(fileIndex, "r");
+        this.channel = file.getChannel();
+        this.endOffset = endOffset;
+        this.nextOffset = startOffset;
+        this.bufferPosition = startOffset;
+        buffer.limit(0);
+        // the first line is always the header, never data
+        if(startOffset == 0){
+            readRawLine();
+        }
+    }
+
+    /**
+     * Moves to the next data line.
+     * @return True when a line is available, false at the end of the file
+     * @throws IOException When something went wrong while reading
+     */
+    public boolean next() throws IOException{
+        while(nextOffset < endOffset){
+            final long start = nextOffset;
+            if(readRawLine() == false){
+                return false;
+            }
+            // empty lines (e.g. the line break at the end of the header)
+            if(lineBytes.size() == 0){
+                continue;
+            }
+            lineOffset = start;
+            line = lineBytes.toString();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the bytes up to the next line break.
+     * @return False if we were already at the end of the file
+     */
+    private boolean readRawLine() throws IOException{
+        lineBytes.reset();
+        boolean found = false;
+        while(true){
+            if(buffer.hasRemaining() == false){
+                bufferPosition += buffer.limit();
+                buffer.clear();
+                final int count = channel.read(buffer, bufferPosition);
+                buffer.flip();
+                if(count <= 0){
+                    return found;
+                }
+            }
+            found = true;
+            // copy everything up to the line break at once
+            final byte[] data = buffer.array();
+            final int start = buffer.position(),
+                    limit = buffer.limit();
+            int end = start;
+            while(end < limit && data[end] != '\n'){
+                end++;
+            }
+            lineBytes.write(data, start, end - start);
+            if(end < limit){
+                buffer.position(end + 1);
+                nextOffset += end + 1 - start;
+                return true;
+            }
+            buffer.position(limit);
+            nextOffset += limit - start;
+        }
+    }
+
+    /**
+     * The line that was read by the last call to next().
+     * @return A line of text without the line break
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Where the current line starts inside the index file
+     * @return The byte offset of the first character of the line
+     */
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * How far did we read inside the index file?
+     * @return The byte offset right after the last line that was read
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * Reads a single line from the index, starting at a known offset.
+     * @param channel   An open channel to the index file
+     * @param offset    The first byte of the line
+     * @return The line, without the line break
+     * @throws IOException When the file could not be read
+     */
+    public static String readLineAt(final FileChannel channel, final long offset)
+            throws IOException{
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(256);
+        final ByteBuffer data = ByteBuffer.allocate(512);
+        long position = offset;
+        while(true){
+            data.clear();
+            final int count = channel.read(data, position);
+            if(count <= 0){
+                break;
+            }
+            data.flip();
+            while(data.hasRemaining()){
+                final byte value = data.get();
+                if(value == '\n'){
+                    return result.toString();
+                }
+                result.write(value);
+            }
+            position += count;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Computes a fingerprint of the part of the index that a sidecar has
+     * already processed. It permits noticing when that part was replaced by
+     * different lines (e.g. an archive restored and written again) even
+     * when the index didn't become smaller.
+     * @param fileIndex The .big-index file
+     * @param covered   How many bytes of the index were processed
+     * @return A 64-bit FNV-1a hash of the last Kb before that offset, where
+     * the last processed lines are found
+     * @throws IOException When the file could not be read
+     */
+    public static long fingerprint(final File fileIndex, final long covered)
+            throws IOException{
+        long result = 0xcbf29ce484222325L;
+        if(covered <= 0){
+            return result;
+        }
+        // lines are rarely longer, a few of them fit inside this size
+        final ByteBuffer data = ByteBuffer.allocate((int) Math.min(covered, 1024));
+        final RandomAccessFile file = new RandomAccessFile(fileIndex, "r");
+        try{
+            long position = covered - data.capacity();
+            while(data.hasRemaining()){
+                final int count = file.getChannel().read(data, position);
+                if(count < 0){
+                    // the index is shorter than what was processed
+                    return 0;
+                }
+                position += count;
+            }
+        }finally{
+            file.close();
+        }
+        data.flip();
+        while(data.hasRemaining()){
+            result ^= data.get() & 0xff;
+            result *= 0x100000001b3L;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T23:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigMappedFile.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Maps a data file into memory, so that blocks are read as slices of the
+ * mapping without a system call or a copy per read. The pages come from
+ * the page cache of the operating system, shared with other processes
+ * that read the same archive.
+ *
+ * A single mapping can't be bigger than 2GB, the file is mapped in windows
+ * (1GB by default) that are created when first needed. A window that was
+ * mapped while the file was smaller is mapped again when a block after its
+ * end is read. The rare blocks that cross the border between two windows
+ * are copied into a heap buffer instead.
+ *
+ * Java doesn't offer a way to unmap a file, the windows are released by the
+ * garbage collector once no slice refers to them.
+ * </text>
+ */
+
+package big;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only memory mapping of a data file, thread-safe.
+ */
+public class BigMappedFile implements Closeable {
+
+    // the size of each mapped window
+    public static final long defaultWindowSize = 1L << 30;
+
+    private final File file;
+    private final long windowSize;
+    // mapped windows, replaced as a whole when one is added
+    private volatile MappedByteBuffer[] windows = new MappedByteBuffer[0];
+
+    /**
+     * Nothing is mapped until a block is read.
+     * @param file          The data file
+     * @param windowSize    The size of each mapping, at most 2GB
+     */
+    public BigMappedFile(final File file, final long windowSize) {
+        this.file = file;
+        this.windowSize = Math.max(1, Math.min(windowSize, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Provides the bytes between two positions of the file.
+     * @param startPosition First byte to read
+     * @param endPosition   Position after the last byte to read
+     * @return A buffer with the bytes from position zero to its limit,
+     * usually a slice of the mapping, not to be modified
+     * @throws IOException When the bytes are not available
+     */
+    public ByteBuffer slice(final long startPosition, final long endPosition)
+            throws IOException{
+        final long length = endPosition - startPosition;
+        if(startPosition < 0 || length < 0 || length > Integer.MAX_VALUE){
+            throw new IOException("BIG-MAPPED-73 - Invalid range: "
+                    + startPosition + " to " + endPosition);
+        }
+        final int index = (int) (startPosition / windowSize);
+        final long base = index * windowSize;
+        // crossing the border of a window
+        if(endPosition > base + windowSize){
+            return copy(startPosition, (int) length);
+        }
+        final ByteBuffer result = getWindow(index, endPosition - base).duplicate();
+        result.limit((int) (endPosition - base));
+        result.position((int) (startPosition - base));
+        return result.slice();
+    }
+
+    /**
+     * Provides a window that covers at least the given length.
+     */
+    private MappedByteBuffer getWindow(final int index, final long length)
+            throws IOException{
+        final MappedByteBuffer[] current = windows;
+        if(index < current.length && current[index] != null
+                && current[index].capacity() >= length){
+            return current[index];
+        }
+        return map(index, length);
+    }
+
+    private synchronized MappedByteBuffer map(final int index, final long length)
+            throws IOException{
+        MappedByteBuffer[] current = windows;
+        if(index < current.length && current[index] != null
+                && current[index].capacity() >= length){
+            // another thread did it already
+            return current[index];
+        }
+        final long base = index * windowSize;
+        final RandomAccessFile data = new RandomAccessFile(file, "r");
+        final MappedByteBuffer window;
+        try{
+            final long size = Math.min(windowSize, data.length() - base);
+            if(size < length){
+                throw new IOException("BIG-MAPPED-115 - Unexpected end of file at "
+                        + (base + length) + " on " + file.getName());
+            }
+            // the mapping remains valid after the file is closed
+            window = data.getChannel().map(FileChannel.MapMode.READ_ONLY, base, size);
+        }finally{
+            data.close();
+        }
+        current = Arrays.copyOf(current, Math.max(current.length, index + 1));
+        current[index] = window;
+        windows = current;
+        return window;
+    }
+
+    /**
+     * Reads bytes that cross the border of a window into a new buffer.
+     */
+    private ByteBuffer copy(final long startPosition, final int length)
+            throws IOException{
+        final ByteBuffer result = ByteBuffer.allocate(length);
+        final RandomAccessFile data = new RandomAccessFile(file, "r");
+        try{
+            final FileChannel channel = data.getChannel();
+            long position = startPosition;
+            while(result.hasRemaining()){
+                final int count = channel.read(result, position);
+                if(count < 0){
+                    throw new IOException("BIG-MAPPED-142 - Unexpected end of file at "
+                            + position + " on " + file.getName());
+                }
+                position += count;
+            }
+        }finally{
+            data.close();
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Forgets the windows, they are mapped again when needed. The slices
+     * given before remain valid.
+     */
+    @Override
+    public synchronized void close() {
+        windows = new MappedByteBuffer[0];
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-18T13:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigMatch.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text> A line of a stored file that matched a search. </text>
+ */
+
+package big;
+
+/**
+ * A line found by BigGrep.
+ */
+public class BigMatch {
+
+    private final BigEntry entry;
+    private final long line;
+    private final String snippet;
+
+    /**
+     * @param entry     The file with the line
+     * @param line      The number of the line, the first one is 1
+     * @param snippet   The text of the line, cut when too long
+     */
+    public BigMatch(final BigEntry entry, final long line, final String snippet) {
+        this.entry = entry;
+        this.line = line;
+        this.snippet = snippet;
+    }
+
+    /**
+     * @return The file with the line
+     */
+    public BigEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * @return The path of the file
+     */
+    public String getPath() {
+        return entry.getPath();
+    }
+
+    /**
+     * @return The number of the line, the first one is 1
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * @return The text of the line without the line break, cut when too
+     * long
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+
+    @Override
+    public String toString(){
+        return entry.getPath() + ":" + line + ": " + snippet;
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T10:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigPathIndex.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Binary sidecar of the .big-index that permits finding a file by its full
+ * path without reading the whole text index.
+ *
+ * The file (.big-pathidx) is an open-addressing hash table with linear
+ * probing. After a small header come the slots, 32 bytes each: a 64-bit hash
+ * of the path (zero marks an empty slot), the start and end offsets of the
+ * data inside the BIG file and the offset of the line inside .big-index.
+ * The hash only narrows down the candidates, a match is always confirmed by
+ * reading the line from the text index, so a lookup costs one or two page
+ * reads and a path never matches another file that happens to share the
+ * same ending.
+ *
+ * Lines that record the compressed size give us the end offset directly. On
+ * older lines the end offset of an entry is the start of the next entry,
+ * therefore it remains unknown (-1) for the last entry until another one is
+ * written.
+ * Like the SHA1 sidecar, we remember how much of the text index was already
+ * processed (with a fingerprint of its end) and catch up with new lines when
+ * needed.
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Hash table from stored path to data coordinates of a BIG archive.
+ */
+public class BigPathIndex {
+
+    // layout of the sidecar file
+    private static final byte[] magic = "BIGPATH\u0001".getBytes();
+    private static final int
+            headerSize = 64,
+            slotSize = 32,
+            // slots per mapped window (1 Gb)
+            windowShift = 25,
+            // smallest table that we create
+            minimumCapacity = 1024;
+
+    private final File
+            fileIndex,
+            fileSidecar;
+
+    // values kept on the header
+    private long
+            capacity = 0,
+            count = 0,
+            indexCovered = 0,
+            // slot of the last entry, still waiting for its end offset
+            pendingSlot = -1,
+            // fingerprint of the covered part of the text index
+            indexFingerprint = 0;
+    // were the header values loaded from disk?
+    private boolean loaded = false;
+
+    // memory-mapped windows of the table
+    private MappedByteBuffer[] windows = null;
+    // index file used to confirm the matches
+    private RandomAccessFile indexReader = null;
+
+    /**
+     * Prepares the sidecar, nothing is read or written until needed.
+     * @param fileIndex     The .big-index file
+     * @param fileSidecar   The .big-pathidx file
+     */
+    public BigPathIndex(final File fileIndex, final File fileSidecar) {
+        this.fileIndex = fileIndex;
+        this.fileSidecar = fileSidecar;
+    }
+
+    /**
+     * Finds the coordinates of a file inside the BIG archive.
+     * @param path  The full path/name as stored on the index
+     * @return An array with the start of the entry (magic signature included)
+     * and its end, the end is -1 when the entry is the last one. Returns null
+     * when the path is not found.
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    public synchronized long[] find(final String path) throws IOException{
+        final long slot = findSlot(path);
+        if(slot < 0){
+            return null;
+        }
+        return new long[]{getLong(slot, 8), getLong(slot, 16)};
+    }
+
+    /**
+     * Finds the line of a file on the text index, with all its attributes.
+     * @param path  The full path/name as stored on the index
+     * @return The entry, the ordinal is not known (-1) and the end is -1
+     * when the entry is the last one without a size. Returns null when the
+     * path is not found.
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    public synchronized BigEntry findEntry(final String path) throws IOException{
+        final long slot = findSlot(path);
+        if(slot < 0){
+            return null;
+        }
+        return BigEntry.parse(readLine(getLong(slot, 24)), -1, getLong(slot, 16));
+    }
+
+    /**
+     * @return The slot of a path on the table, -1 when not found
+     */
+    private long findSlot(final String path) throws IOException{
+        refresh();
+        if(count == 0){
+            return -1;
+        }
+        final long hash = hash(path);
+        final long mask = capacity - 1;
+        long slot = hash & mask;
+        while(true){
+            final long value = getLong(slot, 0);
+            if(value == 0){
+                return -1;
+            }
+            if(value == hash && path.equals(readPath(getLong(slot, 24)))){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Brings the sidecar up to date with the lines that were added to the
+     * text index since the last time. When the text index became smaller
+     * than what we know about or the lines we know about were replaced,
+     * everything is rebuilt.
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    public synchronized void refresh() throws IOException{
+        final long indexLength = fileIndex.length();
+        // nothing changed since the last time?
+        if(loaded && indexLength == indexCovered){
+            return;
+        }
+        readHeader();
+        if(indexLength < indexCovered || indexFingerprint
+                != BigIndexReader.fingerprint(fileIndex, indexCovered)){
+            rebuild();
+            return;
+        }
+        if(indexLength == indexCovered){
+            return;
+        }
+        catchUp();
+    }
+
+    /**
+     * Throws away the current sidecar and creates a new one from the text
+     * index.
+     * @throws IOException When the sidecar couldn't be written
+     */
+    public synchronized void rebuild() throws IOException{
+        close();
+        count = 0;
+        indexCovered = 0;
+        pendingSlot = -1;
+        // guess the number of lines to avoid growing the table many times
+        final long expected = fileIndex.length() / 64;
+        capacity = minimumCapacity;
+        while(capacity < expected * 2){
+            capacity <<= 1;
+        }
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            // the new length is filled with zeros (empty slots)
+            file.setLength(0);
+            file.setLength(headerSize + capacity * slotSize);
+            writeHeader(file.getChannel());
+        }finally{
+            file.close();
+        }
+        loaded = true;
+        catchUp();
+    }
+
+    /**
+     * Releases the mapped table and the open files.
+     */
+    public synchronized void close(){
+        windows = null;
+        if(indexReader != null){
+            try {
+                indexReader.close();
+            } catch (IOException ex) {
+                // nothing to do
+            }
+            indexReader = null;
+        }
+    }
+
+    /**
+     * Reads the lines after the covered part of the text index and adds
+     * them to the table.
+     */
+    private void catchUp() throws IOException{
+        final BigIndexReader reader = new BigIndexReader(fileIndex, indexCovered);
+        try{
+            while(reader.next()){
+                final String line = reader.getLine();
+                // an example of what we are reading:
+                // 000000000180411 3f1f0990b8200b5e9b5de461a7fa7f7640ae16f7 /C/HappyNuno.txt
+                if(line.length() < 57){
+                    continue;
+                }
+                final long start;
+                try{
+                    start = Long.parseLong(line.substring(0, 15));
+                }catch(NumberFormatException e){
+                    continue;
+                }
+                // older lines are only found on the .big file, the last
+                // one ends with that file when the next is on a segment
+                if(pendingSlot >= 0 && BigEntry.parseSegment(line) > 0){
+                    pendingSlot = -1;
+                }
+                // the previous entry ends where the next block begins,
+                // lines of duplicates in between point to older blocks
+                if(pendingSlot >= 0 && start > getLong(pendingSlot, 8)){
+                    putLong(pendingSlot, 16, start);
+                    pendingSlot = -1;
+                }
+                final long size = BigEntry.parseSize(line);
+                final long slot = insert(BigEntry.parsePath(line), start, 
+                        size < 0 ? -1 : start + BigEntry.signatureLength + size,
+                        reader.getLineOffset());
+                // only entries without size wait for the next block
+                if(size < 0){
+                    pendingSlot = slot;
+                }
+            }
+            indexCovered = reader.getNextOffset();
+        }finally{
+            reader.close();
+        }
+        indexFingerprint = BigIndexReader.fingerprint(fileIndex, indexCovered);
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            writeHeader(file.getChannel());
+        }finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Adds a new path to the table.
+     * @return The slot where it was placed or -1 if the path already existed
+     */
+    private long insert(final String path, final long start, final long end,
+            final long lineOffset) throws IOException{
+        if((count + 1) * 2 > capacity){
+            grow();
+        }
+        final long hash = hash(path);
+        final long mask = capacity - 1;
+        long slot = hash & mask;
+        while(true){
+            final long value = getLong(slot, 0);
+            if(value == 0){
+                break;
+            }
+            // the first file written with a given path wins
+            if(value == hash && path.equals(readPath(getLong(slot, 24)))){
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        putLong(slot, 0, hash);
+        putLong(slot, 8, start);
+        putLong(slot, 16, end);
+        putLong(slot, 24, lineOffset);
+        count++;
+        return slot;
+    }
+
+    /**
+     * Doubles the size of the table, all slots are placed again.
+     */
+    private void grow() throws IOException{
+        final MappedByteBuffer[] oldWindows = getWindows();
+        final long oldCapacity = capacity;
+        final File fileTemp = new File(fileSidecar.getParentFile(),
+                fileSidecar.getName() + "-temp");
+        capacity = oldCapacity * 2;
+        final RandomAccessFile file = new RandomAccessFile(fileTemp, "rw");
+        try{
+            file.setLength(0);
+            file.setLength(headerSize + capacity * slotSize);
+            windows = map(file.getChannel());
+        }finally{
+            file.close();
+        }
+        final long mask = capacity - 1;
+        long newPending = -1;
+        for(long i = 0; i < oldCapacity; i++){
+            final ByteBuffer window = oldWindows[(int)(i >> windowShift)];
+            final int position = (int)((i & ((1 << windowShift) - 1)) * slotSize);
+            final long hash = window.getLong(position);
+            if(hash == 0){
+                continue;
+            }
+            long slot = hash & mask;
+            while(getLong(slot, 0) != 0){
+                slot = (slot + 1) & mask;
+            }
+            for(int j = 0; j < slotSize; j += 8){
+                putLong(slot, j, window.getLong(position + j));
+            }
+            if(i == pendingSlot){
+                newPending = slot;
+            }
+        }
+        pendingSlot = newPending;
+        // replace the old file
+        if(fileSidecar.delete() == false || fileTemp.renameTo(fileSidecar) == false){
+            throw new IOException("BIG-PATH-270 - Failed to replace: "
+                    + fileSidecar.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Loads the header values from disk, creates a new sidecar when it
+     * doesn't exist or isn't valid.
+     */
+    private void readHeader() throws IOException{
+        if(fileSidecar.exists() == false || fileSidecar.length() < headerSize){
+            rebuild();
+            return;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(headerSize);
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "r");
+        try{
+            file.getChannel().read(header, 0);
+        }finally{
+            file.close();
+        }
+        header.flip();
+        final byte[] signature = new byte[magic.length];
+        header.get(signature);
+        final long newCapacity = header.getLong();
+        if(java.util.Arrays.equals(signature, magic) == false
+                || fileSidecar.length() != headerSize + newCapacity * slotSize){
+            rebuild();
+            return;
+        }
+        if(newCapacity != capacity){
+            windows = null;
+        }
+        capacity = newCapacity;
+        count = header.getLong();
+        indexCovered = header.getLong();
+        pendingSlot = header.getLong();
+        indexFingerprint = header.getLong();
+        loaded = true;
+    }
+
+    /**
+     * Writes the header values to disk
+     */
+    private void writeHeader(final FileChannel channel) throws IOException{
+        final ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.put(magic);
+        header.putLong(capacity);
+        header.putLong(count);
+        header.putLong(indexCovered);
+        header.putLong(pendingSlot);
+        header.putLong(indexFingerprint);
+        header.rewind();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Maps the table in windows of at most 1 Gb each.
+     */
+    private MappedByteBuffer[] getWindows() throws IOException{
+        if(windows == null){
+            final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+            try{
+                windows = map(file.getChannel());
+            }finally{
+                // the mapping remains valid after closing the file
+                file.close();
+            }
+        }
+        return windows;
+    }
+
+    private MappedByteBuffer[] map(final FileChannel channel) throws IOException{
+        final long perWindow = 1L << windowShift;
+        final int number = (int) ((capacity + perWindow - 1) / perWindow);
+        final MappedByteBuffer[] result = new MappedByteBuffer[number];
+        for(int i = 0; i < number; i++){
+            final long slots = Math.min(perWindow, capacity - i * perWindow);
+            result[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    headerSize + i * perWindow * slotSize, slots * slotSize);
+        }
+        return result;
+    }
+
+    private long getLong(final long slot, final int field) throws IOException{
+        final ByteBuffer window = getWindows()[(int)(slot >> windowShift)];
+        return window.getLong((int)((slot & ((1 << windowShift) - 1)) * slotSize) + field);
+    }
+
+    private void putLong(final long slot, final int field, final long value)
+            throws IOException{
+        final ByteBuffer window = getWindows()[(int)(slot >> windowShift)];
+        window.putLong((int)((slot & ((1 << windowShift) - 1)) * slotSize) + field, value);
+    }
+
+    /**
+     * Reads the path portion of a line from the text index.
+     */
+    private String readPath(final long lineOffset) throws IOException{
+        return BigEntry.parsePath(readLine(lineOffset));
+    }
+
+    /**
+     * Reads a line from the text index.
+     */
+    private String readLine(final long lineOffset) throws IOException{
+        if(indexReader == null){
+            indexReader = new RandomAccessFile(fileIndex, "r");
+        }
+        return BigIndexReader.readLineAt(indexReader.getChannel(), lineOffset);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a path, never zero since zero marks empty slots.
+     */
+    static long hash(final String path){
+        long result = 0xcbf29ce484222325L;
+        for(int i = 0; i < path.length(); i++){
+            result ^= path.charAt(i);
+            result *= 0x100000001b3L;
+        }
+        return result == 0 ? 1 : result;
+    }
+}
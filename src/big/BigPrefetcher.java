@@ -0,0 +1,328 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T22:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigPrefetcher.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Reads the blocks of the next entries on a background thread while the
+ * current entry is being processed, so that the disk and the processor
+ * work at the same time during a sequential scan of the archive.
+ *
+ * Entries are given in the order they will be taken. The background thread
+ * reads the compressed bytes into a ring of buffers that are reused, and
+ * optionally decompresses them too. It stops reading ahead when the number
+ * of entries or the bytes held reach their limits, and continues when the
+ * entries are taken. An entry bigger than the memory limit is still read,
+ * alone.
+ *
+ * Files on a solid block are always decompressed ahead, the block is kept
+ * until an entry of another block comes.
+ * </text>
+ */
+
+package big;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Background reader of the next entries of a sequential scan.
+ */
+public class BigPrefetcher implements Closeable {
+
+    // the magic signature written before each block
+    private static final byte[] magicSignature = "BIG81nb".getBytes();
+
+    private final File fileMainBIG;
+    private final BigCodecs codecs;
+    private final int depth;
+    private final long maxBytes;
+    private final boolean decompress;
+    private final Thread thread;
+
+    // entries waiting to be read, in the order they will be taken
+    private final ArrayDeque<BigEntry> requests = new ArrayDeque<>();
+    // entries that were read, waiting to be taken
+    private final ArrayDeque<Prefetched> ready = new ArrayDeque<>();
+    // buffers of compressed bytes that can be reused
+    private final ArrayDeque<ByteBuffer> ring = new ArrayDeque<>();
+    // is the background thread reading an entry right now?
+    private boolean busy = false;
+    // bytes held by the entries that are ready
+    private long held = 0;
+    private boolean closed = false;
+
+    // used only by the background thread
+    private final ArrayList<BigDataReader> readers = new ArrayList<>();
+    private long lastSolidKey = -1;
+    private byte[] lastSolidBlock = null;
+
+    /**
+     * An entry that was read ahead.
+     */
+    private static final class Prefetched {
+        BigEntry entry;
+        // the compressed bytes when not decompressed ahead
+        ByteBuffer compressed;
+        byte[] content;
+        IOException error;
+        long size;
+    }
+
+    /**
+     * Starts the background thread, it waits for the entries to read.
+     * @param fileMainBIG   The .big file, first segment of the archive
+     * @param codecs        The codecs of the archive, with the dictionary
+     *                      registered when the archive has one
+     * @param depth         How many entries are read ahead at most
+     * @param maxBytes      How many bytes the entries read ahead can hold
+     * @param decompress    Decompress on the background thread, otherwise
+     *                      only the reads are done ahead
+     */
+    public BigPrefetcher(final File fileMainBIG, final BigCodecs codecs,
+            final int depth, final long maxBytes, final boolean decompress) {
+        this.fileMainBIG = fileMainBIG;
+        this.codecs = codecs;
+        this.depth = Math.max(1, depth);
+        this.maxBytes = maxBytes;
+        this.decompress = decompress;
+        this.thread = new Thread("BIG prefetch: " + fileMainBIG.getName()){
+            @Override
+            public void run(){
+                try{
+                    prefetch();
+                }finally{
+                    for(final BigDataReader reader : readers){
+                        if(reader != null){
+                            reader.close();
+                        }
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds an entry to read, after the ones that were added before.
+     * @param entry The entry, from the index of the archive
+     */
+    public synchronized void add(final BigEntry entry){
+        requests.add(entry);
+        notifyAll();
+    }
+
+    /**
+     * @return How many entries were added and not yet taken
+     */
+    public synchronized int getPending(){
+        return requests.size() + ready.size() + (busy ? 1 : 0);
+    }
+
+    /**
+     * @return How many entries are read ahead at most
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gives the oldest entry that was added, waits until it is read.
+     * @return The entry with its content, null when no entries are pending
+     * @throws IOException When the entry could not be read
+     */
+    public Map.Entry<BigEntry, byte[]> take() throws IOException{
+        final Prefetched item;
+        synchronized(this){
+            while(ready.isEmpty() && (busy || requests.isEmpty() == false)
+                    && closed == false){
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex);
+                }
+            }
+            item = ready.poll();
+            if(item == null){
+                return null;
+            }
+            held -= item.size;
+            notifyAll();
+        }
+        if(item.error != null){
+            throw item.error;
+        }
+        if(item.content == null){
+            // only the read was done ahead
+            try{
+                item.content = codecs.decompress(item.compressed);
+            }finally{
+                release(item.compressed);
+            }
+        }
+        return new AbstractMap.SimpleImmutableEntry<BigEntry, byte[]>(
+                item.entry, item.content);
+    }
+
+    /**
+     * Reads the requested entries until closed.
+     */
+    private void prefetch(){
+        while(true){
+            final BigEntry entry;
+            synchronized(this){
+                // wait for work and for room to keep the result
+                while(closed == false && (requests.isEmpty()
+                        || ready.size() >= depth
+                        || (held >= maxBytes && ready.isEmpty() == false))){
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if(closed){
+                    return;
+                }
+                entry = requests.poll();
+                busy = true;
+            }
+            final Prefetched item = new Prefetched();
+            item.entry = entry;
+            try{
+                read(item);
+            }catch(IOException ex){
+                item.error = ex;
+            }catch(RuntimeException ex){
+                item.error = new IOException(ex);
+            }
+            synchronized(this){
+                ready.add(item);
+                held += item.size;
+                busy = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads the block of an entry, and decompresses it when asked.
+     */
+    private void read(final Prefetched item) throws IOException{
+        final BigEntry entry = item.entry;
+        if(entry.isSolid()){
+            if(entry.getBlockKey() != lastSolidKey){
+                lastSolidKey = -1;
+                final ByteBuffer block = readBlock(entry);
+                try{
+                    lastSolidBlock = codecs.decompress(block);
+                }finally{
+                    release(block);
+                }
+                lastSolidKey = entry.getBlockKey();
+            }
+            if(entry.getOffset() + entry.getLength() > lastSolidBlock.length){
+                throw new IOException("BIG-PREFETCH-238 - File is outside of its solid block: "
+                        + entry.getPath());
+            }
+            item.content = Arrays.copyOfRange(lastSolidBlock, (int) entry.getOffset(),
+                    (int) (entry.getOffset() + entry.getLength()));
+            item.size = item.content.length;
+            return;
+        }
+        final ByteBuffer block = readBlock(entry);
+        if(decompress == false){
+            item.compressed = block;
+            item.size = block.capacity();
+            return;
+        }
+        try{
+            item.content = codecs.decompress(block);
+            item.size = item.content.length;
+        }finally{
+            release(block);
+        }
+    }
+
+    /**
+     * Reads the compressed bytes of an entry into a buffer of the ring.
+     */
+    private ByteBuffer readBlock(final BigEntry entry) throws IOException{
+        final BigDataReader reader = getReader(entry.getSegment());
+        // older entries end where the next signature starts
+        final long end = entry.getDataEnd() >= 0 ? entry.getDataEnd()
+                : reader.find(magicSignature, entry.getDataStart());
+        final long length = end - entry.getDataStart();
+        if(length <= 0 || length > Integer.MAX_VALUE){
+            throw new IOException("BIG-PREFETCH-270 - Invalid entry: " + entry.getPath());
+        }
+        ByteBuffer buffer;
+        synchronized(this){
+            buffer = ring.poll();
+        }
+        if(buffer == null || buffer.capacity() < length){
+            buffer = ByteBuffer.allocate((int) Math.max(length, 65536));
+        }
+        buffer.clear();
+        buffer.limit((int) length);
+        try{
+            reader.readFully(buffer, entry.getDataStart());
+        }catch(IOException ex){
+            release(buffer);
+            throw ex;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the ring, the ring keeps one buffer per entry
+     * that can be read ahead.
+     */
+    private synchronized void release(final ByteBuffer buffer){
+        if(ring.size() <= depth){
+            ring.add(buffer);
+        }
+    }
+
+    /**
+     * Provides the reader of a segment, opened when first needed.
+     */
+    private BigDataReader getReader(final int segment){
+        while(readers.size() <= segment){
+            readers.add(null);
+        }
+        BigDataReader reader = readers.get(segment);
+        if(reader == null){
+            reader = new BigDataReader(
+                    BigSegments.getFile(fileMainBIG, segment), false);
+            readers.set(segment, reader);
+        }
+        return reader;
+    }
+
+    /**
+     * Stops the background thread, the entries not yet taken are dropped.
+     */
+    @Override
+    public synchronized void close(){
+        closed = true;
+        requests.clear();
+        ready.clear();
+        held = 0;
+        notifyAll();
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T09:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigSHA1Index.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Binary sidecar of the .big-index that permits finding files by their SHA1
+ * signature without reading the whole text index.
+ *
+ * The file (.big-sha1idx) starts with a small header followed by fixed size
+ * records of 32 bytes: the 20 bytes of the raw digest, the ordinal of the
+ * entry (int) and the byte offset of the line inside .big-index (long). The
+ * first part of the records is sorted by digest and searched with a binary
+ * search over a memory-mapped view. Records of newly written files are
+ * appended unsorted at the end (the tail) and merged into the sorted part
+ * once the tail grows beyond a fraction of the sorted part. While not merged,
+ * the tail is kept sorted in memory so that lookups remain a binary search.
+ *
+ * The sidecar is never the reference, the text index is. We remember how
+ * many bytes of .big-index were already processed and catch up with new
+ * lines whenever needed. If the text index got smaller (restored after a
+ * crash) or the end of the covered part no longer matches the fingerprint
+ * kept on the header (restored and then written again) then the sidecar is
+ * rebuilt from scratch.
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Sorted SHA1 lookup table for a BIG archive.
+ */
+public class BigSHA1Index {
+
+    // layout of the sidecar file
+    private static final byte[] magic = "BIGSHA1\u0001".getBytes();
+    private static final int
+            headerSize = 64,
+            recordSize = 32,
+            digestSize = 20,
+            // records per mapped window (1 Gb)
+            windowShift = 25,
+            // how many records we keep in memory before writing them
+            pendingLimit = 262144,
+            // the tail is merged once bigger than sorted/8, within these limits
+            tailMinimum = 16384,
+            tailMaximum = 4194304;
+
+    private final File
+            fileIndex,
+            fileSidecar;
+
+    // values kept on the header
+    private long
+            sortedCount = 0,
+            tailCount = 0,
+            indexCovered = 0,
+            nextOrdinal = 0,
+            // fingerprint of the covered part of the text index
+            indexFingerprint = 0;
+    // were the header values loaded from disk?
+    private boolean loaded = false;
+
+    // memory-mapped windows of the sorted part, created on demand
+    private MappedByteBuffer[] windows = null;
+    // sorted copy of the tail records, created on demand
+    private byte[] tailSorted = null;
+
+    /**
+     * Prepares the sidecar, nothing is read or written until needed.
+     * @param fileIndex     The .big-index file
+     * @param fileSidecar   The .big-sha1idx file
+     */
+    public BigSHA1Index(final File fileIndex, final File fileSidecar) {
+        this.fileIndex = fileIndex;
+        this.fileSidecar = fileSidecar;
+    }
+
+    /**
+     * Finds the index lines of all files with a given SHA1 signature.
+     * @param idSHA1    The SHA1 signature in hex format
+     * @param maxResults Stop after finding this number of matches
+     * @return The matching index lines, in the order they were written
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    public synchronized ArrayList<String> find(final String idSHA1,
+            final int maxResults) throws IOException{
+        // make sure we know about all the lines on the text index
+        refresh();
+        return search(idSHA1, maxResults);
+    }
+
+    /**
+     * Finds the index lines of the files with a given SHA1 signature, only
+     * looking at the lines that were already added to the sidecar. Useful
+     * while the text index is being written and its last line might not be
+     * complete yet.
+     * @param idSHA1    The SHA1 signature in hex format
+     * @param maxResults Stop after finding this number of matches
+     * @return The matching index lines, in the order they were written
+     * @throws IOException When the sidecar couldn't be read
+     */
+    public synchronized ArrayList<String> findIndexed(final String idSHA1,
+            final int maxResults) throws IOException{
+        if(loaded == false){
+            readHeader();
+        }
+        return search(idSHA1, maxResults);
+    }
+
+    private ArrayList<String> search(final String idSHA1,
+            final int maxResults) throws IOException{
+        final ArrayList<String> result = new ArrayList<>();
+        final byte[] digest = toDigest(idSHA1, 0);
+        if(digest == null){
+            return result;
+        }
+        // collect the matches as pairs of ordinal/offset
+        final ArrayList<long[]> matches = new ArrayList<>();
+        final MappedByteBuffer[] view = getWindows();
+        // binary search on the sorted part for the first match
+        long low = 0, high = sortedCount;
+        while(low < high){
+            final long middle = (low + high) >>> 1;
+            if(compare(view, middle, digest) < 0){
+                low = middle + 1;
+            }else{
+                high = middle;
+            }
+        }
+        for(long i = low; i < sortedCount && compare(view, i, digest) == 0; i++){
+            final ByteBuffer window = view[(int)(i >> windowShift)];
+            final int position = (int)((i & ((1 << windowShift) - 1)) * recordSize);
+            matches.add(new long[]{window.getInt(position + digestSize),
+                window.getLong(position + digestSize + 4)});
+        }
+        // the same for the tail, using the sorted copy in memory
+        if(tailCount > 0){
+            if(tailSorted == null){
+                tailSorted = readRecords(sortedCount, tailCount);
+                sortRecords(tailSorted, 0, (int) tailCount - 1);
+            }
+            final ByteBuffer data = ByteBuffer.wrap(tailSorted);
+            int first = 0, last = (int) tailCount;
+            while(first < last){
+                final int middle = (first + last) >>> 1;
+                if(compare(tailSorted, middle * recordSize, digest, 0) < 0){
+                    first = middle + 1;
+                }else{
+                    last = middle;
+                }
+            }
+            for(int i = first; i < tailCount
+                    && compare(tailSorted, i * recordSize, digest, 0) == 0; i++){
+                final int position = i * recordSize;
+                matches.add(new long[]{data.getInt(position + digestSize),
+                    data.getLong(position + digestSize + 4)});
+            }
+        }
+        // keep the same order as the text index
+        java.util.Collections.sort(matches, new java.util.Comparator<long[]>(){
+            @Override
+            public int compare(long[] o1, long[] o2) {
+                return Long.compare(o1[0], o2[0]);
+            }
+        });
+        // now read the lines from the text index
+        final RandomAccessFile index = new RandomAccessFile(fileIndex, "r");
+        try{
+            for(final long[] match : matches){
+                if(result.size() >= maxResults){
+                    break;
+                }
+                result.add(BigIndexReader.readLineAt(index.getChannel(), match[1]));
+            }
+        }finally{
+            index.close();
+        }
+        return result;
+    }
+
+    /**
+     * Brings the sidecar up to date with the lines that were added to the
+     * text index since the last time. When the text index became smaller
+     * than what we know about or the lines we know about were replaced,
+     * everything is rebuilt.
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    public synchronized void refresh() throws IOException{
+        final long indexLength = fileIndex.length();
+        // nothing changed since the last time?
+        if(loaded && indexLength == indexCovered){
+            return;
+        }
+        readHeader();
+        if(indexLength < indexCovered || indexFingerprint
+                != BigIndexReader.fingerprint(fileIndex, indexCovered)){
+            rebuild();
+            return;
+        }
+        if(indexLength == indexCovered){
+            return;
+        }
+        catchUp();
+    }
+
+    /**
+     * Throws away the current sidecar and creates a new one from the text
+     * index.
+     * @throws IOException When the sidecar couldn't be written
+     */
+    public synchronized void rebuild() throws IOException{
+        windows = null;
+        tailSorted = null;
+        sortedCount = 0;
+        tailCount = 0;
+        indexCovered = 0;
+        nextOrdinal = 0;
+        indexFingerprint = BigIndexReader.fingerprint(fileIndex, 0);
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            file.setLength(headerSize);
+            writeHeader(file.getChannel());
+        }finally{
+            file.close();
+        }
+        loaded = true;
+        catchUp();
+    }
+
+    /**
+     * Reads the lines after the covered part of the text index and adds
+     * their records to the tail.
+     */
+    private void catchUp() throws IOException{
+        final BigIndexReader reader = new BigIndexReader(fileIndex, indexCovered);
+        final ByteBuffer pending = ByteBuffer.allocate(pendingLimit * recordSize);
+        try{
+            while(reader.next()){
+                final String line = reader.getLine();
+                final long ordinal = nextOrdinal++;
+                // lines without a valid signature are not indexed
+                final byte[] digest = line.length() < 56 ? null : toDigest(line, 16);
+                if(digest != null){
+                    pending.put(digest);
+                    pending.putInt((int) ordinal);
+                    pending.putLong(reader.getLineOffset());
+                }
+                if(pending.hasRemaining() == false){
+                    appendPending(pending, reader.getNextOffset());
+                    // while catching up, merge in doubling steps
+                    if(tailCount > Math.max(tailMinimum,
+                            Math.min(sortedCount, tailMaximum))){
+                        merge();
+                    }
+                }
+            }
+            appendPending(pending, reader.getNextOffset());
+        }finally{
+            reader.close();
+        }
+        if(tailCount > Math.max(tailMinimum, Math.min(sortedCount / 8, tailMaximum))){
+            merge();
+        }
+    }
+
+    /**
+     * Writes the pending records at the end of the tail.
+     */
+    private void appendPending(final ByteBuffer pending, final long covered)
+            throws IOException{
+        pending.flip();
+        final long count = pending.remaining() / recordSize;
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            final FileChannel channel = file.getChannel();
+            long position = headerSize + (sortedCount + tailCount) * recordSize;
+            while(pending.hasRemaining()){
+                position += channel.write(pending, position);
+            }
+            tailCount += count;
+            indexCovered = covered;
+            indexFingerprint = BigIndexReader.fingerprint(fileIndex, covered);
+            writeHeader(channel);
+        }finally{
+            file.close();
+        }
+        pending.clear();
+        tailSorted = null;
+    }
+
+    /**
+     * Sorts the tail and merges it with the sorted part, the result is
+     * written to a new file that replaces the current sidecar.
+     */
+    private void merge() throws IOException{
+        final byte[] tail = tailSorted != null ? tailSorted
+                : readRecords(sortedCount, tailCount);
+        if(tail != tailSorted){
+            sortRecords(tail, 0, (int) tailCount - 1);
+        }
+        final File fileTemp = new File(fileSidecar.getParentFile(),
+                fileSidecar.getName() + "-temp");
+        final RandomAccessFile source = new RandomAccessFile(fileSidecar, "r");
+        final RandomAccessFile target = new RandomAccessFile(fileTemp, "rw");
+        try{
+            target.setLength(0);
+            final FileChannel input = source.getChannel();
+            final FileChannel output = target.getChannel();
+            final ByteBuffer bufferIn = ByteBuffer.allocate(recordSize * 8192);
+            final ByteBuffer bufferOut = ByteBuffer.allocate(recordSize * 8192);
+            final byte[] record = new byte[recordSize];
+            long readPosition = headerSize,
+                    readCount = 0;
+            long writePosition = headerSize;
+            int tailIndex = 0;
+            bufferIn.limit(0);
+            while(readCount < sortedCount || tailIndex < tailCount){
+                // do we need more records from the sorted part?
+                if(readCount < sortedCount && bufferIn.hasRemaining() == false){
+                    bufferIn.clear();
+                    final long bytesLeft = sortedCount * recordSize
+                            - (readPosition - headerSize);
+                    if(bytesLeft < bufferIn.capacity()){
+                        bufferIn.limit((int) bytesLeft);
+                    }
+                    while(bufferIn.hasRemaining()){
+                        final int count = input.read(bufferIn, readPosition);
+                        if(count < 0){
+                            throw new IOException("BIG-SHA1-231 - Sidecar is truncated");
+                        }
+                        readPosition += count;
+                    }
+                    bufferIn.flip();
+                }
+                // pick the smallest of both
+                final boolean fromSorted = readCount < sortedCount && (tailIndex >= tailCount
+                        || compare(bufferIn.array(), bufferIn.position(),
+                            tail, tailIndex * recordSize) <= 0);
+                if(fromSorted){
+                    bufferIn.get(record);
+                    readCount++;
+                    bufferOut.put(record);
+                }else{
+                    bufferOut.put(tail, tailIndex * recordSize, recordSize);
+                    tailIndex++;
+                }
+                if(bufferOut.hasRemaining() == false){
+                    bufferOut.flip();
+                    while(bufferOut.hasRemaining()){
+                        writePosition += output.write(bufferOut, writePosition);
+                    }
+                    bufferOut.clear();
+                }
+            }
+            bufferOut.flip();
+            while(bufferOut.hasRemaining()){
+                writePosition += output.write(bufferOut, writePosition);
+            }
+            sortedCount += tailCount;
+            tailCount = 0;
+            writeHeader(output);
+        }finally{
+            source.close();
+            target.close();
+        }
+        windows = null;
+        tailSorted = null;
+        // replace the old file
+        if(fileSidecar.delete() == false || fileTemp.renameTo(fileSidecar) == false){
+            throw new IOException("BIG-SHA1-262 - Failed to replace: "
+                    + fileSidecar.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Loads the header values from disk. Records written after the last
+     * header update (e.g. interrupted process) are discarded.
+     */
+    private void readHeader() throws IOException{
+        if(fileSidecar.exists() == false || fileSidecar.length() < headerSize){
+            rebuild();
+            return;
+        }
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            final ByteBuffer header = ByteBuffer.allocate(headerSize);
+            file.getChannel().read(header, 0);
+            header.flip();
+            final byte[] signature = new byte[magic.length];
+            header.get(signature);
+            if(java.util.Arrays.equals(signature, magic) == false){
+                file.close();
+                rebuild();
+                return;
+            }
+            sortedCount = header.getLong();
+            tailCount = header.getLong();
+            indexCovered = header.getLong();
+            nextOrdinal = header.getLong();
+            indexFingerprint = header.getLong();
+            final long expected = headerSize + (sortedCount + tailCount) * recordSize;
+            if(file.length() > expected){
+                file.setLength(expected);
+            }
+            loaded = true;
+        }finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the header values to disk
+     */
+    private void writeHeader(final FileChannel channel) throws IOException{
+        final ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.put(magic);
+        header.putLong(sortedCount);
+        header.putLong(tailCount);
+        header.putLong(indexCovered);
+        header.putLong(nextOrdinal);
+        header.putLong(indexFingerprint);
+        header.rewind();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Maps the sorted part in windows of at most 1 Gb each.
+     */
+    private MappedByteBuffer[] getWindows() throws IOException{
+        if(windows != null){
+            return windows;
+        }
+        final long perWindow = 1L << windowShift;
+        final int count = (int) ((sortedCount + perWindow - 1) / perWindow);
+        final MappedByteBuffer[] result = new MappedByteBuffer[count];
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "r");
+        try{
+            for(int i = 0; i < count; i++){
+                final long records = Math.min(perWindow, sortedCount - i * perWindow);
+                result[i] = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        headerSize + i * perWindow * recordSize, records * recordSize);
+            }
+        }finally{
+            // the mapping remains valid after closing the file
+            file.close();
+        }
+        windows = result;
+        return windows;
+    }
+
+    /**
+     * Reads a range of records into memory.
+     */
+    private byte[] readRecords(final long first, final long count) throws IOException{
+        final byte[] result = new byte[(int) (count * recordSize)];
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "r");
+        try{
+            final ByteBuffer data = ByteBuffer.wrap(result);
+            long position = headerSize + first * recordSize;
+            while(data.hasRemaining()){
+                final int read = file.getChannel().read(data, position);
+                if(read < 0){
+                    throw new IOException("BIG-SHA1-339 - Sidecar is truncated");
+                }
+                position += read;
+            }
+        }finally{
+            file.close();
+        }
+        return result;
+    }
+
+    /**
+     * Compares the digest of a record inside the mapped windows.
+     */
+    private static int compare(final MappedByteBuffer[] view, final long record,
+            final byte[] digest){
+        final ByteBuffer window = view[(int)(record >> windowShift)];
+        final int position = (int)((record & ((1 << windowShift) - 1)) * recordSize);
+        for(int i = 0; i < digestSize; i++){
+            final int difference = (window.get(position + i) & 0xff) - (digest[i] & 0xff);
+            if(difference != 0){
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares two records by digest and then by ordinal.
+     */
+    private static int compare(final byte[] data1, final int position1,
+            final byte[] data2, final int position2){
+        final int length = data2.length == digestSize ? digestSize : digestSize + 4;
+        for(int i = 0; i < length; i++){
+            final int difference = (data1[position1 + i] & 0xff)
+                    - (data2[position2 + i] & 0xff);
+            if(difference != 0){
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * In-place quicksort of fixed size records.
+     */
+    private static void sortRecords(final byte[] data, int low, int high){
+        final byte[] pivot = new byte[recordSize];
+        final byte[] swap = new byte[recordSize];
+        while(low < high){
+            System.arraycopy(data, ((low + high) >>> 1) * recordSize, pivot, 0, recordSize);
+            int i = low, j = high;
+            while(i <= j){
+                while(compare(data, i * recordSize, pivot, 0) < 0){
+                    i++;
+                }
+                while(compare(data, j * recordSize, pivot, 0) > 0){
+                    j--;
+                }
+                if(i <= j){
+                    System.arraycopy(data, i * recordSize, swap, 0, recordSize);
+                    System.arraycopy(data, j * recordSize, data, i * recordSize, recordSize);
+                    System.arraycopy(swap, 0, data, j * recordSize, recordSize);
+                    i++;
+                    j--;
+                }
+            }
+            // recurse on the smaller side to keep the stack small
+            if(j - low < high - i){
+                sortRecords(data, low, j);
+                low = i;
+            }else{
+                sortRecords(data, i, high);
+                high = j;
+            }
+        }
+    }
+
+    /**
+     * Converts 40 hex characters into the 20 bytes of a digest.
+     * @param text      The text containing the signature
+     * @param offset    Where the signature starts
+     * @return The digest or null when the text is not a valid signature
+     */
+    static byte[] toDigest(final String text, final int offset){
+        if(text == null || text.length() < offset + digestSize * 2){
+            return null;
+        }
+        final byte[] result = new byte[digestSize];
+        for(int i = 0; i < digestSize; i++){
+            final int high = Character.digit(text.charAt(offset + i * 2), 16);
+            final int low = Character.digit(text.charAt(offset + i * 2 + 1), 16);
+            if(high < 0 || low < 0){
+                return null;
+            }
+            result[i] = (byte) ((high << 4) | low);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T20:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigSegments.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * The binary data of an archive can be split over several files. The first
+ * segment is the .big file itself, so that archives written before remain
+ * valid. When the current segment reaches its size limit, the next blocks
+ * are written on name.big.001, name.big.002 and so on. A segment that is
+ * followed by another one is never written again, it can be copied while
+ * the archive keeps growing.
+ *
+ * The index tells the segment of each block (attribute seg=), the position
+ * of the block is counted from the beginning of its segment.
+ *
+ * Each segment is opened only when a block on it is read, the channels
+ * are shared by all threads and read with positional reads. Segments can
+ * also be mapped into memory, the blocks are then slices of the mapping.
+ * </text>
+ */
+
+package big;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Names and read channels of the data segments of an archive.
+ */
+public class BigSegments implements Closeable {
+
+    private final File fileMainBIG;
+    // opened segments, replaced as a whole when a new one is opened
+    private volatile FileChannel[] channels = new FileChannel[0];
+    // mapped segments, replaced as a whole when a new one is mapped
+    private volatile BigMappedFile[] mappings = new BigMappedFile[0];
+    private volatile boolean closed = false;
+
+    /**
+     * Nothing is opened until a segment is read.
+     * @param fileMainBIG   The .big file, first segment of the archive
+     */
+    public BigSegments(final File fileMainBIG) {
+        this.fileMainBIG = fileMainBIG;
+    }
+
+    /**
+     * @param fileMainBIG   The .big file
+     * @param segment       The number of the segment, zero is the first
+     * @return The file with the data of the segment
+     */
+    public static File getFile(final File fileMainBIG, final int segment){
+        if(segment == 0){
+            return fileMainBIG;
+        }
+        return new File(fileMainBIG.getParentFile(), fileMainBIG.getName()
+                + "." + String.format("%03d", segment));
+    }
+
+    /**
+     * @param fileMainBIG   The .big file
+     * @return The number of the last segment that exists, where new blocks
+     * are appended
+     */
+    public static int findLast(final File fileMainBIG){
+        int segment = 0;
+        while(getFile(fileMainBIG, segment + 1).exists()){
+            segment++;
+        }
+        return segment;
+    }
+
+    /**
+     * Provides the channel of a segment, it is opened when needed. Channels
+     * closed by an interrupted thread are opened again.
+     * @param segment   The number of the segment
+     * @return The open channel, must not be closed by the caller
+     * @throws IOException When the segment can't be opened
+     */
+    public FileChannel getChannel(final int segment) throws IOException{
+        final FileChannel[] current = channels;
+        if(segment < current.length && current[segment] != null
+                && current[segment].isOpen()){
+            return current[segment];
+        }
+        return open(segment);
+    }
+
+    private synchronized FileChannel open(final int segment) throws IOException{
+        if(closed){
+            throw new ClosedChannelException();
+        }
+        FileChannel[] current = channels;
+        if(segment < current.length && current[segment] != null){
+            if(current[segment].isOpen()){
+                // another thread did it already
+                return current[segment];
+            }
+            // the current thread was the one interrupted, don't hide that
+            if(Thread.currentThread().isInterrupted()){
+                throw new ClosedChannelException();
+            }
+        }
+        if(segment >= current.length){
+            current = Arrays.copyOf(current, segment + 1);
+        }else{
+            current = current.clone();
+        }
+        current[segment] = new RandomAccessFile(
+                getFile(fileMainBIG, segment), "r").getChannel();
+        channels = current;
+        return current[segment];
+    }
+
+    /**
+     * Provides the bytes of a block from the memory mapping of its segment,
+     * the segment is mapped when needed.
+     * @param segment       The number of the segment
+     * @param startPosition First byte to read
+     * @param endPosition   Position after the last byte to read
+     * @return A slice of the mapping, not to be modified
+     * @throws IOException When the bytes are not available
+     */
+    public ByteBuffer slice(final int segment, final long startPosition,
+            final long endPosition) throws IOException{
+        final BigMappedFile[] current = mappings;
+        if(segment < current.length && current[segment] != null){
+            return current[segment].slice(startPosition, endPosition);
+        }
+        return map(segment).slice(startPosition, endPosition);
+    }
+
+    private synchronized BigMappedFile map(final int segment) throws IOException{
+        if(closed){
+            throw new ClosedChannelException();
+        }
+        BigMappedFile[] current = mappings;
+        if(segment < current.length && current[segment] != null){
+            return current[segment];
+        }
+        current = Arrays.copyOf(current, Math.max(current.length, segment + 1));
+        current[segment] = new BigMappedFile(getFile(fileMainBIG, segment),
+                BigMappedFile.defaultWindowSize);
+        mappings = current;
+        return current[segment];
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for(final BigMappedFile mapping : mappings){
+            if(mapping != null){
+                mapping.close();
+            }
+        }
+        for(final FileChannel channel : channels){
+            if(channel != null){
+                channel.close();
+            }
+        }
+    }
+}
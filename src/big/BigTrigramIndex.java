@@ -0,0 +1,959 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-18T11:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigTrigramIndex.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Binary sidecar of the .big-index that permits finding the files whose
+ * path contains a given text, without looking at every path.
+ *
+ * Each path is lower-cased and cut into trigrams, all the sequences of
+ * three bytes of its UTF-8 form. For every trigram the sidecar keeps the
+ * list of lines whose path has it. A text is searched by taking the lines
+ * that have all the trigrams of the text, these are the candidates. Since
+ * two trigrams can be present without being next to each other, the
+ * candidates are only a hint and must be confirmed against the path.
+ * Texts shorter than three bytes have no trigrams and can't be searched.
+ * Lines whose trigrams are not known are listed under the trigram zero
+ * (three NUL bytes, never found on a path) and are candidates of every
+ * search.
+ *
+ * The file (.big-trigramidx) starts with a small header followed by runs,
+ * each one covering up to 65536 consecutive lines of the text index, or
+ * less when the lines have so many trigrams that the run would need too
+ * much memory to be built. A run has its own header, a directory of its
+ * trigrams sorted by value (the trigram, how many lines have it and where
+ * its list starts) and the lists of lines, numbered from the first line of
+ * the run and written as variable-length differences. Runs are built in
+ * memory and mapped for reading.
+ *
+ * Like the other sidecars we remember how much of the text index was
+ * already processed and catch up with new lines when needed. The last run
+ * is built again together with the new lines while it is not full, so the
+ * number of runs remains small. Its lists are read back from the sidecar,
+ * the old lines are not looked at again. Sidecars whose lines are
+ * expensive to index and that are refreshed after each write (the content
+ * of the files) rather keep the last run in memory while it is not full
+ * and only write it when closed, so that adding files one at a time
+ * doesn't write the same run over and over. If the text index got smaller
+ * (restored after a crash) or no longer matches the fingerprint of the
+ * covered part then the sidecar is rebuilt from scratch.
+ * </text>
+ */
+
+package big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Trigram lookup table over the paths of a BIG archive.
+ */
+public class BigTrigramIndex {
+
+    // layout of the sidecar file
+    private static final byte[] magic = "BIGTRI\u0000\u0001".getBytes();
+    private static final int
+            headerSize = 64,
+            runHeaderSize = 32,
+            directorySize = 12,
+            // lines per run
+            runLines = 65536;
+    // lines listed under this trigram are candidates of every search
+    static final int unknown = 0;
+
+    private final File
+            fileIndex,
+            fileSidecar;
+    // a run is written when it has this many pairs of trigram and line
+    private final int maxPairs;
+    // is the last run kept in memory until full or closed?
+    private final boolean keepOpenRun;
+
+    // values kept on the header
+    private long
+            runCount = 0,
+            indexCovered = 0,
+            nextOrdinal = 0,
+            dataLength = headerSize,
+            // fingerprint of the covered part of the text index
+            indexFingerprint = 0;
+    // were the header values loaded from disk?
+    private boolean loaded = false;
+
+    // the runs on disk and their mappings, created on demand
+    private final ArrayList<Run> runs = new ArrayList<>();
+    // the last run when kept in memory, null when written or not used
+    private OpenRun open = null;
+
+    /**
+     * A run of lines on the sidecar.
+     */
+    private static final class Run{
+        // where the run starts on the sidecar and its size
+        long position, length;
+        // the first line of the run, its number of lines and where the
+        // first line starts on the text index
+        long firstOrdinal, lineCount, indexStart;
+        int trigramCount;
+        ByteBuffer data = null;
+    }
+
+    /**
+     * The last run while its lines are kept in memory. It continues the
+     * runs on disk: the header says the text index is covered up to where
+     * this run starts.
+     */
+    private static final class OpenRun{
+        // pairs of trigram and line, sorted by trigram when encoded
+        long[] pairs;
+        int pairCount, lineCount;
+        long firstOrdinal, indexStart;
+        // how far the text index was read and the fingerprint of that part
+        long covered, nextOrdinal, fingerprint;
+        // the run encoded for searching, null when lines were added since
+        Run run = null;
+    }
+
+    /**
+     * Prepares the sidecar, nothing is read or written until needed.
+     * @param fileIndex     The .big-index file
+     * @param fileSidecar   The .big-trigramidx file
+     */
+    public BigTrigramIndex(final File fileIndex, final File fileSidecar) {
+        this(fileIndex, fileSidecar, 1 << 24, false);
+    }
+
+    /**
+     * Prepares a sidecar whose lines might have many trigrams.
+     * @param fileIndex     The .big-index file
+     * @param fileSidecar   The sidecar file
+     * @param maxPairs      How many pairs of trigram and line are kept in
+     *                      memory while building a run, eight bytes each
+     * @param keepOpenRun   True to keep the last run in memory until it is
+     *                      full or close() is called, false to write it at
+     *                      the end of each refresh
+     */
+    protected BigTrigramIndex(final File fileIndex, final File fileSidecar,
+            final int maxPairs, final boolean keepOpenRun) {
+        this.fileIndex = fileIndex;
+        this.fileSidecar = fileSidecar;
+        this.maxPairs = maxPairs;
+        this.keepOpenRun = keepOpenRun;
+    }
+
+    /**
+     * Finds the lines whose path might contain a given text, looking at all
+     * the lines of the text index.
+     * @param text  The text to find, case is ignored
+     * @return The ordinals of the candidate lines in ascending order, null
+     * when the text is too short to use the sidecar
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    public synchronized long[] find(final String text) throws IOException{
+        final int[] trigrams = getQueryTrigrams(text);
+        if(trigrams.length == 0){
+            return null;
+        }
+        return find(trigrams);
+    }
+
+    /**
+     * Finds the lines that have all the given trigrams, looking at all the
+     * lines of the text index.
+     * @param trigrams  The trigrams, as given by getQueryTrigrams()
+     * @return The ordinals of the candidate lines in ascending order
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    protected synchronized long[] find(final int[] trigrams) throws IOException{
+        refresh();
+        long[] result = new long[0];
+        for(final Run run : getRuns()){
+            final long[] found = find(trigrams, run);
+            final int size = result.length;
+            result = Arrays.copyOf(result, size + found.length);
+            System.arraycopy(found, 0, result, size, found.length);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the candidate lines of a single run, only looking at the lines
+     * that were already added to the sidecar. Long searches can be done run
+     * after run, showing the results as they come and stopping early.
+     * @param text  The text to find, case is ignored
+     * @param run   The number of the run, from zero to getRunCount()
+     * @return The ordinals of the candidate lines in ascending order, null
+     * when the text is too short to use the sidecar
+     * @throws IOException When the sidecar couldn't be read
+     */
+    public synchronized long[] find(final String text, final int run)
+            throws IOException{
+        if(loaded == false){
+            readHeader();
+        }
+        final int[] trigrams = getQueryTrigrams(text);
+        if(trigrams.length == 0){
+            return null;
+        }
+        return find(trigrams, getRuns().get(run));
+    }
+
+    /**
+     * @return The number of runs on the sidecar, including the last one
+     * when kept in memory
+     * @throws IOException When the sidecar couldn't be read
+     */
+    public synchronized int getRunCount() throws IOException{
+        if(loaded == false){
+            readHeader();
+        }
+        return open == null ? runs.size() : runs.size() + 1;
+    }
+
+    /**
+     * @return The runs on disk followed by the one kept in memory
+     */
+    private List<Run> getRuns(){
+        if(open == null){
+            return runs;
+        }
+        if(open.run == null){
+            open.run = encodeRun(open.pairs, open.pairCount, open.firstOrdinal,
+                    open.lineCount, open.indexStart);
+        }
+        final ArrayList<Run> result = new ArrayList<>(runs);
+        result.add(open.run);
+        return result;
+    }
+
+    /**
+     * Reads the entries of some lines from the text index, e.g. to look at
+     * the files of the candidates. Only the runs with candidates are read.
+     * @param ordinals      The ordinals of the lines, in ascending order
+     * @param fileMainBIG   The .big file, older lines without size end
+     *                      with it when they are the last ones
+     * @return The entries, lines that are not about a file are skipped
+     * @throws IOException When the text index couldn't be read
+     */
+    public synchronized List<BigEntry> getEntries(final long[] ordinals,
+            final File fileMainBIG) throws IOException{
+        if(loaded == false){
+            readHeader();
+        }
+        final ArrayList<BigEntry> result = new ArrayList<>();
+        int next = 0;
+        for(final Run run : getRuns()){
+            if(next == ordinals.length){
+                break;
+            }
+            if(ordinals[next] >= run.firstOrdinal + run.lineCount){
+                continue;
+            }
+            next = readEntries(run, ordinals, next, fileMainBIG, result);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the entries of the candidates that are on a run.
+     * @return The position of the first ordinal after the run
+     */
+    private int readEntries(final Run run, final long[] ordinals, int next,
+            final File fileMainBIG, final List<BigEntry> result)
+            throws IOException{
+        final long runEnd = run.firstOrdinal + run.lineCount;
+        // older lines without size end where the next block starts
+        final ArrayList<BigEntry> pending = new ArrayList<>();
+        long pendingPosition = -1,
+                ordinal = run.firstOrdinal;
+        final BigIndexReader reader = new BigIndexReader(fileIndex, run.indexStart);
+        try{
+            while(reader.next()){
+                final String line = reader.getLine();
+                final long position = BigEntry.parsePosition(line);
+                if(pending.isEmpty() == false && position > pendingPosition){
+                    final long end = BigEntry.parseSegment(line) > 0
+                            ? fileMainBIG.length() : position;
+                    resolvePending(pending, end, result);
+                }
+                if(next == ordinals.length || ordinals[next] >= runEnd){
+                    if(pending.isEmpty()){
+                        break;
+                    }
+                }else if(ordinals[next] == ordinal){
+                    next++;
+                    final BigEntry entry = BigEntry.parse(line, ordinal, -1);
+                    if(entry != null && entry.getDataEnd() >= 0){
+                        result.add(entry);
+                    }else if(entry != null){
+                        pendingPosition = position;
+                        pending.add(entry);
+                    }
+                }
+                ordinal++;
+            }
+        }finally{
+            reader.close();
+        }
+        resolvePending(pending, fileMainBIG.length(), result);
+        return next;
+    }
+
+    /**
+     * The entries waiting for the next block end at the given position.
+     */
+    private static void resolvePending(final List<BigEntry> pending,
+            final long end, final List<BigEntry> result){
+        for(final BigEntry entry : pending){
+            result.add(new BigEntry(entry.getOrdinal(), entry.getPosition(),
+                    entry.getSignature(), entry.getPath(), -1, end,
+                    entry.getCodec()));
+        }
+        pending.clear();
+    }
+
+    /**
+     * Intersects the lists of some trigrams on a run, the lines whose
+     * trigrams are not known are added to the result.
+     */
+    private long[] find(final int[] trigrams, final Run run) throws IOException{
+        final ByteBuffer data = getData(run);
+        int[] result = intersect(data, run, trigrams);
+        final int entry = findTrigram(data, run.trigramCount, unknown);
+        if(entry >= 0){
+            result = merge(result, readList(data, run, entry));
+        }
+        final long[] ordinals = new long[result.length];
+        for(int i = 0; i < result.length; i++){
+            ordinals[i] = run.firstOrdinal + result[i];
+        }
+        return ordinals;
+    }
+
+    /**
+     * Provides the lines of a run that have all the given trigrams.
+     */
+    private static int[] intersect(final ByteBuffer data, final Run run,
+            final int[] trigrams){
+        // look up the trigrams, any missing one means no results
+        final int[] entries = new int[trigrams.length];
+        for(int i = 0; i < trigrams.length; i++){
+            entries[i] = findTrigram(data, run.trigramCount, trigrams[i]);
+            if(entries[i] < 0){
+                return new int[0];
+            }
+        }
+        // the shortest list first, the result only gets smaller
+        final int[] counts = new int[trigrams.length];
+        for(int i = 0; i < trigrams.length; i++){
+            counts[i] = data.getInt(runHeaderSize + entries[i] * directorySize + 4);
+        }
+        int[] result = null;
+        int size = 0;
+        for(int step = 0; step < trigrams.length && (result == null || size > 0); step++){
+            int shortest = -1;
+            for(int i = 0; i < trigrams.length; i++){
+                if(counts[i] >= 0 && (shortest < 0 || counts[i] < counts[shortest])){
+                    shortest = i;
+                }
+            }
+            final int[] list = readList(data, run, entries[shortest]);
+            counts[shortest] = -1;
+            if(result == null){
+                result = list;
+                size = list.length;
+                continue;
+            }
+            // both lists are sorted
+            int kept = 0, j = 0;
+            for(int i = 0; i < size; i++){
+                while(j < list.length && list[j] < result[i]){
+                    j++;
+                }
+                if(j < list.length && list[j] == result[i]){
+                    result[kept++] = result[i];
+                }
+            }
+            size = kept;
+        }
+        return result == null ? new int[0] : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Joins two sorted lists of lines, without repeating lines.
+     */
+    private static int[] merge(final int[] first, final int[] second){
+        final int[] result = new int[first.length + second.length];
+        int i = 0, j = 0, size = 0;
+        while(i < first.length || j < second.length){
+            final int value;
+            if(j == second.length || (i < first.length && first[i] <= second[j])){
+                value = first[i++];
+            }else{
+                value = second[j++];
+            }
+            if(size == 0 || result[size - 1] != value){
+                result[size++] = value;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Binary search of a trigram on the directory of a run.
+     * @return The position on the directory, -1 when not found
+     */
+    private static int findTrigram(final ByteBuffer data, final int count,
+            final int trigram){
+        int low = 0, high = count - 1;
+        while(low <= high){
+            final int middle = (low + high) >>> 1;
+            final int value = data.getInt(runHeaderSize + middle * directorySize);
+            if(value < trigram){
+                low = middle + 1;
+            }else if(value > trigram){
+                high = middle - 1;
+            }else{
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the list of lines of a trigram.
+     */
+    private static int[] readList(final ByteBuffer data, final Run run,
+            final int entry){
+        final int directory = runHeaderSize + entry * directorySize;
+        final int[] result = new int[data.getInt(directory + 4)];
+        int position = runHeaderSize + run.trigramCount * directorySize
+                + data.getInt(directory + 8);
+        int line = -1;
+        for(int i = 0; i < result.length; i++){
+            int value = 0, shift = 0;
+            byte read;
+            do{
+                read = data.get(position++);
+                value |= (read & 0x7f) << shift;
+                shift += 7;
+            }while((read & 0x80) != 0);
+            line += value;
+            result[i] = line;
+        }
+        return result;
+    }
+
+    /**
+     * Provides the trigrams of a line of the text index, by default those
+     * of its path.
+     * @param line      The line
+     * @param ordinal   The number of the line
+     * @return The distinct trigrams of the line, null when the line is not
+     * about a file, or only the unknown trigram when the trigrams of the line
+     * are not known
+     * @throws IOException When the line couldn't be processed
+     */
+    protected int[] getLineTrigrams(final String line, final long ordinal)
+            throws IOException{
+        if(line.length() < 57 || BigEntry.parsePosition(line) < 0){
+            return null;
+        }
+        return getTrigrams(BigEntry.parsePath(line));
+    }
+
+    /**
+     * Provides the trigrams of a searched text, they must be found the same
+     * way as those of the lines.
+     * @param text  The text
+     * @return The distinct trigrams in ascending order
+     */
+    protected int[] getQueryTrigrams(final String text){
+        return getTrigrams(text);
+    }
+
+    /**
+     * Provides the trigrams of a text, as used on the sidecar.
+     * @param text  The text, case is ignored
+     * @return The distinct trigrams in ascending order
+     */
+    static int[] getTrigrams(final String text){
+        final byte[] bytes = text.toLowerCase(Locale.ROOT)
+                .getBytes(StandardCharsets.UTF_8);
+        if(bytes.length < 3){
+            return new int[0];
+        }
+        final int[] result = new int[bytes.length - 2];
+        for(int i = 0; i < result.length; i++){
+            result[i] = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8
+                    | (bytes[i + 2] & 0xff);
+        }
+        Arrays.sort(result);
+        int size = 0;
+        for(int i = 0; i < result.length; i++){
+            if(size == 0 || result[size - 1] != result[i]){
+                result[size++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Brings the sidecar up to date with the lines that were added to the
+     * text index since the last time. When the text index became smaller
+     * than what we know about or the lines we know about were replaced,
+     * everything is rebuilt.
+     * @throws IOException When the sidecar couldn't be read or updated
+     */
+    public synchronized void refresh() throws IOException{
+        final long indexLength = fileIndex.length();
+        // nothing changed since the last time?
+        if(loaded && indexLength == getCovered()){
+            return;
+        }
+        readHeader();
+        // the run in memory is dropped when another instance wrote runs
+        // meanwhile or its lines were changed on the text index
+        if(open != null && (open.indexStart != indexCovered
+                || open.firstOrdinal != nextOrdinal || indexLength < open.covered
+                || open.fingerprint != BigIndexReader.fingerprint(fileIndex, open.covered))){
+            open = null;
+        }
+        if(indexLength < indexCovered || indexFingerprint
+                != BigIndexReader.fingerprint(fileIndex, indexCovered)){
+            rebuild();
+            return;
+        }
+        if(indexLength == getCovered()){
+            return;
+        }
+        catchUp();
+    }
+
+    /**
+     * @return How much of the text index is covered, by the runs on disk
+     * and the one kept in memory
+     */
+    private long getCovered(){
+        return open == null ? indexCovered : open.covered;
+    }
+
+    /**
+     * Writes the run kept in memory to the sidecar and releases the runs.
+     * Nothing is written when another instance changed the sidecar in the
+     * meantime, the lines are then read again from the text index by the
+     * next refresh.
+     * @throws IOException When the sidecar couldn't be written
+     */
+    public synchronized void close() throws IOException{
+        if(open != null && isCurrent()){
+            writeRun(open.pairs, open.pairCount, open.firstOrdinal,
+                    open.lineCount, open.indexStart, open.covered, open.nextOrdinal);
+        }
+        open = null;
+        runs.clear();
+        loaded = false;
+    }
+
+    /**
+     * @return True when the sidecar on disk and the lines of the run in
+     * memory are still those that we know about
+     */
+    private boolean isCurrent() throws IOException{
+        if(fileSidecar.length() != dataLength || open.fingerprint
+                != BigIndexReader.fingerprint(fileIndex, open.covered)){
+            return false;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(headerSize);
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "r");
+        try{
+            file.getChannel().read(header, 0);
+        }finally{
+            file.close();
+        }
+        header.flip();
+        return header.equals(getHeader());
+    }
+
+    /**
+     * Throws away the current sidecar and creates a new one from the text
+     * index.
+     * @throws IOException When the sidecar couldn't be written
+     */
+    public synchronized void rebuild() throws IOException{
+        runs.clear();
+        open = null;
+        runCount = 0;
+        indexCovered = 0;
+        nextOrdinal = 0;
+        dataLength = headerSize;
+        indexFingerprint = BigIndexReader.fingerprint(fileIndex, 0);
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            file.setLength(headerSize);
+            writeHeader(file.getChannel());
+        }finally{
+            file.close();
+        }
+        loaded = true;
+        catchUp();
+    }
+
+    /**
+     * Reads the lines after the covered part of the text index and writes
+     * their runs. The last run is replaced when it wasn't full.
+     */
+    private void catchUp() throws IOException{
+        long start = indexCovered,
+                ordinal = nextOrdinal;
+        // pairs of trigram and line number, sorted when the run is full
+        long[] pairs = new long[65536];
+        int pairCount = 0,
+                lines = 0;
+        long runOrdinal = ordinal,
+                runStart = start;
+        if(open != null){
+            // continue with the run in memory
+            pairs = open.pairs;
+            pairCount = open.pairCount;
+            lines = open.lineCount;
+            runOrdinal = open.firstOrdinal;
+            runStart = open.indexStart;
+            start = open.covered;
+            ordinal = open.nextOrdinal;
+            open = null;
+        }else if(runs.isEmpty() == false){
+            final Run last = runs.get(runs.size() - 1);
+            final int lastPairs = countPairs(last);
+            if(last.lineCount < runLines && lastPairs < maxPairs){
+                // the pairs of the last run are read back from the sidecar
+                pairs = new long[Math.max(pairs.length, lastPairs * 2)];
+                pairCount = readPairs(last, pairs);
+                lines = (int) last.lineCount;
+                runOrdinal = last.firstOrdinal;
+                runStart = last.indexStart;
+                runs.remove(runs.size() - 1);
+                dataLength = last.position;
+                runCount--;
+                // a crash while writing the run leaves the sidecar without it
+                updateHeader(runStart, runOrdinal);
+            }
+        }
+        final BigIndexReader reader = new BigIndexReader(fileIndex, start);
+        try{
+            while(reader.next()){
+                final int[] trigrams = getLineTrigrams(reader.getLine(), ordinal);
+                if(trigrams != null){
+                    if(pairCount + trigrams.length > pairs.length){
+                        pairs = Arrays.copyOf(pairs, Math.max(pairs.length * 2,
+                                pairCount + trigrams.length));
+                    }
+                    for(final int trigram : trigrams){
+                        pairs[pairCount++] = ((long) trigram << 32) | lines;
+                    }
+                }
+                lines++;
+                ordinal++;
+                if(lines == runLines || pairCount >= maxPairs){
+                    writeRun(pairs, pairCount, runOrdinal, lines, runStart,
+                            reader.getNextOffset(), ordinal);
+                    pairCount = 0;
+                    lines = 0;
+                    runOrdinal = ordinal;
+                    runStart = reader.getNextOffset();
+                }
+            }
+            if(lines > 0 && keepOpenRun){
+                open = new OpenRun();
+                open.pairs = pairs;
+                open.pairCount = pairCount;
+                open.lineCount = lines;
+                open.firstOrdinal = runOrdinal;
+                open.indexStart = runStart;
+                open.covered = reader.getNextOffset();
+                open.nextOrdinal = ordinal;
+                open.fingerprint = BigIndexReader.fingerprint(fileIndex, open.covered);
+            }else if(lines > 0){
+                writeRun(pairs, pairCount, runOrdinal, lines, runStart,
+                        reader.getNextOffset(), ordinal);
+            }else{
+                updateHeader(reader.getNextOffset(), ordinal);
+            }
+        }finally{
+            reader.close();
+        }
+    }
+
+    /**
+     * Counts the pairs of trigram and line of a run.
+     */
+    private int countPairs(final Run run) throws IOException{
+        final ByteBuffer data = getData(run);
+        long count = 0;
+        for(int i = 0; i < run.trigramCount; i++){
+            count += data.getInt(runHeaderSize + i * directorySize + 4);
+        }
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decodes all the pairs of trigram and line of a run, sorted by trigram
+     * like they were written.
+     * @return How many pairs were placed on the array
+     */
+    private int readPairs(final Run run, final long[] pairs) throws IOException{
+        final ByteBuffer data = getData(run);
+        int count = 0;
+        for(int i = 0; i < run.trigramCount; i++){
+            final long trigram = data.getInt(runHeaderSize + i * directorySize);
+            for(final int line : readList(data, run, i)){
+                pairs[count++] = (trigram << 32) | line;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes a run at the end of the sidecar and updates the header.
+     */
+    private void writeRun(final long[] pairs, final int pairCount,
+            final long firstOrdinal, final int lineCount, final long indexStart,
+            final long covered, final long ordinal) throws IOException{
+        final Run run = encodeRun(pairs, pairCount, firstOrdinal, lineCount,
+                indexStart);
+        final ByteBuffer data = run.data;
+        // once written, the run is mapped from the sidecar when needed
+        run.data = null;
+        run.position = dataLength;
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            final FileChannel channel = file.getChannel();
+            long position = dataLength;
+            while(data.hasRemaining()){
+                position += channel.write(data, position);
+            }
+            runs.add(run);
+            runCount++;
+            dataLength = position;
+            indexCovered = covered;
+            nextOrdinal = ordinal;
+            indexFingerprint = BigIndexReader.fingerprint(fileIndex, covered);
+            writeHeader(channel);
+        }finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Encodes the pairs of a run in memory, with the layout used on disk.
+     * The pairs are sorted by trigram in place.
+     */
+    private static Run encodeRun(final long[] pairs, final int pairCount,
+            final long firstOrdinal, final int lineCount, final long indexStart){
+        sortByTrigram(pairs, pairCount);
+        // count the trigrams to size the directory
+        int trigramCount = 0;
+        for(int i = 0; i < pairCount; i++){
+            if(i == 0 || (pairs[i] >>> 32) != (pairs[i - 1] >>> 32)){
+                trigramCount++;
+            }
+        }
+        final ByteBuffer directory = ByteBuffer.allocate(
+                runHeaderSize + trigramCount * directorySize);
+        // each difference takes at most three bytes, lines are below 2^21
+        final ByteBuffer lists = ByteBuffer.allocate(pairCount * 3);
+        directory.putLong(firstOrdinal);
+        directory.putLong(lineCount);
+        directory.putLong(indexStart);
+        directory.putInt(trigramCount);
+        // the size of the lists, known at the end
+        directory.putInt(0);
+        int previous = -1;
+        for(int i = 0; i < pairCount; i++){
+            final int trigram = (int) (pairs[i] >>> 32);
+            final int line = (int) pairs[i];
+            if(i == 0 || (pairs[i] >>> 32) != (pairs[i - 1] >>> 32)){
+                int count = 1;
+                while(i + count < pairCount && (pairs[i + count] >>> 32) == trigram){
+                    count++;
+                }
+                directory.putInt(trigram);
+                directory.putInt(count);
+                directory.putInt(lists.position());
+                previous = -1;
+            }
+            int value = line - previous;
+            while(value >= 0x80){
+                lists.put((byte) (value | 0x80));
+                value >>>= 7;
+            }
+            lists.put((byte) value);
+            previous = line;
+        }
+        directory.putInt(runHeaderSize - 4, lists.position());
+        directory.flip();
+        lists.flip();
+        final Run run = new Run();
+        run.length = directory.remaining() + lists.remaining();
+        run.firstOrdinal = firstOrdinal;
+        run.lineCount = lineCount;
+        run.indexStart = indexStart;
+        run.trigramCount = trigramCount;
+        run.data = ByteBuffer.allocate((int) run.length).put(directory).put(lists);
+        run.data.flip();
+        return run;
+    }
+
+    /**
+     * Sorts the pairs by trigram. The pairs were added in the order of the
+     * lines, a stable radix sort on the 24 bits of the trigram keeps the
+     * lines in order and is much faster than a comparison sort.
+     */
+    private static void sortByTrigram(final long[] pairs, final int count){
+        long[] source = pairs,
+                target = new long[count];
+        for(int shift = 32; shift < 56; shift += 12){
+            final int[] starts = new int[4097];
+            for(int i = 0; i < count; i++){
+                starts[(int) ((source[i] >>> shift) & 0xfff) + 1]++;
+            }
+            for(int i = 0; i < 4096; i++){
+                starts[i + 1] += starts[i];
+            }
+            for(int i = 0; i < count; i++){
+                target[starts[(int) ((source[i] >>> shift) & 0xfff)]++] = source[i];
+            }
+            final long[] swap = source;
+            source = target;
+            target = swap;
+        }
+        // after two passes the sorted pairs are back on the first array
+    }
+
+    /**
+     * Records that the text index was covered up to a given offset.
+     */
+    private void updateHeader(final long covered, final long ordinal)
+            throws IOException{
+        indexCovered = covered;
+        nextOrdinal = ordinal;
+        indexFingerprint = BigIndexReader.fingerprint(fileIndex, covered);
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            writeHeader(file.getChannel());
+        }finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Loads the header values and the runs from disk. Runs written after
+     * the last header update (e.g. interrupted process) are discarded.
+     */
+    private void readHeader() throws IOException{
+        if(fileSidecar.exists() == false || fileSidecar.length() < headerSize){
+            rebuild();
+            return;
+        }
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "rw");
+        try{
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(headerSize);
+            channel.read(header, 0);
+            header.flip();
+            final byte[] signature = new byte[magic.length];
+            header.get(signature);
+            if(Arrays.equals(signature, magic) == false){
+                file.close();
+                rebuild();
+                return;
+            }
+            runCount = header.getLong();
+            indexCovered = header.getLong();
+            nextOrdinal = header.getLong();
+            dataLength = header.getLong();
+            indexFingerprint = header.getLong();
+            if(file.length() > dataLength){
+                file.setLength(dataLength);
+            }
+            // walk over the runs
+            runs.clear();
+            long position = headerSize;
+            final ByteBuffer runHeader = ByteBuffer.allocate(runHeaderSize);
+            for(long i = 0; i < runCount; i++){
+                runHeader.clear();
+                while(runHeader.hasRemaining()){
+                    if(channel.read(runHeader, position + runHeader.position()) < 0){
+                        throw new IOException("BIG-TRIGRAM-518 - Sidecar is truncated");
+                    }
+                }
+                runHeader.flip();
+                final Run run = new Run();
+                run.position = position;
+                run.firstOrdinal = runHeader.getLong();
+                run.lineCount = runHeader.getLong();
+                run.indexStart = runHeader.getLong();
+                run.trigramCount = runHeader.getInt();
+                run.length = runHeaderSize + run.trigramCount * directorySize
+                        + runHeader.getInt();
+                runs.add(run);
+                position += run.length;
+            }
+            loaded = true;
+        }finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the header values to disk
+     */
+    private void writeHeader(final FileChannel channel) throws IOException{
+        channel.write(getHeader(), 0);
+    }
+
+    /**
+     * @return The header values, as written on disk
+     */
+    private ByteBuffer getHeader(){
+        final ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.put(magic);
+        header.putLong(runCount);
+        header.putLong(indexCovered);
+        header.putLong(nextOrdinal);
+        header.putLong(dataLength);
+        header.putLong(indexFingerprint);
+        header.rewind();
+        return header;
+    }
+
+    /**
+     * Maps a run, the mapping remains valid after closing the file.
+     */
+    private ByteBuffer getData(final Run run) throws IOException{
+        if(run.data != null){
+            return run.data;
+        }
+        final RandomAccessFile file = new RandomAccessFile(fileSidecar, "r");
+        try{
+            run.data = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    run.position, run.length);
+        }finally{
+            file.close();
+        }
+        return run.data;
+    }
+}
@@ -36,6 +36,7 @@
 
 package big;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
@@ -45,20 +46,38 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.compress.archivers.ArchiveException;
-import org.apache.commons.compress.archivers.ArchiveInputStream;
-import org.apache.commons.compress.archivers.ArchiveOutputStream;
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Deflater;
 import org.apache.commons.compress.utils.IOUtils;
 import utils.files;
 import tools.header;
@@ -73,10 +92,48 @@ public class BigZip {
     private int 
             // how big a file do we accept for storing?
             maxFileSize = 1000000 * 100; // default max size = 100Mb 
+    // only small files are used to train the dictionary
+    private final int maxSampleSize = 16384;
     
     // variables
     private Boolean isReady = false;
     private OutputStream outputStream = null;
+    // used to remove blocks that were not completely written and to sync
+    private FileChannel 
+            outputChannel = null,
+            indexChannel = null,
+            logChannel = null;
+    // group commit: how many files and how long per checkpoint on the log
+    private int groupCommitSize = 0;
+    private long groupCommitDelay = 1000;
+    private boolean groupCommitSync = false;
+    // store each content only once
+    private boolean deduplicate = false;
+    // the codecs that read the blocks and the one chosen for each new file
+    private final BigCodecs codecs = new BigCodecs();
+    private BigCodecSelector codecSelector = fixedCodec(codecs.get("zip"));
+    // small files are packed together on solid blocks of this size
+    private int solidBlockSize = 0;
+    // the solid block that is being filled, not yet compressed
+    private final ByteArrayOutputStream solidBlock = new ByteArrayOutputStream();
+    private final ArrayList<BigEntry> solidMembers = new ArrayList<>();
+    private final HashMap<String, BigEntry> solidSignatures = new HashMap<>();
+    // the last solid block that was read, its files are usually read together
+    private long lastSolidKey = -1;
+    private byte[] lastSolidBlock = null;
+    // the preset dictionary stored on the archive, read when first needed
+    private byte[] dictionary = null;
+    private boolean dictionaryLoaded = false;
+    // blocks written since the writers were opened, by signature
+    private final HashMap<String, BigEntry> blocksWritten = new HashMap<>();
+    // the data is split on segments of this size, zero for a single file
+    private long segmentSize = 0;
+    // the segment where new blocks are written, zero is the .big file
+    private int currentSegment = 0;
+    // state of the batch that is being written
+    private boolean batchOpen = false;
+    private int batchFiles = 0;
+    private long batchTime = 0;
     private BufferedWriter 
             writerFileIndex = null,
             writerFileLog = null;
@@ -94,6 +151,8 @@ public class BigZip {
     private final String 
             magicSignature = "BIG81nb",
             tagStart = "start: ",
+            tagIndex = "index:",
+            tagSegment = "segment:",
             tagEnded = "ended: ";
             
     
@@ -105,9 +164,28 @@ public class BigZip {
     private long currentGetNextPosition = 0;
 
     private String 
-            readerNextFileName,
             lastReadLine,
             currentLine;
+    // read ahead of the sequential iteration, when enabled
+    private int prefetchDepth = 0;
+    private long prefetchMemory = 0;
+    private boolean prefetchDecompress = false;
+    private BigPrefetcher prefetcher = null;
+    
+    // sorted binary sidecar to find files by their SHA1 signature
+    private BigSHA1Index indexSHA1;
+    // hash table sidecar to find files by their path
+    private BigPathIndex indexPath;
+    // optional trigram sidecar of the content, null when not used
+    private BigContentIndex indexContent = null;
+    // are the writers of the index open?
+    private boolean isWriting = false;
+    // positional reads from each segment, opened when first needed
+    private final ArrayList<BigDataReader> dataReaders = new ArrayList<>();
+    private boolean useDirectBuffers = false;
+    private boolean memoryMapped = false;
+    // optional cache of decompressed files
+    private BigCache cache = null;
     
       /**
      * Initialises a BIG archive. If the archive file doesn't exist yet then 
@@ -142,6 +220,12 @@ public class BigZip {
         this.fileMainBIG = fileTarget;
         this.fileLogBIG = getNewFile("log");
         this.fileIndexBIG = getNewFile("index");
+        this.indexSHA1 = new BigSHA1Index(fileIndexBIG, getNewFile("sha1idx"));
+        this.indexPath = new BigPathIndex(fileIndexBIG, getNewFile("pathidx"));
+        // the content index is kept up to date once it was created
+        if(getNewFile("contentidx").exists()){
+            this.indexContent = new BigContentIndex(this, getNewFile("contentidx"));
+        }
                 
         // ensure these files exist        
         existOrTouch(fileMainBIG, "");
@@ -240,6 +324,45 @@ public class BigZip {
         operationEnd();
     }
     
+    /**
+     * Add all files from a given folder inside our archive using several
+     * threads. The files are compressed and hashed in parallel while the
+     * calling thread appends the finished blocks to the archive, always in
+     * the order in which the folder was crawled. Only a few blocks are kept
+     * waiting in memory, no new files are read while the appender is behind.
+     * The paths on the index and the restore points on the log are the same
+     * as those of addFolder(File): each file is written under its name and
+     * gets its own checkpoint, or one per batch when group commit is used.
+     * @param folderToAdd   The folder whose files we want to add
+     * @param threads       How many files are compressed at the same time
+     * @throws java.io.IOException
+     */
+    public void addFolder(final File folderToAdd, final int threads) throws IOException {
+        // preflight checks
+        if(isReady == false){
+            System.err.println("BIG259 - Error, Archive is not ready");
+            return;
+        }
+        final int workers = Math.max(1, threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        // blocks being prepared, in the order that they will be written
+        final ArrayDeque<Future<BigBlock>> pending = new ArrayDeque<>();
+        try{
+            // open the index files
+            operationStart(folderToAdd);
+            // crawl the folder while the workers compress the files
+            addFilesParallel(folderToAdd, 25, executor, pending, workers * 4);
+            // write the blocks that are still in the pipeline
+            while(pending.isEmpty() == false){
+                appendBlock(pending.poll());
+            }
+            // now close all the pointers
+            operationEnd();
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+    
     /**
      * Add all files from a given folder inside our archive
      * @param fileToAdd The file we want to add
@@ -270,15 +393,11 @@ public class BigZip {
     public void quickStart(){
       try {
             // open the BIG file where the binary data is stored
-            currentPosition = fileMainBIG.length();
-            // open our archive file
-            outputStream = new FileOutputStream(fileMainBIG, true);
-            // open the file where we list the data, signatures and positions
-            writerFileIndex = new BufferedWriter(
-                new FileWriter(fileIndexBIG, true), 8192);
-            // open the log file
-            writerFileLog = new BufferedWriter(
-                new FileWriter(fileLogBIG, true), 8192);
+            findWritePosition();
+            // do we have any write left incomplete?
+            pointRestore();
+            // open the archive, index and log files
+            openWriters();
             
         } catch (IOException ex) {
             Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
@@ -291,6 +410,8 @@ public class BigZip {
      */
     public void quickEnd(){
         try {
+            // write the checkpoint of the files still in the batch
+            commit();
             // flush all the remaining data onto the files
             outputStream.flush();
             writerFileIndex.flush();
@@ -304,6 +425,9 @@ public class BigZip {
         } catch (IOException ex) {
             Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
         }
+        isWriting = false;
+        // bring the sidecar indexes up to date with the new lines
+        refreshIndexes();
     } 
     
     /**
@@ -318,16 +442,11 @@ public class BigZip {
             }
           
             // open the BIG file where the binary data is stored
-            currentPosition = fileMainBIG.length();
+            findWritePosition();
             // do we have any operation left incomplete?
             pointRestoreAndSave(folderToAdd);
-            // open our archive file
-            outputStream = new FileOutputStream(fileMainBIG, true);
-            // open the file where we list the data, signatures and positions
-            writerFileIndex = new BufferedWriter(
-                new FileWriter(fileIndexBIG, true), 8192);
-            writerFileLog = new BufferedWriter(
-                new FileWriter(fileLogBIG, true), 8192);
+            // open the archive, index and log files
+            openWriters();
             
         } catch (IOException ex) {
             Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
@@ -335,6 +454,14 @@ public class BigZip {
     }
     
     
+    /**
+     * New blocks are added at the end of the last segment.
+     */
+    private void findWritePosition(){
+        currentSegment = BigSegments.findLast(fileMainBIG);
+        currentPosition = BigSegments.getFile(fileMainBIG, currentSegment).length();
+    }
+    
     /**
      * Checks if we have a restore point that hasn't terminated with success
      * on a previous operation. If something went wrong on the previous run,
@@ -342,38 +469,232 @@ public class BigZip {
      * from the BIG archive.
      */
     private void pointRestoreAndSave(final File folderToAdd) throws IOException{
-        // get the last line from our log textWeird file
-        String lastLine = utils.files.getLastLineFast(fileLogBIG);
-        // are we detecting that something went wrong?
-        if((lastLine.isEmpty() == false) 
-                && (lastLine.startsWith(tagStart))){
+        // undo the last operation when it didn't finish
+        pointRestore();
+        // now add a line to record what we are doing
+        utils.files.addTextToFile(fileLogBIG, 
+                getTagStarted(folderToAdd.getName(), fileIndexBIG.length()));
+    }
+    
+    /**
+     * When the last line of the log is a start tag (of a single file, an
+     * operation or a batch of files) then the write didn't finish and the
+     * data written after that point is removed.
+     */
+    private void pointRestore() throws IOException{
+        long lastPosition = -1,
+                indexLength = -1;
+        int segment = 0;
+        final RandomAccessFile fileLog = new RandomAccessFile(fileLogBIG, "rw");
+        try{
+            final FileChannel channel = fileLog.getChannel();
+            // get the last line from our log textWeird file
+            final long lineBreak = findLastLineBreak(channel);
+            final ByteBuffer bytes = ByteBuffer.allocate(
+                    (int) Math.min(65536, channel.size() - lineBreak));
+            channel.read(bytes, lineBreak);
+            final String lastLine = new String(bytes.array(), 0, bytes.position()).trim();
+            // are we detecting that something went wrong?
+            if(lastLine.startsWith(tagStart) == false){
+                return;
+            }
             System.out.println("BIG290 Something went wrong last time, we need to restore the last saved point!");
             // we need to restore the last saved point
             final String snippet = lastLine.substring(lastLine.indexOf(" ")+1);
             final String number = snippet.substring(0, snippet.indexOf(" "));
-            long lastPosition = Long.parseLong(number);
-            
-            // try to return our knowledge base to the previous state
-            utils.files.changeSize(fileMainBIG, lastPosition);
-            // was the size change successful?
-            if(lastPosition != fileMainBIG.length()){
-                System.out.println("BIG197 - Failed to restore last saved point");
-                System.exit(-1);
+            lastPosition = Long.parseLong(number);
+            // newer tags also tell how long the index was at that point
+            final String rest = snippet.substring(snippet.indexOf(" ") + 1);
+            if(rest.startsWith(tagIndex)){
+                indexLength = Long.parseLong(
+                        rest.substring(tagIndex.length(), rest.indexOf(" ")));
+                // and on which segment the archive was being written
+                final String tail = rest.substring(rest.indexOf(" ") + 1);
+                if(tail.startsWith(tagSegment)){
+                    segment = Integer.parseInt(
+                        tail.substring(tagSegment.length(), tail.indexOf(" ")));
+                }
+                // remove the start tag from the log
+                channel.truncate(lineBreak);
+            }
+        }finally{
+            fileLog.close();
+        }
+        
+        // segments are never written again once the next one exists, 
+        // the unused data at their end is left there
+        if(BigSegments.findLast(fileMainBIG) > segment){
+            for(int i = BigSegments.findLast(fileMainBIG); i > segment + 1; i--){
+                BigSegments.getFile(fileMainBIG, i).delete();
             }
-            // we had success so, time to delete this info from the index
+            segment++;
+            lastPosition = 0;
+        }
+        final File fileSegment = BigSegments.getFile(fileMainBIG, segment);
+        // try to return our knowledge base to the previous state
+        truncate(fileSegment, lastPosition);
+        // was the size change successful?
+        if(lastPosition != fileSegment.length()
+                || BigSegments.findLast(fileMainBIG) != segment){
+            System.out.println("BIG197 - Failed to restore last saved point");
+            System.exit(-1);
+        }
+        // we had success so, time to delete this info from the index
+        if(indexLength >= 0){
+            truncate(fileIndexBIG, indexLength);
+        }else{
+            // older tags, we need to search the index for the position
             deleteIndexDataAfterPosition(lastPosition);
-            // update our index
-            currentPosition = lastPosition;
         }
-        // now add a line to record what we are doing
-        utils.files.addTextToFile(fileLogBIG, "\n"
-                + tagStart
-                + utils.files.getPrettyFileSize(currentPosition) 
-                + " "
-                + utils.time.getDateTimeISO()
-                + "->"
-                + folderToAdd.getName()
-        );
+        // update our index
+        currentSegment = segment;
+        currentPosition = lastPosition;
+        // the removed lines and blocks might be known already
+        forgetRemovedData();
+    }
+    
+    /**
+     * After a restore the sidecars might cover lines that were removed from
+     * the text index, and new lines will take their place. They are built
+     * again from what remains. The sidecar with the trigrams of the paths
+     * is created by the viewer, it is deleted and created again on demand.
+     * Blocks read before the restore are forgotten too, new blocks are
+     * written on the same positions.
+     */
+    private void forgetRemovedData() throws IOException{
+        closeDataReaders();
+        lastSolidKey = -1;
+        lastSolidBlock = null;
+        if(cache != null){
+            cache.clear();
+        }
+        indexSHA1.rebuild();
+        indexPath.rebuild();
+        getNewFile("trigramidx").delete();
+        if(indexContent != null){
+            indexContent.rebuild();
+        }
+    }
+    
+    /**
+     * Finds where the last line of a text file begins, the file is read
+     * backwards from the end.
+     * @param channel   The text file
+     * @return The position of the line break before the last line, zero
+     * when the file only has one line
+     */
+    private static long findLastLineBreak(final FileChannel channel) throws IOException{
+        final ByteBuffer chunk = ByteBuffer.allocate(4096);
+        // ignore the line breaks at the end of the file
+        long end = channel.size();
+        boolean foundText = false;
+        while(end > 0){
+            final long start = Math.max(0, end - chunk.capacity());
+            chunk.clear();
+            chunk.limit((int) (end - start));
+            while(chunk.hasRemaining()){
+                if(channel.read(chunk, start + chunk.position()) < 0){
+                    break;
+                }
+            }
+            for(int i = chunk.position() - 1; i >= 0; i--){
+                final byte value = chunk.get(i);
+                if(value != '\n' && value != '\r'){
+                    foundText = true;
+                }else
+                if(value == '\n' && foundText){
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+    
+    /**
+     * Cuts a file to a given size, without looking at its content
+     */
+    private static void truncate(final File file, final long size) throws IOException{
+        final RandomAccessFile target = new RandomAccessFile(file, "rw");
+        try{
+            target.getChannel().truncate(size);
+        }finally{
+            target.close();
+        }
+    }
+    
+    /**
+     * Opens the archive, index and log files to append new data
+     */
+    private void openWriters() throws IOException{
+        // the blocks written before are found on the SHA1 sidecar
+        blocksWritten.clear();
+        solidBlock.reset();
+        solidMembers.clear();
+        solidSignatures.clear();
+        // the end of the archive might have been truncated
+        lastSolidKey = -1;
+        if(deduplicate){
+            indexSHA1.refresh();
+        }
+        // open our archive file, or the segment being written
+        openSegment(true);
+        // open the file where we list the data, signatures and positions
+        final FileOutputStream outputIndex = new FileOutputStream(fileIndexBIG, true);
+        indexChannel = outputIndex.getChannel();
+        writerFileIndex = new BufferedWriter(
+            new OutputStreamWriter(outputIndex), 8192);
+        // open the log file
+        final FileOutputStream outputLog = new FileOutputStream(fileLogBIG, true);
+        logChannel = outputLog.getChannel();
+        writerFileLog = new BufferedWriter(
+            new OutputStreamWriter(outputLog), 8192);
+        batchOpen = false;
+        isWriting = true;
+    }
+    
+    /**
+     * Opens the current segment to write new blocks.
+     * @param append    False to start a new segment
+     */
+    private void openSegment(final boolean append) throws IOException{
+        final FileOutputStream outputFile = new FileOutputStream(
+                BigSegments.getFile(fileMainBIG, currentSegment), append);
+        outputChannel = outputFile.getChannel();
+        outputStream = new BufferedOutputStream(outputFile, 65536);
+    }
+    
+    /**
+     * When the current segment has reached its size, the next blocks are
+     * written on a new segment. The full segment is synced to the disk and
+     * never written again. Called before writing each block, so a segment
+     * can go over its size by one block.
+     */
+    private void nextSegmentWhenFull() throws IOException{
+        if(segmentSize <= 0 || currentPosition < segmentSize){
+            return;
+        }
+        outputStream.flush();
+        outputChannel.force(false);
+        outputStream.close();
+        currentSegment++;
+        currentPosition = 0;
+        openSegment(false);
+    }
+    
+    /**
+     * Splits the data of the archive on segments: when the current one 
+     * reaches this size, the next blocks go to name.big.001, name.big.002
+     * and so on. The .big file is the first segment. Segments that are
+     * followed by another one don't change anymore, they can be copied
+     * while the archive is being written. Used for the files written from
+     * now on, an archive keeps the segments it already has.
+     * @param size  The size of each segment in bytes, zero to keep all the
+     *              data on the .big file (default)
+     */
+    public void setSegmentSize(final long size) {
+        // positions inside a segment are kept on 40 bits
+        this.segmentSize = Math.min(Math.max(0, size), 1L << 39);
     }
     
     /**
@@ -395,7 +716,8 @@ public class BigZip {
      */
     public void operationEnd(){
         try {
-            
+            // write the checkpoint of the files still in the batch
+            commit();
             // now add a line to record what we are doing
             addTagEnded();
             
@@ -409,11 +731,83 @@ public class BigZip {
             writerFileIndex.close();
             writerFileLog.close();
             
-            
-            
         } catch (IOException ex) {
             Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
         }
+        isWriting = false;
+        // bring the sidecar indexes up to date with the new lines
+        refreshIndexes();
+    }
+    
+    /**
+     * Adds the lines that were written on the text index to the binary
+     * sidecar indexes. Errors are not fatal, the sidecars are rebuilt from
+     * the text index when needed.
+     */
+    private void refreshIndexes(){
+        try {
+            indexSHA1.refresh();
+            indexPath.refresh();
+            if(indexContent != null){
+                indexContent.refresh();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * When we are in the middle of writing files, the last blocks and lines
+     * of the index might still be on the buffers. Write them to disk so that
+     * they can be read and the sidecar indexes can see them.
+     */
+    private void flushIndexWriter(){
+        if(isWriting == false){
+            return;
+        }
+        try {
+            flushSolidBlock();
+            outputStream.flush();
+            writerFileIndex.flush();
+        } catch (IOException ex) {
+            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Creates again the sidecar index of SHA1 signatures using the data
+     * available on the text index.
+     * @throws IOException When the sidecar could not be written
+     */
+    public void rebuildIndexSHA1() throws IOException{
+        indexSHA1.rebuild();
+    }
+    
+    /**
+     * Creates again the sidecar index of file paths using the data
+     * available on the text index.
+     * @throws IOException When the sidecar could not be written
+     */
+    public void rebuildIndexPath() throws IOException{
+        indexPath.rebuild();
+    }
+    
+    /**
+     * Keeps a trigram index of the content of the files, which permits
+     * grep() to only decompress the files that might match. The index is
+     * brought up to date at the end of each write, the content of the new
+     * files is read again from the archive for that. Once created, the
+     * index is also used and updated when the archive is opened again.
+     * @param enabled   True to create or keep the index, false to delete it
+     */
+    public void setContentIndex(final boolean enabled) {
+        if(enabled && indexContent == null){
+            indexContent = new BigContentIndex(this, getNewFile("contentidx"));
+        }
+        if(enabled == false){
+            indexContent = null;
+            getNewFile("contentidx").delete();
+        }
     }
     
     /**
@@ -421,16 +815,33 @@ public class BigZip {
      * @param title 
      */
     private void addTagStarted(final String title) throws IOException{
-    // now add a line to record what we are doing
-        final String line = "\n"
+        // the length of the index is only known after writing the buffer
+        writerFileIndex.flush();
+        // now add a line to record what we are doing
+        writerFileLog.write(getTagStarted(title, indexChannel.size()));
+    }
+    
+    /**
+     * Creates the line that marks the start of a write on the log. It keeps
+     * the length of the archive and of the index, so that both files can be
+     * cut back to this point when the write doesn't finish.
+     * @param title         What is being written
+     * @param indexLength   The number of bytes on the index file
+     * @return The line, starting with a line break
+     */
+    private String getTagStarted(final String title, final long indexLength){
+        return "\n"
                 + tagStart
                 + utils.files.getPrettyFileSize(currentPosition) 
                 + " "
+                + tagIndex
+                + utils.files.getPrettyFileSize(indexLength)
+                + " "
+                + (currentSegment > 0 ? tagSegment + currentSegment + " " : "")
                 + utils.time.getDateTimeISO()
                 + "->"
                 + title
                 ;
-        writerFileLog.write(line);
     }
     
     /**
@@ -447,6 +858,94 @@ public class BigZip {
         writerFileLog.write(line);
     }
     
+    /**
+     * Records on the log that a file is about to be written. When writing
+     * in batches, only the first file of a batch gets a start tag.
+     * @param title The name of the file
+     */
+    private void commitBegin(final String title) throws IOException{
+        if(groupCommitSize <= 1){
+            addTagStarted(title);
+            return;
+        }
+        if(batchOpen){
+            return;
+        }
+        // the start tag must be on disk before the data of the batch
+        addTagStarted("batch");
+        writerFileLog.flush();
+        if(groupCommitSync){
+            logChannel.force(false);
+        }
+        batchOpen = true;
+        batchFiles = 0;
+        batchTime = System.currentTimeMillis();
+    }
+    
+    /**
+     * Records on the log that a file was written. When writing in batches,
+     * the checkpoint is only written when the batch is full or too old.
+     */
+    private void commitEnd() throws IOException{
+        if(groupCommitSize <= 1){
+            flushSolidBlock();
+            addTagEnded();
+            return;
+        }
+        batchFiles++;
+        if(batchFiles >= groupCommitSize 
+                || System.currentTimeMillis() - batchTime >= groupCommitDelay){
+            commit();
+        }
+    }
+    
+    /**
+     * Writes the checkpoint of the current batch of files: the data and the
+     * index are flushed (and synced to the disk when requested) before the
+     * ended tag is added to the log. Files written after the last checkpoint
+     * are removed when the archive is opened again after a crash.
+     * @throws IOException When the files could not be written
+     */
+    public void commit() throws IOException{
+        // files waiting on the solid block are part of the checkpoint
+        if(isWriting){
+            flushSolidBlock();
+        }
+        if(batchOpen == false){
+            return;
+        }
+        outputStream.flush();
+        writerFileIndex.flush();
+        if(groupCommitSync){
+            outputChannel.force(false);
+            indexChannel.force(false);
+        }
+        addTagEnded();
+        writerFileLog.flush();
+        if(groupCommitSync){
+            logChannel.force(false);
+        }
+        batchOpen = false;
+    }
+    
+    /**
+     * Writes the files in batches on the log, instead of recording the
+     * start and end of each file. Only used with quickWrite, quickStart
+     * and quickEnd.
+     * @param batchSize How many files are grouped on a single checkpoint,
+     *                  one or less to record each file (default)
+     * @param maxDelay  Maximum time in milliseconds that a batch stays open
+     *                  while files are being written
+     * @param sync      Sync the data to the disk on each checkpoint, so that
+     *                  a checkpoint survives a power failure
+     */
+    public void setGroupCommit(final int batchSize, final long maxDelay,
+            final boolean sync) {
+        this.groupCommitSize = batchSize;
+        this.groupCommitDelay = maxDelay;
+        this.groupCommitSync = sync;
+    }
+    
     /**
      * Find all files in a given folder and respective sub-folders
      * @param where A file object of the start folder
@@ -477,227 +976,677 @@ public class BigZip {
     
      
      
-   /**
-     * Copies one file into the big archive
-     * @param fileToCopy
-     * @return 
-     */ 
-    public boolean writeFile(final File fileToCopy){
-        
-        // declare
-        ByteArrayOutputStream outputZipStream = new ByteArrayOutputStream();
-    try {
-        /* Create Archive Output Stream that attaches File Output Stream / and specifies type of compression */
-        ArchiveOutputStream logical_zip = new ArchiveStreamFactory().createArchiveOutputStream(ArchiveStreamFactory.ZIP, outputZipStream);
-        /* Create Archieve entry - write header information*/
-        logical_zip.putArchiveEntry(new ZipArchiveEntry(fileToCopy.getName()));
-        /* Copy input file */
-        IOUtils.copy(new FileInputStream(fileToCopy), logical_zip);
-        logical_zip.closeArchiveEntry();
-        logical_zip.finish();
-        logical_zip.flush();
-        logical_zip.close();
-        
-        // get the bytes
-        final ByteArrayInputStream byteInput = new ByteArrayInputStream(outputZipStream.toByteArray());
-        
-        byte[] buffer = new byte[8192];
-        int length,
-                counter = 0;
-        // add the magic number to this file block
-        outputStream.write(magicSignature.getBytes());
-        // now copy the whole file into the BIG archive
-        while ((length = byteInput.read(buffer)) > 0) {
-            outputStream.write(buffer, 0, length);
-            counter += length;
+    /**
+     * Crawls a folder in the same order as addFiles, but instead of writing
+     * each file it gives the file to the workers. When too many blocks are
+     * waiting, the oldest one is written before continuing.
+     */
+    private void addFilesParallel(final File where, final int maxDeep,
+            final ExecutorService executor, final ArrayDeque<Future<BigBlock>> pending,
+            final int maxPending) throws IOException{
+        // list the files on the current directory 
+        final File[] files = where.listFiles();
+        // no need to continue if nothing was found
+        if(files == null){
+            return;
+        }
+        final int solidLimit = getSolidMemberLimit();
+        for (final File file : files) {
+            if (file.isFile()){
+                if(isTooBig(file)){
+                    continue;
+                }
+                // apply backpressure, wait for the oldest block
+                if(pending.size() >= maxPending){
+                    appendBlock(pending.poll());
+                }
+                // the same path as addFile() gives to the files of a folder
+                final String path = file.getAbsolutePath()
+                        .replace(file.getParentFile().getAbsolutePath(), "");
+                pending.add(executor.submit(new Callable<BigBlock>() {
+                    @Override
+                    public BigBlock call() {
+                        try {
+                            // small files are compressed on the solid block
+                            if(file.length() <= solidLimit){
+                                return BigBlock.read(file, path);
+                            }
+                            return BigBlock.create(file, path, codecSelector, 
+                                    codecs.getStatistics());
+                        } catch (IOException ex) {
+                            System.err.println("BIG346 - Error copying file: " 
+                                    + file.getAbsolutePath());
+                            return null;
+                        }
+                    }
+                }));
+            }
+            else
+                if ( maxDeep-1 > 0 ){
+                    // do the recursive crawling
+                    addFilesParallel(file, maxDeep-1, executor, pending, maxPending);
+                }
         }
-        // if there is something else to be flushed, do it now
-        outputStream.flush();
-        
-        // calculate the base path
-        final String resultingPath = fileToCopy.getAbsolutePath().replace(basePath, "");
-        
-        // calculate the SHA1 signature
-        final String output = utils.hashing.checksum.generateFileChecksum("SHA-1", fileToCopy);
-        
-        // write a new line in our index file
-        writerFileIndex.write("\n" 
-                + utils.files.getPrettyFileSize(currentPosition)
-                + " "
-                + output
-                + " " 
-                + resultingPath
-        );
-        // increase the position counter
-        currentPosition += counter + magicSignature.length();
-    } catch(Exception e){
-        System.err.println("BIG346 - Error copying file: " + fileToCopy.getAbsolutePath());
-        return false;
-    }  
-    
-    finally {
     }
-    return true;
-}  
-     
+    
     /**
-     * Copies one file into the big archive
-     * @param fileToCopy
-     * @param SHA1
-     * @param filePathToWriteInTextLine
-     * @return 
-     */ 
-    public boolean quickWrite(final File fileToCopy, final String SHA1,
-            final String filePathToWriteInTextLine){
-        // declare
-        ByteArrayOutputStream outputZipStream = new ByteArrayOutputStream();
-    try {
+     * Waits until a block is prepared and appends it to the archive, with
+     * its own checkpoint on the log. Files that failed to be compressed are
+     * skipped.
+     */
+    private void appendBlock(final Future<BigBlock> future) throws IOException{
+        final BigBlock block;
+        try {
+            block = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+        if(block == null){
+            return;
+        }
         // save this operation on the log of commits
-        addTagStarted(fileToCopy.getName());
-        //pointRestoreAndSave(fileToCopy);
-        
-        /* Create Archive Output Stream that attaches File Output Stream / and specifies type of compression */
-        ArchiveOutputStream logical_zip = new ArchiveStreamFactory().createArchiveOutputStream(ArchiveStreamFactory.ZIP, outputZipStream);
-        /* Create Archieve entry - write header information*/
-        logical_zip.putArchiveEntry(new ZipArchiveEntry(fileToCopy.getName()));
-        /* Copy input file */
-        IOUtils.copy(new FileInputStream(fileToCopy), logical_zip);
-        logical_zip.closeArchiveEntry();
-        logical_zip.finish();
-        logical_zip.flush();
-        logical_zip.close();
-        
-        // get the bytes
-        final ByteArrayInputStream byteInput = new ByteArrayInputStream(outputZipStream.toByteArray());
-        
-        byte[] buffer = new byte[8192];
-        int length,
-                counter = 0;
+        commitBegin(block.getPath());
+        writeBlock(block);
+        // close the log with success
+        commitEnd();
+    }
+    
+    /**
+     * Writes a prepared block on the archive, or only its index line when
+     * the content is already there.
+     */
+    private void writeBlock(final BigBlock block) throws IOException{
+        if(writeDuplicate(block.getSignature(), block.getPath())){
+            return;
+        }
+        final byte[] data = block.getData();
+        // small files were not compressed, they go to the solid block
+        if(block.getCodec() == null){
+            addSolidMember(block.getSignature(), block.getPath(), data, data.length);
+            return;
+        }
+        flushSolidBlock();
+        nextSegmentWhenFull();
         // add the magic number to this file block
         outputStream.write(magicSignature.getBytes());
-        // now copy the whole file into the BIG archive
-        while ((length = byteInput.read(buffer)) > 0) {
-            outputStream.write(buffer, 0, length);
-            counter += length;
-        }
-        // if there is something else to be flushed, do it now
-        //outputStream.flush();
-        
-        // calculate the base path
-        //final String resultingPath = fileToCopy.getAbsolutePath().replace(rootFolder, "");
-        
-        final String line = "\n" 
-                + utils.files.getPrettyFileSize(currentPosition)
-                + " "
-                + SHA1
-                + " " 
-                + filePathToWriteInTextLine;
-       
-        // write a new line in our index file
-        writerFileIndex.write(line);
-        //writer.flush();
-        // increase the position counter
-        currentPosition += counter + magicSignature.length();
-        
-        // close the log with success
-        addTagEnded();
-    } catch(Exception e){
-        System.err.println("BIG600 - Error copying file: " + fileToCopy.getAbsolutePath());
-        return false;
-    }  
-    finally {
+        outputStream.write(data);
+        writeIndexLine(block.getSignature(), block.getPath(), data.length,
+                block.getCodec());
     }
-    return true;
-}  
     
     /**
-     * Copies one file into the big archive
-     * @param textToCopy
-     * @param SHA1
-     * @param filePathToWriteInTextLine
-     * @return 
-     * @throws java.io.IOException 
-     */ 
-    public boolean quickWrite(final String textToCopy, final String SHA1,
-            final String filePathToWriteInTextLine) throws IOException{
-        return quickWriteGenericStream(new ByteArrayInputStream(textToCopy.getBytes()), SHA1, filePathToWriteInTextLine);
-    }  
+     * Writes the index line of the block that was just written to the
+     * archive and moves the position to the end of the block.
+     * @param SHA1  The signature of the content
+     * @param path  The path/name of the file
+     * @param size  The number of bytes after the magic signature
+     * @param codec The name of the codec of the block
+     */
+    private void writeIndexLine(final String SHA1, final String path,
+            final long size, final String codec) throws IOException{
+        writeLine(new BigEntry(0, currentPosition, SHA1, path, size, -1, codec,
+                -1, -1, currentSegment));
+        // increase the position counter
+        currentPosition += size + magicSignature.length();
+    }
     
-   
-   
     /**
-     * Copies one file into the big archive
-     * @param stream
+     * Writes the line of an entry on the index, the entry is remembered
+     * when deduplication is enabled.
+     * @param entry The entry, with the position of its block
+     */
+    private void writeLine(final BigEntry entry) throws IOException{
+        // write a new line in our index file
+        writerFileIndex.write("\n" 
+                + BigEntry.createLine(entry.getPosition(), entry.getSignature(),
+                        entry.getPath(), entry.getSize(), entry.getCodec(),
+                        entry.getOffset(), entry.getLength(), entry.getSegment())
+        );
+        if(deduplicate){
+            blocksWritten.put(entry.getSignature().toLowerCase(), entry);
+        }
+    }
+    
+    /**
+     * Adds a small file to the solid block that is being filled. The block
+     * is written when it is full, before any bigger file and on each 
+     * checkpoint of the log.
+     * @param SHA1      The signature of the content
+     * @param path      The path/name of the file
+     * @param content   The uncompressed content
+     * @param length    How many bytes of the content are used
+     */
+    private void addSolidMember(final String SHA1, final String path,
+            final byte[] content, final int length) throws IOException{
+        if(solidBlock.size() + length > solidBlockSize){
+            flushSolidBlock();
+        }
+        // the same content might be waiting on the block already
+        final BigEntry known = deduplicate ? 
+                solidSignatures.get(SHA1.toLowerCase()) : null;
+        final BigEntry member = new BigEntry(0, -1, SHA1, path, -1, -1, null,
+                known == null ? solidBlock.size() : known.getOffset(), length);
+        solidMembers.add(member);
+        if(known == null){
+            solidBlock.write(content, 0, length);
+            if(deduplicate){
+                solidSignatures.put(SHA1.toLowerCase(), member);
+            }
+        }
+        if(solidBlock.size() >= solidBlockSize){
+            flushSolidBlock();
+        }
+    }
+    
+    /**
+     * Compresses the solid block that is being filled and writes it on the
+     * archive, followed by the index lines of all its files.
+     */
+    private void flushSolidBlock() throws IOException{
+        if(solidMembers.isEmpty()){
+            return;
+        }
+        final byte[] content = solidBlock.toByteArray();
+        final BigCodec codec = codecSelector.select(
+                solidMembers.get(0).getPath(), content, content.length);
+        nextSegmentWhenFull();
+        final long time = System.nanoTime();
+        outputStream.write(magicSignature.getBytes());
+        final BigCountingOutputStream counter = 
+                new BigCountingOutputStream(outputStream);
+        final OutputStream logical_zip = codec.create(counter, "solid");
+        logical_zip.write(content);
+        logical_zip.close();
+        codecs.getStatistics().addWrite(codec.getName(), content.length, 
+                counter.getCount(), System.nanoTime() - time);
+        for(final BigEntry member : solidMembers){
+            // duplicates of older blocks are written as they are
+            if(member.getPosition() >= 0){
+                writeLine(member);
+                continue;
+            }
+            writeLine(new BigEntry(0, currentPosition, member.getSignature(),
+                    member.getPath(), counter.getCount(), -1, codec.getName(),
+                    member.getOffset(), member.getLength(), currentSegment));
+        }
+        currentPosition += counter.getCount() + magicSignature.length();
+        solidBlock.reset();
+        solidMembers.clear();
+        solidSignatures.clear();
+    }
+    
+    /**
+     * Packs the small files written from now on together on solid blocks,
+     * compressed as a whole. Archives with many tiny files become smaller 
+     * and faster to read in sequence, the files of a block are decompressed
+     * only once. Reading a single file decompresses its whole block. 
+     * Files up to a quarter of the block size are packed. With quickWrite
+     * the blocks are only filled when using group commit, each checkpoint 
+     * writes the block that is being filled.
+     * @param blockSize The uncompressed size of each block, e.g. 262144. 
+     *                  Zero to write each file on its own block (default)
+     */
+    public void setSolidBlocks(final int blockSize) {
+        this.solidBlockSize = Math.max(0, blockSize);
+    }
+    
+    /**
+     * @return The largest file that goes to a solid block, -1 when solid
+     * blocks are not used
+     */
+    private int getSolidMemberLimit(){
+        return solidBlockSize > 0 ? solidBlockSize / 4 : -1;
+    }
+    
+    /**
+     * When deduplication is enabled and the content was already stored, 
+     * writes a line on the index pointing to the existing block.
+     * @param SHA1  The signature of the content
+     * @param path  The path/name of the new file
+     * @return True when the line was written, false when the content must
+     * be stored
+     */
+    private boolean writeDuplicate(final String SHA1, final String path)
+            throws IOException{
+        if(deduplicate == false){
+            return false;
+        }
+        final BigEntry block = findBlock(SHA1);
+        if(block == null){
+            return false;
+        }
+        // keep the order of the lines while small files are waiting
+        if(solidMembers.isEmpty() == false){
+            solidMembers.add(new BigEntry(0, block.getPosition(), SHA1, path,
+                    block.getSize(), -1, block.getCodec(), block.getOffset(),
+                    block.getLength(), block.getSegment()));
+            return true;
+        }
+        writerFileIndex.write("\n" 
+                + BigEntry.createLine(block.getPosition(), SHA1, path, 
+                        block.getSize(), block.getCodec(), block.getOffset(),
+                        block.getLength(), block.getSegment())
+        );
+        return true;
+    }
+    
+    /**
+     * Finds a block that stores the content with a given signature. Blocks
+     * written since the writers were opened are kept in memory, the older 
+     * ones are found on the SHA1 sidecar.
+     * @param SHA1  The signature of the content
+     * @return The entry with position, size and codec of the block, null 
+     * when not found
+     */
+    private BigEntry findBlock(final String SHA1) throws IOException{
+        final String key = SHA1.toLowerCase();
+        final BigEntry known = blocksWritten.get(key);
+        if(known != null){
+            return known;
+        }
+        for(final String line : indexSHA1.findIndexed(key, 16)){
+            final BigEntry block = BigEntry.parse(line, 0, -1);
+            // older lines don't tell where their data ends
+            if(block != null && block.getSize() >= 0){
+                blocksWritten.put(key, block);
+                return block;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Selects the format of the blocks written from now on. Blocks in raw
+     * deflate format have a header of a single byte instead of a zip
+     * container, they are smaller and faster to write and read but can't be
+     * opened with zip tools. Both formats can be mixed on the same archive.
+     * @param rawDeflate True for raw deflate, false for zip (default)
+     */
+    public void setRawDeflate(final boolean rawDeflate) {
+        setCodec(codecs.get(rawDeflate ? "deflate" : "zip"));
+    }
+    
+    /**
+     * Writes all the files from now on with the same codec. The codec is
+     * also registered, so that its blocks can be read.
+     * @param codec The codec, e.g. BigCodecs.deflate(9)
+     */
+    public void setCodec(final BigCodec codec) {
+        codecs.register(codec);
+        this.codecSelector = fixedCodec(codec);
+    }
+    
+    /**
+     * Chooses the codec of each file from now on, for example a
+     * BigAdaptiveSelector that stores files which don't compress well. The
+     * codecs given by the selector must be registered on getCodecs().
+     * @param selector The selector, called from many threads when adding
+     * folders in parallel
+     */
+    public void setCodecSelector(final BigCodecSelector selector) {
+        this.codecSelector = selector;
+    }
+    
+    /**
+     * @return The codecs that read and write the blocks of this archive,
+     * with the statistics of how they were used
+     */
+    public BigCodecs getCodecs() {
+        return codecs;
+    }
+    
+    /**
+     * Trains a preset dictionary from a sample of the small files that are
+     * already on the archive, stores it on the archive and compresses the
+     * files written from now on with it. An archive has a single 
+     * dictionary, when it exists already it is used instead of training a 
+     * new one. The writers must be open (quickStart).
+     * @param maxSamples How many files are used for training, e.g. 500
+     * @return True when the dictionary is used for the next files
+     */
+    public boolean trainDictionary(final int maxSamples){
+        if(getDictionary() != null){
+            setCodec(codecs.get("dictionary"));
+            return true;
+        }
+        flushIndexWriter();
+        // pick the small files evenly from the whole index
+        final ArrayList<BigEntry> chosen = new ArrayList<>();
+        final Random random = new Random(maxSamples);
+        long found = 0;
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(fileIndexBIG));
+            try{
+                String line;
+                while((line = reader.readLine()) != null){
+                    final BigEntry entry = BigEntry.parse(line, found, -1);
+                    if(entry == null || (entry.isSolid() ? entry.getLength() 
+                            : entry.getSize()) > maxSampleSize){
+                        continue;
+                    }
+                    found++;
+                    if(chosen.size() < maxSamples){
+                        chosen.add(entry);
+                    }else{
+                        final long slot = (long) (random.nextDouble() * found);
+                        if(slot < maxSamples){
+                            chosen.set((int) slot, entry);
+                        }
+                    }
+                }
+            }finally{
+                reader.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        final List<byte[]> samples = new ArrayList<>();
+        for(final BigEntry entry : chosen){
+            final byte[] content = extractContent(entry);
+            if(content != null && content.length <= maxSampleSize * 4){
+                samples.add(content);
+            }
+        }
+        return setDictionary(BigDictionary.train(samples, BigDictionary.maxSize));
+    }
+    
+    /**
+     * Stores a preset dictionary on the archive and compresses the files
+     * written from now on with it. The writers must be open (quickStart).
+     * @param dictionary The dictionary, e.g. from BigDictionary.train()
+     * @return True when the dictionary is used for the next files, false 
+     * when the archive has a dictionary already or it couldn't be written
+     */
+    public boolean setDictionary(final byte[] dictionary){
+        if(dictionary.length == 0){
+            System.err.println("BIG1064 - The dictionary is empty");
+            return false;
+        }
+        if(getDictionary() != null){
+            System.err.println("BIG1068 - The archive has a dictionary already");
+            return false;
+        }
+        if(isWriting == false){
+            System.err.println("BIG1072 - The archive is not open for writing");
+            return false;
+        }
+        // the dictionary itself can't be compressed with the dictionary
+        final BigCodecSelector selector = codecSelector;
+        final int solidSize = solidBlockSize;
+        try{
+            flushSolidBlock();
+            codecSelector = fixedCodec(codecs.get("stored"));
+            solidBlockSize = 0;
+            if(quickWriteGenericStream(new ByteArrayInputStream(dictionary), 
+                    null, BigDictionary.path) == false){
+                return false;
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        } finally {
+            codecSelector = selector;
+            solidBlockSize = solidSize;
+        }
+        this.dictionary = dictionary;
+        setCodec(BigCodecs.dictionary(dictionary, Deflater.DEFAULT_COMPRESSION));
+        return true;
+    }
+    
+    /**
+     * Reads the preset dictionary of the archive the first time it is
+     * needed, it is then registered so that its files can be read.
+     * @return The dictionary or null when the archive doesn't have one
+     */
+    public byte[] getDictionary(){
+        if(dictionaryLoaded){
+            return dictionary;
+        }
+        dictionaryLoaded = true;
+        final BigEntry entry = findEntry(BigDictionary.path);
+        if(entry == null){
+            return null;
+        }
+        final byte[] content = extractContent(entry);
+        if(content != null){
+            dictionary = content;
+            codecs.register(BigCodecs.dictionary(content, Deflater.DEFAULT_COMPRESSION));
+        }
+        return dictionary;
+    }
+    
+    /**
+     * @return A selector that always gives the same codec
+     */
+    private static BigCodecSelector fixedCodec(final BigCodec codec){
+        return new BigCodecSelector() {
+            @Override
+            public BigCodec select(final String path, final byte[] sample, 
+                    final int length) {
+                return codec;
+            }
+        };
+    }
+    
+    /**
+     * Stores each content only once. Files with a signature that is already
+     * on the archive get a line on the index that points to the existing
+     * block, no new data is written. The signatures of the files written
+     * while the archive is open are kept in memory, closing the writers 
+     * (quickEnd) releases them.
+     * @param deduplicate True to enable, disabled by default
+     */
+    public void setDeduplication(final boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+     
+   /**
+     * Copies one file into the big archive
+     * @param fileToCopy
+     * @return 
+     */ 
+    public boolean writeFile(final File fileToCopy){
+        // calculate the base path
+        final String resultingPath = fileToCopy.getAbsolutePath().replace(basePath, "");
+        try {
+            if(isTooBig(fileToCopy)){
+                return false;
+            }
+            // the SHA1 signature is calculated while compressing
+            final InputStream stream = new FileInputStream(fileToCopy);
+            try{
+                return writeStream(stream, fileToCopy.getName(), null, resultingPath);
+            }finally{
+                stream.close();
+            }
+        } catch(IOException e){
+            System.err.println("BIG346 - Error copying file: " + fileToCopy.getAbsolutePath());
+            return false;
+        }
+    }
+     
+    /**
+     * Copies one file into the big archive
+     * @param fileToCopy
+     * @param SHA1
+     * @param filePathToWriteInTextLine
+     * @return 
+     */ 
+    public boolean quickWrite(final File fileToCopy, final String SHA1,
+            final String filePathToWriteInTextLine){
+        try {
+            if(isTooBig(fileToCopy)){
+                return false;
+            }
+            // save this operation on the log of commits
+            commitBegin(fileToCopy.getName());
+            final boolean result;
+            final InputStream stream = new FileInputStream(fileToCopy);
+            try{
+                result = writeStream(stream, fileToCopy.getName(), SHA1, 
+                        filePathToWriteInTextLine);
+            }finally{
+                stream.close();
+            }
+            // close the log with success
+            commitEnd();
+            return result;
+        } catch(IOException e){
+            System.err.println("BIG600 - Error copying file: " + fileToCopy.getAbsolutePath());
+            return false;
+        }
+    }
+    
+    /**
+     * Verifies that a file is not bigger than the limit that we accept
+     * @param file  The file to verify
+     * @return True when the file must not be stored
+     */
+    private boolean isTooBig(final File file){
+        if(file.length() <= maxFileSize){
+            return false;
+        }
+        System.err.println("BIG714 - File is bigger than the limit of " 
+                + maxFileSize + " bytes: " + file.getAbsolutePath());
+        return true;
+    }
+    
+    /**
+     * Compresses the content of a stream straight into the archive and
+     * writes the respective line on the index. The data is only read once
+     * and is never kept entirely in memory. When the content goes over the
+     * size limit, the bytes that were already written are removed again.
+     * @param stream    The content to store, it is not closed here
+     * @param name      The file name kept inside the zip container
+     * @param SHA1      The signature of the content, or null to calculate 
+     *                  it while compressing
+     * @param path      The path/name written on the index
+     * @return True when the content was written, false when it was too big
+     * @throws IOException When the content could not be read or written
+     */
+    private boolean writeStream(final InputStream stream, final String name,
+            final String SHA1, final String path) throws IOException{
+        final MessageDigest hash;
+        try {
+            hash = SHA1 == null ? MessageDigest.getInstance("SHA1") : null;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        // with a known signature, stored content doesn't need to be read
+        if(SHA1 != null && writeDuplicate(SHA1, path)){
+            return true;
+        }
+        boolean success = false;
+        try{
+            final int solidLimit = getSolidMemberLimit();
+            final byte[] buffer = new byte[Math.max(16384, solidLimit + 1)];
+            int length = BigCodecs.fill(stream, buffer);
+            // small files are packed together on the solid block
+            if(length <= solidLimit && length <= maxFileSize){
+                if(hash != null){
+                    hash.update(buffer, 0, length);
+                }
+                final String signature = hash == null ? SHA1 
+                        : utils.hashing.checksum.convertHash(hash.digest());
+                if(hash == null || writeDuplicate(signature, path) == false){
+                    addSolidMember(signature, path, buffer, length);
+                }
+                success = true;
+                return true;
+            }
+            // bigger files get their own block, after the solid block
+            flushSolidBlock();
+            nextSegmentWhenFull();
+            // the first bytes tell which codec suits this content
+            final BigCodec codec = codecSelector.select(path, buffer, length);
+            final long time = System.nanoTime();
+            // add the magic number to this file block
+            outputStream.write(magicSignature.getBytes());
+            // the compressed data is written directly on the archive
+            final BigCountingOutputStream counter = 
+                    new BigCountingOutputStream(outputStream);
+            final OutputStream logical_zip = codec.create(counter, name);
+            long total = 0;
+            // compress and calculate the signature on the same loop
+            while (length > 0) {
+                total += length;
+                if(total > maxFileSize){
+                    System.err.println("BIG768 - Content is bigger than the limit of " 
+                            + maxFileSize + " bytes: " + path);
+                    return false;
+                }
+                logical_zip.write(buffer, 0, length);
+                if(hash != null){
+                    hash.update(buffer, 0, length);
+                }
+                length = stream.read(buffer);
+            }
+            logical_zip.close();
+            codecs.getStatistics().addWrite(codec.getName(), total, 
+                    counter.getCount(), System.nanoTime() - time);
+            
+            final String signature = hash == null ? SHA1 
+                    : utils.hashing.checksum.convertHash(hash.digest());
+            // the same content might be stored already, the new block
+            // is then removed again
+            if(hash != null && writeDuplicate(signature, path)){
+                return true;
+            }
+            writeIndexLine(signature, path, counter.getCount(), codec.getName());
+            success = true;
+            return true;
+        }finally{
+            if(success == false){
+                // remove the incomplete (or duplicate) block from the archive
+                outputStream.flush();
+                outputChannel.truncate(currentPosition);
+            }
+        }
+    }
+    
+    /**
+     * Copies one file into the big archive
+     * @param textToCopy
      * @param SHA1
      * @param filePathToWriteInTextLine
      * @return 
      * @throws java.io.IOException 
      */ 
-    public boolean quickWriteGenericStream(final InputStream stream, final String SHA1,
+    public boolean quickWrite(final String textToCopy, final String SHA1,
             final String filePathToWriteInTextLine) throws IOException{
-        // declare
-        ByteArrayOutputStream outputZipStream = new ByteArrayOutputStream();
-        ByteArrayInputStream byteInput = null;
-    try {
-        // save this operation on the log of commits
-        addTagStarted(filePathToWriteInTextLine);
-        // Create Archive Output Stream that attaches File Output Stream / and specifies type of compression
-        ArchiveOutputStream logical_zip = new ArchiveStreamFactory()
-                .createArchiveOutputStream(ArchiveStreamFactory.ZIP, outputZipStream);
-        // Create Archive entry - write header information
-        ZipArchiveEntry zipArchiveEntry = new ZipArchiveEntry(filePathToWriteInTextLine);
-        logical_zip.putArchiveEntry(zipArchiveEntry);
-        // Copy input file
-        
-        IOUtils.copy(stream, logical_zip);
-        
-        logical_zip.closeArchiveEntry();
-        logical_zip.finish();
-        logical_zip.flush();
-        logical_zip.close();
-        
-        // get the bytes
-        byteInput = new ByteArrayInputStream(outputZipStream.toByteArray());
-        
-        byte[] buffer = new byte[8192];
-        int length,
-                counter = 0;
-        // add the magic number to this file block
-        outputStream.write(magicSignature.getBytes());
-        // now copy the whole file into the BIG archive
-        while ((length = byteInput.read(buffer)) > 0) {
-            outputStream.write(buffer, 0, length);
-            counter += length;
-        }
-       
-        final String line = "\n" 
-                + utils.files.getPrettyFileSize(currentPosition)
-                + " "
-                + SHA1
-                + " " 
-                + filePathToWriteInTextLine;
-       
-        // write a new line in our index file
-        writerFileIndex.write(line);
-        //writer.flush();
-        // increase the position counter
-        currentPosition += counter + magicSignature.length();
-        
-        // close the log with success
-        addTagEnded();
-    } catch(Exception e){
-        System.err.println("BIG600 - Error copying file: " + filePathToWriteInTextLine);
-        return false;
+        return quickWriteGenericStream(new ByteArrayInputStream(textToCopy.getBytes()), SHA1, filePathToWriteInTextLine);
     }  
-    finally {
-            if(byteInput!= null){
-                byteInput.close();
-            }
+    
+   
+   
+    /**
+     * Copies one file into the big archive
+     * @param stream
+     * @param SHA1
+     * @param filePathToWriteInTextLine
+     * @return 
+     * @throws java.io.IOException 
+     */ 
+    public boolean quickWriteGenericStream(final InputStream stream, final String SHA1,
+            final String filePathToWriteInTextLine) throws IOException{
+        try {
+            // save this operation on the log of commits
+            commitBegin(filePathToWriteInTextLine);
+            final boolean result = writeStream(stream, filePathToWriteInTextLine, 
+                    SHA1, filePathToWriteInTextLine);
+            // close the log with success
+            commitEnd();
+            return result;
+        } catch(IOException e){
+            System.err.println("BIG600 - Error copying file: " + filePathToWriteInTextLine);
+            return false;
+        } finally {
             stream.close();
-            outputZipStream.close();
-            outputStream.close();
         }
-        return true;
     }  
 
     /**
@@ -710,66 +1659,9 @@ public class BigZip {
      */ 
     public void quickWriteStreamStandalone(final InputStream stream,
             final String filePathToWriteInTextLine) throws Exception{
-        // declare
-        ByteArrayOutputStream outputZipStream = new ByteArrayOutputStream();
-        ByteArrayInputStream byteInput = null;
-        // Create Archive Output Stream that attaches File Output Stream / and specifies type of compression
-        ArchiveOutputStream logical_zip = new ArchiveStreamFactory()
-                .createArchiveOutputStream(ArchiveStreamFactory.ZIP, outputZipStream);
-        // Create Archive entry - write header information
-        ZipArchiveEntry zipArchiveEntry = new ZipArchiveEntry(filePathToWriteInTextLine);
-        logical_zip.putArchiveEntry(zipArchiveEntry);
-        // prepare the SHA1 signature generation
-        final MessageDigest hash = MessageDigest.getInstance("SHA1");
-        
-        // Copy input file
-        byte[] buffer = new byte[16384];
-        int length;
-       
         // decompress from the original zip file, compress to our zip format
         // calculate the SHA1 signature on the same loop to save resource
-        while ((length = stream.read(buffer)) > 0) {
-            logical_zip.write(buffer, 0, length);
-            hash.update(buffer, 0, length);
-        }
-        
-        // compute the file signature
-        byte[] digest = hash.digest();
-        final String SHA1 = utils.hashing.checksum.convertHash(digest);
-           
-        // close the zip related objects
-        logical_zip.closeArchiveEntry();
-        logical_zip.finish();
-        logical_zip.flush();
-        logical_zip.close();
-        logical_zip = null;
-        
-        // define the line that will be written on the index file
-        final String line = "\n"
-                .concat( utils.files.getPrettyFileSize(currentPosition) )
-                .concat( " " )
-                .concat( SHA1)
-                .concat( " " )
-                .concat( filePathToWriteInTextLine);
-        
-        // get the bytes
-        byteInput = new ByteArrayInputStream(outputZipStream.toByteArray());
-        int counter = 0;
-        
-        // add the magic number to this file block
-        outputStream.write(magicSignature.getBytes());
-        // now copy the whole file into the BIG archive
-        while ((length = byteInput.read(buffer)) > 0) {
-            outputStream.write(buffer, 0, length);
-            counter += length;
-        }
-        // write a new line in our index file
-        writerFileIndex.write(line);
-        // increase the position counter
-        currentPosition += counter + magicSignature.length();
-        // close the streams that were created
-        byteInput.close();
-        outputZipStream.close();
+        writeStream(stream, filePathToWriteInTextLine, null, filePathToWriteInTextLine);
     }  
     
     /**
@@ -791,18 +1683,13 @@ public class BigZip {
      */
     public boolean getFile(final String fileToExtract, final File targetFile){
         // get the line where the file is located on our index
-        long[] coordinates = getFileCoordinates(fileIndexBIG, fileToExtract);
+        final BigEntry entry = findEntry(fileToExtract);
         // did we found something?
-        if(coordinates == null){
+        if(entry == null){
             return false;
         }
-        // now extract the mentioned bytes from our BIG archive
-        boolean result = extractBytes(targetFile, coordinates[0], coordinates[1]);
-        System.out.println("BIG 799: Grabbing file from "
-            + coordinates[0]
-            + " to "
-            + coordinates[1]
-        );
+        // now stream the mentioned bytes from our BIG archive
+        final boolean result = extractEntry(targetFile, entry);
         // all done
         return result;
     }
@@ -815,13 +1702,13 @@ public class BigZip {
      */
     public String getFileAsText(final String fileToExtract){
         // get the line where the file is located on our index
-        long[] coordinates = getFileCoordinates(fileIndexBIG, fileToExtract);
+        final BigEntry entry = findEntry(fileToExtract);
         // did we found something?
-        if(coordinates == null){
+        if(entry == null){
             return null;
         }
         // now extract the mentioned bytes from our BIG archive
-        String result = extractBytesToRAM(coordinates[0], coordinates[1]);
+        final String result = extractBytesToRAM(entry);
         // all done
         return result;
     }
@@ -831,74 +1718,123 @@ public class BigZip {
      * the next file indicator.
      * @param targetFile    The new file that will be created
      * @param startPosition The position from where we start to read the data
-     * @param endPosition
-     * @return 
+     * @param endPosition   The position where the data ends
+     * @return True when the file was written, false when something went wrong
      */
     public boolean extractBytes(final File targetFile, final long startPosition,
             final Long endPosition){
-        /**
-         * This is a tricky method. We will be extracting data from a the BIG
-         * archive onto a new file somewhere on disk. The biggest challenge here
-         * is to find exactly when the data for the file ends and still do the
-         * file copy with a wonderful performance.
-         */
-        try {
-            // enable random access to the BIG file (fast as heck)
-            RandomAccessFile dataBIG = new RandomAccessFile(fileMainBIG, "r");
-            // if the target file exists, try to delete it
+        return extractEntry(targetFile, new BigEntry(-1, 
+                startPosition - magicSignature.length(), "", "", -1, endPosition));
+    }
+    
+    /**
+     * Writes the content of a stored file on a new file.
+     * @param targetFile    The new file that will be created
+     * @param entry         The entry of the stored file
+     * @return True when the file was written, false when something went wrong
+     */
+    private boolean extractEntry(final File targetFile, final BigEntry entry){
+        // if the target file exists, try to delete it
+        if(targetFile.exists()){
+            targetFile.delete();
             if(targetFile.exists()){
-                targetFile.delete();
-                if(targetFile.exists()){
-                    // we failed completely
-                    System.out.println("BIG405 - Failed to delete: " + targetFile.getAbsolutePath());
-                    return false;
-                }
+                // we failed completely
+                System.out.println("BIG405 - Failed to delete: " + targetFile.getAbsolutePath());
+                return false;
             }
-            // we need to create a temporary zip file holder
-            File fileZip = new File("temp.zip");
-            // delete the zip file if it already exists
-            if(fileZip.exists()){
-                fileZip.delete();
-                if(fileZip.exists()){
-                    // we failed completely
-                    System.out.println("BIG416 - Failed to delete: " + fileZip.getAbsolutePath());
-                    return false;
+        }
+        try {
+            // decompress straight from the archive onto the target file
+            final InputStream inputStream = openEntry(entry);
+            try{
+                final OutputStream outputStream = new FileOutputStream(targetFile);
+                try{
+                    IOUtils.copy(inputStream, outputStream);
+                }finally{
+                    outputStream.close();
                 }
+            }finally{
+                inputStream.close();
             }
-            
-            // create a new file
-            RandomAccessFile dataNew = new RandomAccessFile(fileZip, "rw");
-            // jump directly to the position where the file is positioned
-            dataBIG.seek(startPosition);
-            // now we start reading bytes during the mentioned interval
-            while(dataBIG.getFilePointer() < endPosition){
-                // read a byte from our BIG archive
-                int data = dataBIG.read();
-                // write the same byte on the target file
-                dataNew.write(data);
-            }
-
-            // close the file streams
-            dataBIG.close();
-            dataNew.close();
-            
-            // extract the file
-            zip.extract(fileZip, new File("."));
-            // delete the temp zip file
-            fileZip.delete();
-            
-            
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
-            return false;
         } catch (IOException ex) {
             Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
             return false;
         }
-          
         return true;
     }
     
+    /**
+     * Opens a stored file for reading. The bytes are decompressed directly
+     * from the archive while they are read, nothing is written to disk.
+     * @param fileToExtract The full path and name of the file
+     * @return A stream with the content of the file, null when not found.
+     * The stream must be closed after use.
+     * @throws IOException When the data couldn't be read
+     */
+    public InputStream openEntry(final String fileToExtract) throws IOException{
+        final BigEntry entry = findEntry(fileToExtract);
+        if(entry == null){
+            return null;
+        }
+        return openEntry(entry);
+    }
+    
+    /**
+     * Opens a stored file, the bytes are decompressed directly from the 
+     * archive while they are read. Files on a solid block are given from
+     * the decompressed block.
+     * @param entry The entry of the file, e.g. from getNextEntry()
+     * @return A stream with the content of the file, it must be closed
+     * after use. It becomes invalid when this archive is closed.
+     * @throws IOException When the data couldn't be read
+     */
+    public InputStream openEntry(final BigEntry entry) throws IOException{
+        if(entry.isSolid() == false){
+            return openBlock(entry);
+        }
+        final byte[] content = extractContent(entry);
+        if(content == null){
+            throw new IOException("BIG1623 - Solid block could not be read at " 
+                    + entry.getPosition());
+        }
+        return new ByteArrayInputStream(content);
+    }
+    
+    /**
+     * Opens the stored file between two positions of the archive. The
+     * bytes are decompressed directly from the archive while they are read.
+     * @param startPosition Where the data begins (after the magic signature)
+     * @param endPosition   Where the data ends, -1 when not known
+     * @return A stream with the content of the file, it must be closed
+     * after use. It becomes invalid when this archive is closed.
+     * @throws IOException When the data couldn't be read
+     */
+    public InputStream openEntry(final long startPosition, final long endPosition)
+            throws IOException{
+        return openBlock(new BigEntry(-1, startPosition - magicSignature.length(),
+                "", "", -1, endPosition));
+    }
+    
+    /**
+     * Opens the block of an entry, decompressed while it is read.
+     */
+    private InputStream openBlock(final BigEntry entry) throws IOException{
+        // files might need the dictionary of the archive
+        getDictionary();
+        // files that were read recently are already decompressed in memory
+        if(cache != null){
+            final byte[] cached = cache.get(entry.getBlockKey());
+            if(cached != null){
+                return new ByteArrayInputStream(cached);
+            }
+        }
+        final BigDataReader dataReader = getDataReader(entry.getSegment());
+        // when the end is not known, it is where the next signature starts
+        final long end = entry.getDataEnd() >= 0 ? entry.getDataEnd() 
+                : dataReader.find(magicSignature.getBytes(), entry.getDataStart());
+        return codecs.open(dataReader.open(entry.getDataStart(), end));
+    }
+    
     
     /**
      * Version 2 that permits to extract the text from a compressed file without
@@ -908,189 +1844,220 @@ public class BigZip {
      * @return      The source code of the compressed file
      */
     public String extractBytesToRAM(final long startPosition, final Long endPosition){
-        
-        String result = null;
-        
-        try {
-            // enable random access to the BIG file (fast as heck)
-            RandomAccessFile dataBIG = new RandomAccessFile(fileMainBIG, "r");
-            // jump directly to the position where the file is positioned
-            dataBIG.seek(startPosition);
-            // create a byte array
-            ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
-
-            // now we start reading bytes during the mentioned interval
-            while(dataBIG.getFilePointer() < endPosition){
-                // read a byte from our BIG archive
-                int data = dataBIG.read();
-                byteOutput.write(data);
-            }
-            // flush data at this point
-            byteOutput.flush();
-            // now convert the stream from input into an output (to feed the zip stream)
-            ByteArrayInputStream byteInput = new ByteArrayInputStream(byteOutput.toByteArray());
-            // where we place the decompressed bytes
-            ByteArrayOutputStream textOutput = new ByteArrayOutputStream();
-            // create the zip streamer
-            final ArchiveInputStream archiveStream;
-            archiveStream = new ArchiveStreamFactory().createArchiveInputStream("zip", byteInput);
-            final ZipArchiveEntry entry = (ZipArchiveEntry) archiveStream.getNextEntry();
-            // copy all bytes from one location to the other (and decompress the data)
-            IOUtils.copy(archiveStream, textOutput);
-            // flush the results
-            textOutput.flush();
-            // we've got the result right here!
-            result = textOutput.toString();
-            // now close all the streams that we have open
-            dataBIG.close();
-            byteOutput.close();
-            byteInput.close();
-            textOutput.close();
-            archiveStream.close();
-            
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
-        } catch (IOException ex) {
-            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
-        } catch (ArchiveException ex) {
-            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
-        }
-          
-        return result;
+        final byte[] content = extractContent(
+                startPosition - magicSignature.length(), endPosition);
+        return content == null ? null : new String(content);
     }
     
     
     /**
      * Version 2 that permits to extract the text from a compressed file without
-     * creating any file on the disk.
-     * @param filePosition
+     * creating any file on the disk. The text index is read to find the line
+     * of the block, the size recorded there tells where the block ends. When
+     * the entry is known, extractBytesToRAM(BigEntry) avoids reading the index.
+     * @param filePosition Where the block starts on the .big file
      * @return      The source code of the compressed file
      */
     public String extractBytesToRAM(final long filePosition){
-        
-        String result = null;
-        
+        final byte[] content = readBlock(findBlock(filePosition));
+        return content == null ? null : new String(content);
+    }
+    
+    /**
+     * Finds the block that starts at a position of the .big file. Looking
+     * for the next magic signature on the data is not reliable, the content
+     * of stored blocks might have the same bytes.
+     * @param filePosition Where the block starts on the .big file
+     * @return The block, its end is taken from the size on the index line,
+     * from the next block on older lines or is not known (-1) when the
+     * position is not on the index
+     */
+    private BigEntry findBlock(final long filePosition){
+        long size = -1,
+                end = -1;
+        flushIndexWriter();
         try {
-            
-            // add the signature bytes to our start position
-            long startPosition = filePosition + magicSignature.length();
-            
-            // enable random access to the BIG file (fast as heck)
-            RandomAccessFile dataBIG = new RandomAccessFile(fileMainBIG, "r");
-            // jump directly to the position where the file is positioned
-            dataBIG.seek(startPosition);
-            // create a byte array
-            ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
-
-            // get the end of this file entry (by brute-force)
-            char test = 0;
-            long endPosition = -1;
-            while(test != -1){
-                test = dataBIG.readChar();
-                // if the magic devil number was found..
-                if(test == 66){
-                    // read the next value for confirmation
-                    byte value = dataBIG.readByte();
-                    if(value != 73){
+            final BigIndexReader reader = new BigIndexReader(fileIndexBIG, 0);
+            try{
+                boolean found = false;
+                while(reader.next()){
+                    final String line = reader.getLine();
+                    final long position = BigEntry.parsePosition(line);
+                    if(BigEntry.parseSegment(line) > 0){
                         continue;
                     }
-                    // we found the next entry
-                    endPosition = dataBIG.getFilePointer() - 1;
-                    break;
+                    if(found && position > filePosition){
+                        // older lines end where the next block starts
+                        end = position;
+                        break;
+                    }
+                    if(found == false && position == filePosition){
+                        found = true;
+                        size = BigEntry.parseSize(line);
+                        if(size >= 0){
+                            break;
+                        }
+                    }
                 }
+            }finally{
+                reader.close();
             }
-            
-            // rewind back to the start position
-            dataBIG.seek(startPosition);
-            
-            // now we start reading bytes during the mentioned interval
-            while(dataBIG.getFilePointer() < endPosition){
-                // read a byte from our BIG archive
-                int data = dataBIG.read();
-                byteOutput.write(data);
-            }
-            // flush data at this point
-            byteOutput.flush();
-            // now convert the stream from input into an output (to feed the zip stream)
-            ByteArrayInputStream byteInput = new ByteArrayInputStream(byteOutput.toByteArray());
-            // where we place the decompressed bytes
-            ByteArrayOutputStream textOutput = new ByteArrayOutputStream();
-            // create the zip streamer
-            final ArchiveInputStream archiveStream;
-            archiveStream = new ArchiveStreamFactory().createArchiveInputStream("zip", byteInput);
-            final ZipArchiveEntry entry = (ZipArchiveEntry) archiveStream.getNextEntry();
-            // copy all bytes from one location to the other (and decompress the data)
-            IOUtils.copy(archiveStream, textOutput);
-            // flush the results
-            textOutput.flush();
-            // we've got the result right here!
-            result = textOutput.toString();
-            // now close all the streams that we have open
-            dataBIG.close();
-            byteOutput.close();
-            byteInput.close();
-            textOutput.close();
-            archiveStream.close();
-            
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
         } catch (IOException ex) {
             Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return new BigEntry(-1, filePosition, "", "", size, end);
+    }
+    
+    /**
+     * Provides the decompressed bytes of a stored file, from the cache when
+     * available.
+     * @param filePosition  Where the block starts (magic signature included)
+     * @param endPosition   Where the block ends, -1 when not known
+     * @return The content or null when something went wrong
+     */
+    private byte[] extractContent(final BigEntry entry){
+        if(entry.isSolid() == false){
+            return readBlock(entry);
+        }
+        // the files of a solid block are usually read one after the other
+        if(entry.getBlockKey() != lastSolidKey){
+            lastSolidBlock = readBlock(entry);
+            lastSolidKey = lastSolidBlock == null ? -1 : entry.getBlockKey();
+        }
+        if(lastSolidBlock == null 
+                || entry.getOffset() + entry.getLength() > lastSolidBlock.length){
             return null;
-        } catch (ArchiveException ex) {
+        }
+        return Arrays.copyOfRange(lastSolidBlock, (int) entry.getOffset(), 
+                (int) (entry.getOffset() + entry.getLength()));
+    }
+    
+    /**
+     * Version 3 that extracts a stored file, also from solid blocks.
+     * @param entry The entry of the file, e.g. from the index
+     * @return The content of the file, null when something went wrong
+     */
+    public String extractBytesToRAM(final BigEntry entry){
+        final byte[] content = extractContent(entry);
+        return content == null ? null : new String(content);
+    }
+    
+    /**
+     * Provides the decompressed bytes of a stored file, from the cache when
+     * available.
+     * @param filePosition  Where the block starts (magic signature included)
+     * @param endPosition   Where the block ends, -1 when not known
+     * @return The content or null when something went wrong
+     */
+    private byte[] extractContent(final long filePosition, final long endPosition){
+        return readBlock(new BigEntry(-1, filePosition, "", "", -1, endPosition));
+    }
+    
+    /**
+     * Provides the decompressed block of an entry, from the cache when
+     * available.
+     * @param entry The entry, with the segment and position of the block
+     * @return The content or null when something went wrong
+     */
+    private byte[] readBlock(final BigEntry entry){
+        // files might need the dictionary of the archive
+        getDictionary();
+        if(cache != null){
+            final byte[] cached = cache.get(entry.getBlockKey());
+            if(cached != null){
+                return cached;
+            }
+        }
+        try {
+            final BigDataReader dataReader = getDataReader(entry.getSegment());
+            // add the signature bytes to our start position
+            final long startPosition = entry.getDataStart();
+            // get the end of this file entry (where the next signature starts)
+            final long end = entry.getDataEnd() >= 0 ? entry.getDataEnd()
+                    : dataReader.find(magicSignature.getBytes(), startPosition);
+            // read all the compressed bytes with a single positional read
+            final ByteBuffer data = dataReader.read(startPosition, end);
+            // and decompress them straight from the buffer
+            final byte[] result = codecs.decompress(data);
+            if(cache != null){
+                cache.put(entry.getBlockKey(), result);
+            }
+            return result;
+        } catch (IOException ex) {
             Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
         }
-          
-        return result;
+        return null;
+    }
+    
+    /**
+     * Provides the reader of a segment, segments are only opened when a
+     * file stored on them is read.
+     * @param segment   The number of the segment, zero is the .big file
+     * @return The reader
+     */
+    private synchronized BigDataReader getDataReader(final int segment){
+        while(dataReaders.size() <= segment){
+            dataReaders.add(null);
+        }
+        BigDataReader reader = dataReaders.get(segment);
+        if(reader == null){
+            reader = new BigDataReader(BigSegments.getFile(fileMainBIG, segment),
+                    useDirectBuffers, memoryMapped);
+            dataReaders.set(segment, reader);
+        }
+        return reader;
+    }
+    
+    /**
+     * Closes the readers of all the segments.
+     */
+    private synchronized void closeDataReaders(){
+        for(final BigDataReader reader : dataReaders){
+            if(reader != null){
+                reader.close();
+            }
+        }
+        dataReaders.clear();
     }
     
     /**
-     * Looks inside a textWeird file to discover the line that contains a given
- keyword. When the line is discovered then it returns an array where
-     * the first long represents the start of data and the second represents
-     * its end.
-     * @param file      A file on disk
-     * @param keyword   A keyword that must be present on the file
-     * @return          An array with the start and end position of a given
-     * file inside our BIG archive. If we don't have a match, the result is NULL
+     * Keeps the content of the files that were read in memory, so that
+     * reading them again is faster. The cache must not be shared with
+     * other archives.
+     * @param cache The cache to use, or null to disable caching
+     */
+    public void setCache(final BigCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return The cache of decompressed files, null when not used
      */
-    private long[] getFileCoordinates(final File file, 
-            final String keyword){
-        // what we provide as answer
-        long[] result = null;
-        BufferedReader reader;
+    public BigCache getCache() {
+        return cache;
+    }
+    
+    /**
+     * Looks up the path index to discover where a given file is stored.
+     * @param path      The full path/name of the file as written on the index
+     * @return          The entry of the file, with its data end always known.
+     * If we don't have a match, the result is NULL
+     */
+    private BigEntry findEntry(final String path){
+        flushIndexWriter();
         try {
-            FileReader fileReader = new FileReader(file);
-            reader = new BufferedReader(fileReader);
-            String line = "";
-            while (line != null) {
-                // do we have a match? Yes, let's proceed
-                if(line.endsWith(keyword)){
-                    // an example of what we are reading:
-                    // 000000000180411 3f1f0990b8200b5e9b5de461a7fa7f7640ae16f7 /C/HappyNuno.txt
-                    final String startValue = line.substring(0, 15);
-                    // get the coordinate and ignore the magic signature size to get the raw binary contents
-                    final long val1 = Long.parseLong(startValue) + magicSignature.length();
-                    // now read the next line to get the end value
-                    line = reader.readLine();
-                    final String endValue = line.substring(0, 15);
-                    final long val2 = Long.parseLong(endValue);
-                    // deliver the value
-                    result = new long[]{val1, val2};
-                    break;
-                }
-                line = reader.readLine();
+            final BigEntry entry = indexPath.findEntry(path);
+            if(entry == null || entry.getDataEnd() >= 0){
+                return entry;
             }
-            fileReader.close();
-            reader.close();
+            // the last file of the archive ends with the archive
+            return new BigEntry(entry.getOrdinal(), entry.getPosition(), 
+                    entry.getSignature(), entry.getPath(), -1, 
+                    fileMainBIG.length(), entry.getCodec());
         } catch (IOException ex) {
-            Logger.getLogger(files.class.getName()).log(Level.SEVERE, null, ex);
+            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
         }
-        // all done    
-        return result;
+        return null;
     }
 
     /**
@@ -1102,69 +2069,43 @@ public class BigZip {
      * @return          A list of files found with this SHA1
      */
     public ArrayList<String> findFilesWithSpecificSHA1(final String idSHA1){
-        // prepare the variable where we place the results
-        ArrayList<String> result = new ArrayList();
-        
-        // open the file for reading
-        getNextFileInitiate();
-        
-        String line;
-        try {
-            while( (line = readerNextFile.readLine()) !=  null){ 
-                // get the SHA1 signature
-                final String SHA1 = line.substring(16, 56);
-                // no need to continue if no match exists
-                if(utils.text.equals(SHA1, idSHA1)==false){
-                    continue;
-                }
-                // ge the file name details after coordinate 57
-                final String fileName = line.substring(57);
-                // add this data to our result list
-                result.add(fileName);
-            }
-            
-        } catch (IOException ex) {
-            Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            // close the files for reading
-            getNextFileConclude();    
-        }
-        //System.out.println("BIG662 SHA1 search concluded");
-        // all done
-       return result;
+        return findWithSpecificSHA1(idSHA1, Integer.MAX_VALUE);
     }
     
     
-        
+    /**
+     * Given a specific SHA1 signature, find the first file with this value.
+     * @param signatureSHA1 The SHA1 identifier to find
+     * @return The file path/name or null when nothing was found
+     */
     public String findFileWithSpecificSHA1(final String signatureSHA1) {
-        // open the file for reading
-        getNextFileInitiate();
-        String result = null;
-        String line;
+        final ArrayList<String> result = findWithSpecificSHA1(signatureSHA1, 1);
+        if(result.isEmpty()){
+            return null;
+        }
+        return result.get(0);
+    } 
+    
+    /**
+     * Looks up the SHA1 sidecar index for files with a given signature.
+     * @param idSHA1        The SHA1 identifier to find
+     * @param maxResults    How many results do we want at most
+     * @return The path/name of the matching files
+     */
+    private ArrayList<String> findWithSpecificSHA1(final String idSHA1, 
+            final int maxResults){
+        final ArrayList<String> result = new ArrayList<>();
+        flushIndexWriter();
         try {
-            while( (line = readerNextFile.readLine()) !=  null){ 
-                // get the SHA1 signature
-                final String SHA1 = line.substring(16, 56);
-                // no need to continue if no match exists
-                if(utils.text.equals(SHA1, signatureSHA1)==false){
-                    continue;
-                }
+            for(final String line : indexSHA1.find(idSHA1, maxResults)){
                 // ge the file name details after coordinate 57
-                final String fileName = line.substring(57);
-                // add this data to our result list
-                result = fileName;
-                break;
+                result.add(BigEntry.parsePath(line));
             }
-            
         } catch (IOException ex) {
             Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            // close the files for reading
-            getNextFileConclude();    
         }
-        // all done
-       return result;
-    } 
+        return result;
+    }
     
     /**
      * Prepares this archive to iterate all files sequentially
@@ -1179,8 +2120,13 @@ public class BigZip {
             // now avoid the first file because we know its offset is 0000
             lastReadLine = readerNextFile.readLine();
             currentLine = lastReadLine;
-            readerNextFileName = getFileNameOutOfLine(lastReadLine);
-            
+            // the files are read ahead on a background thread
+            if(prefetchDepth > 0){
+                // files might need the dictionary of the archive
+                getDictionary();
+                prefetcher = new BigPrefetcher(fileMainBIG, codecs, 
+                        prefetchDepth, prefetchMemory, prefetchDecompress);
+            }
             } catch (FileNotFoundException ex) {
             Logger.getLogger(files.class.getName()).log(Level.SEVERE, null, ex);
         } catch (IOException ex) {
@@ -1192,6 +2138,11 @@ public class BigZip {
      * Releases the allocated resources required for running this operation
      */
     public void getNextFileConclude(){
+        // stop reading ahead
+        if(prefetcher != null){
+            prefetcher.close();
+            prefetcher = null;
+        }
         // closes the streams previously open
         try {
             if(fileReaderNext != null)
@@ -1206,29 +2157,107 @@ public class BigZip {
     /**
      * Starting from the first file, this method permits to iterate over all
      * the files inside a big archive.
-     * @return a pointer to the extracted file on disk
+     * @return a pointer to the extracted file on disk, null when there are
+     * no more files
      * @throws java.io.IOException when the file had some error 
      */
     public File getNextFile() throws IOException {
+            if(prefetcher != null){
+                final Map.Entry<BigEntry, byte[]> next = getNextPrefetched();
+                if(next == null){
+                    return null;
+                }
+                final File file = new File(getFileNameOutOfLine(next.getKey().getPath()));
+                final OutputStream output = new FileOutputStream(file);
+                try{
+                    output.write(next.getValue());
+                }finally{
+                    output.close();
+                }
+                return file;
+            }
+            final BigEntry entry = getNextEntry();
+            // no more files to process
+            if(entry == null){
+                return null;
+            }
+            // define the file pointer that we will be using
+            final File file = new File(getFileNameOutOfLine(entry.getPath()));
+            // now extract the mentioned bytes from our BIG archive
+            extractEntry(file, entry);
+            // all done
+       return file;
+    }
+    
+    /**
+     * Gives the next file that was read ahead. The prefetcher is kept busy
+     * with the entries that follow it on the index.
+     * @return The entry and its content, null when there are no more files
+     * @throws IOException when the index or the file could not be read
+     */
+    private Map.Entry<BigEntry, byte[]> getNextPrefetched() throws IOException {
+        while(prefetcher.getPending() <= prefetcher.getDepth()){
+            final BigEntry entry = getNextEntry();
+            if(entry == null){
+                break;
+            }
+            prefetcher.add(entry);
+        }
+        return prefetcher.take();
+    }
+    
+    /**
+     * Reads the next files on a background thread during the sequential
+     * iteration (getNextFile and getNextSourceCodeFile), so that reading
+     * from the disk and decompressing happen at the same time. Used from
+     * the next call of getNextFileInitiate. The counter and lines of the 
+     * iteration are then ahead of the file that was given, by up to the
+     * number of files read ahead.
+     * @param depth         How many files are read ahead, zero to read
+     *                      each file when it is asked (default)
+     * @param maxBytes      How many bytes the files read ahead can hold,
+     *                      e.g. 64MB. A bigger file is still read, alone.
+     * @param decompress    Also decompress the files ahead, otherwise only
+     *                      the compressed bytes are read ahead
+     */
+    public void setPrefetch(final int depth, final long maxBytes, 
+            final boolean decompress) {
+        this.prefetchDepth = Math.max(0, depth);
+        this.prefetchMemory = maxBytes;
+        this.prefetchDecompress = decompress;
+    }
+    
+    /**
+     * Moves the sequential iteration to the next file of the index.
+     * @return The entry of the next file or null when there are no more
+     * @throws IOException when the index could not be read
+     */
+    private BigEntry getNextEntry() throws IOException {
+        while(currentLine != null){
             lastReadLine = currentLine;
             // now get the next line
             currentLine = readerNextFile.readLine();
             // increase the counter
             getNextFileCounter++;
-            // get the new coordinate
-            final long newValue = getValueOutOfLine(currentLine);
-            
-            // define the file pointer that we will be using
-            final File file = new File(readerNextFileName);
-            // now extract the mentioned bytes from our BIG archive
-            extractBytes(file, currentGetNextPosition 
-                    + magicSignature.length(), newValue);
-        
+            // newer lines tell the size of the data, on older lines the
+            // data ends where the next file starts (or with the .big file)
+            final long nextPosition = currentLine == null 
+                    || BigEntry.parseSegment(currentLine) > 0 ? 
+                    fileMainBIG.length() : BigEntry.parsePosition(currentLine);
             // now update the marker for the present offset
-            currentGetNextPosition = newValue;
-            readerNextFileName = getFileNameOutOfLine(currentLine);
-            // all done
-       return file;
+            currentGetNextPosition = nextPosition;
+            // a duplicate on the next line points to an older block, the 
+            // end has to be found by looking for the next signature
+            final long end = nextPosition > BigEntry.parsePosition(lastReadLine) ?
+                    nextPosition : -1;
+            final BigEntry entry = BigEntry.parse(lastReadLine, 
+                    getNextFileCounter - 1, end);
+            // ignore lines that are not valid
+            if(entry != null){
+                return entry;
+            }
+        }
+        return null;
     }
 
     /**
@@ -1251,28 +2280,16 @@ public class BigZip {
     
     
     /**
-     * Given a line describing a file, get the file name portion
-     * @param line  A line from our index file
+     * Given the path of a file, get the file name portion
+     * @param path  The path/name of a file inside the archive
      * @return      The file name. Errors are ignored intentionally to permit
      *              scale and faster processing speed.
      */
-    private String getFileNameOutOfLine(final String line){
+    private String getFileNameOutOfLine(final String path){
         // get the last path indicator
-        final int i1 = line.lastIndexOf("/");
+        final int i1 = path.lastIndexOf("/");
         // provide the name portion of the file
-        return line.substring(i1+1);
-    }
-    
-    /**
-     * Given a line describing a file in our big archive, get the coordinate value
-     * @param line
-     * @return      A long with the value where the data can be found
-     */
-    private long getValueOutOfLine(final String line){
-        // get the first values with the coordinate
-        final String startValue = line.substring(0, 15);
-        // get the coordinate and ignore the magic signature
-        return Long.parseLong(startValue);
+        return path.substring(i1+1);
     }
     
     /**
@@ -1318,41 +2335,156 @@ public class BigZip {
      * Does a simple line read to advance the counters
      */
     private void emptyLineRead() throws IOException{
-        readerNextFile.readLine();
+        lastReadLine = currentLine;
+        currentLine = readerNextFile.readLine();
         getNextFileCounter++;
     }
     
     /**
      * Starting from the first file, this method permits to iterate over all
      * the files inside a big archive.
-     * @return a pointer to the extracted file on disk
+     * @return the content of the file, null when there are no more files
      * @throws java.io.IOException when the file had some error 
      */
     public String getNextSourceCodeFile() throws IOException {
-            lastReadLine = currentLine;
-            // now get the next line
-            currentLine = readerNextFile.readLine();
-            // increase the counter
-            getNextFileCounter++;
-            // get the new coordinate
-            final long newValue = getValueOutOfLine(currentLine);
-            
+            if(prefetcher != null){
+                final Map.Entry<BigEntry, byte[]> next = getNextPrefetched();
+                return next == null ? null : new String(next.getValue());
+            }
+            final BigEntry entry = getNextEntry();
+            // no more files to process
+            if(entry == null){
+                return null;
+            }
             // now extract the mentioned bytes from our BIG archive
-            final String result = extractBytesToRAM(currentGetNextPosition 
-                    + magicSignature.length(), newValue);
-        
-            // now update the marker for the present offset
-            currentGetNextPosition = newValue;
-            readerNextFileName = getFileNameOutOfLine(currentLine);
+            final String result = extractBytesToRAM(entry);
             // all done
        return result;
     }
 
+    /**
+     * Provides the entries of the archive straight from the index, without
+     * loading it into memory. A parallel stream splits the index in ranges
+     * of lines, each range is read on its own. Entries of older lines get
+     * -1 as line number when the index is split.
+     * @return The entries in the order they were written
+     */
+    public Stream<BigEntry> entries(){
+        flushIndexWriter();
+        return StreamSupport.stream(new BigEntrySpliterator(fileMainBIG,
+                fileIndexBIG, 0, fileIndexBIG.length()), false);
+    }
+    
+    /**
+     * Provides the entries of the archive with their decompressed content,
+     * like entries(). Each part of a parallel stream reads the archive with
+     * its own channels, e.g. contents().parallel() uses all the processors
+     * to read the whole archive. The stream must be used while this archive
+     * is not being written.
+     * @return The entries with their content, in the order they were written
+     */
+    public Stream<Map.Entry<BigEntry, byte[]>> contents(){
+        flushIndexWriter();
+        // files might need the dictionary of the archive
+        getDictionary();
+        return StreamSupport.stream(new BigContentSpliterator(
+                new BigEntrySpliterator(fileMainBIG, fileIndexBIG, 0, 
+                        fileIndexBIG.length()), fileMainBIG, codecs), false);
+    }
+    
+    /**
+     * Finds the files whose content matches a regular expression anywhere.
+     * With the content index only the candidate files are decompressed,
+     * otherwise every file. The files are read and matched in parallel, the
+     * content is decoded as UTF-8.
+     * @param pattern   The expression
+     * @return The matching entries, in the order they were written
+     * @throws IOException When the content index couldn't be read
+     */
+    public Stream<BigEntry> grep(final Pattern pattern) throws IOException{
+        flushIndexWriter();
+        // files might need the dictionary of the archive
+        getDictionary();
+        Stream<Map.Entry<BigEntry, byte[]>> files = null;
+        if(indexContent != null){
+            final long[] candidates = indexContent.find(pattern);
+            if(candidates != null){
+                final Spliterator<BigEntry> entries = indexContent
+                        .getEntries(candidates, fileMainBIG).spliterator();
+                files = StreamSupport.stream(new BigContentSpliterator(
+                        entries, fileMainBIG, codecs), true);
+            }
+        }
+        if(files == null){
+            files = contents().parallel();
+        }
+        return files.filter(new Predicate<Map.Entry<BigEntry, byte[]>>(){
+            @Override
+            public boolean test(final Map.Entry<BigEntry, byte[]> file) {
+                return pattern.matcher(new String(file.getValue(),
+                        StandardCharsets.UTF_8)).find();
+            }
+        }).map(new Function<Map.Entry<BigEntry, byte[]>, BigEntry>(){
+            @Override
+            public BigEntry apply(final Map.Entry<BigEntry, byte[]> file) {
+                return file.getKey();
+            }
+        });
+    }
+    
+    /**
+     * Finds the files whose content has a given text, see grep(Pattern).
+     * @param text  The text, with the case as written
+     * @return The matching entries, in the order they were written
+     * @throws IOException When the content index couldn't be read
+     */
+    public Stream<BigEntry> grep(final String text) throws IOException{
+        return grep(Pattern.compile(text, Pattern.LITERAL));
+    }
+    
+    /**
+     * Finds the lines of the stored files that match a search. The files
+     * are divided between several threads, see BigGrep. With the content
+     * index only the candidate files are read, otherwise every file.
+     * @param grep      The search
+     * @param listener  Gets each match when found, from several threads
+     * @return The number of matches
+     * @throws IOException When a file couldn't be read
+     */
+    public long grep(final BigGrep grep, final Consumer<BigMatch> listener)
+            throws IOException{
+        flushIndexWriter();
+        // files might need the dictionary of the archive
+        getDictionary();
+        List<BigEntry> files = null;
+        if(indexContent != null){
+            final long[] candidates = indexContent.find(grep.getQuery());
+            if(candidates != null){
+                files = indexContent.getEntries(candidates, fileMainBIG);
+            }
+        }
+        if(files == null){
+            // entries are only created when a thread reaches them
+            files = new BigCompactIndex(fileMainBIG).asList();
+        }
+        return grep.search(files, fileMainBIG, codecs, listener);
+    }
+    
     /**
      * Close the big archive and all open files associated with it
      */
     public void close() {
         getNextFileConclude();
+        indexPath.close();
+        closeDataReaders();
+        // the last run of the content trigrams is kept in memory until now
+        if(indexContent != null){
+            try {
+                indexContent.close();
+            } catch (IOException ex) {
+                Logger.getLogger(BigZip.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
     }
 
     public File getFileLog() {
@@ -1375,6 +2507,29 @@ public class BigZip {
         return currentLine;
     }
 
+    /**
+     * Defines if the buffer used for reading the compressed data is allocated
+     * outside of the Java heap. Useful when the data is mostly forwarded
+     * to channels instead of being decompressed in memory.
+     * @param useDirectBuffers True to use direct buffers
+     */
+    public void setDirectBuffers(final boolean useDirectBuffers) {
+        closeDataReaders();
+        this.useDirectBuffers = useDirectBuffers;
+    }
+    
+    /**
+     * Reads the stored files from memory mappings of the archive, in windows
+     * of 1GB. The blocks are decompressed straight from the mapping, without
+     * a read into a buffer, and the pages are shared with other processes
+     * that read the same archive. Best for archives that are read often.
+     * @param memoryMapped True to map the archive, false to read it
+     */
+    public void setMemoryMapped(final boolean memoryMapped) {
+        closeDataReaders();
+        this.memoryMapped = memoryMapped;
+    }
+    
     /**
      * Sets the maximum size accepted as a file for storage.
      * @param maxFileSizeBigZip 
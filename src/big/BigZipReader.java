@@ -0,0 +1,328 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T12:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: BigZipReader.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text>
+ *
+ * Read-only access to a BIG archive that can be shared by many threads.
+ *
+ * BigZip keeps the state of its iterator and writers in fields, so an
+ * instance can only be used by one thread at a time. This class loads the
+ * index once into an immutable BigCompactIndex, which keeps the entries on
+ * primitive arrays instead of an object per file, and shares a FileChannel
+ * per segment, whose positional reads don't move any file pointer and can
+ * run in parallel, also on different segments. Segments are opened when a file
+ * stored on them is first read.
+ * After the constructor returns nothing is modified anymore, so lookups and
+ * reads don't need any locking.
+ *
+ * The view is a snapshot: files written to the archive after the reader was
+ * opened are not visible, open a new reader to see them.
+ *
+ * A thread interrupted during a read closes the shared channel for everyone,
+ * in that case the channel is opened again and the read is repeated.
+ *
+ * Optionally the segments are mapped into memory, each block is then
+ * decompressed straight from a slice of the mapping.
+ * </text>
+ */
+
+package big;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Thread-safe reader of a BIG archive.
+ */
+public class BigZipReader implements Closeable {
+
+    private final File fileMainBIG;
+    private final BigSegments segments;
+    private final boolean memoryMapped;
+    private volatile boolean closed = false;
+
+    // the immutable view of the index
+    private final BigCompactIndex index;
+
+    // each thread reuses its own buffer for the compressed bytes
+    private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+    // and keeps the last solid block that it decompressed
+    private final ThreadLocal<BigEntry> solidEntries = new ThreadLocal<BigEntry>();
+    private final ThreadLocal<byte[]> solidBlocks = new ThreadLocal<byte[]>();
+    // optional cache of decompressed files
+    private volatile BigCache cache = null;
+    // the codecs that can read the blocks
+    private final BigCodecs codecs = new BigCodecs();
+
+    /**
+     * Opens a BIG archive for reading and loads its index.
+     * @param fileMainBIG   The .big file, the index is expected beside it
+     * @throws IOException  When the archive or the index can't be read
+     */
+    public BigZipReader(final File fileMainBIG) throws IOException {
+        this(fileMainBIG, false);
+    }
+
+    /**
+     * Opens a BIG archive for reading and loads its index.
+     * @param fileMainBIG   The .big file, the index is expected beside it
+     * @param memoryMapped  Read the blocks from memory mappings of the
+     *                      archive instead of copying them to buffers
+     * @throws IOException  When the archive or the index can't be read
+     */
+    public BigZipReader(final File fileMainBIG, final boolean memoryMapped)
+            throws IOException {
+        this.fileMainBIG = fileMainBIG;
+        this.memoryMapped = memoryMapped;
+        this.segments = new BigSegments(fileMainBIG);
+        this.index = new BigCompactIndex(new File(fileMainBIG.getParentFile(),
+                fileMainBIG.getName() + "-index"), segments.getChannel(0).size());
+        // files compressed with the dictionary of the archive need it
+        final BigEntry dictionary = getEntry(BigDictionary.path);
+        if(dictionary != null){
+            codecs.register(BigCodecs.dictionary(read(dictionary),
+                    Deflater.DEFAULT_COMPRESSION));
+        }
+    }
+
+    /**
+     * Gets the content of a file.
+     * @param path  The full path/name as written on the index
+     * @return The decompressed bytes or null when the path is not found
+     * @throws IOException When the data couldn't be read
+     */
+    public byte[] get(final String path) throws IOException{
+        final BigEntry entry = getEntry(path);
+        return entry == null ? null : read(entry);
+    }
+
+    /**
+     * Gets the content of the first file with a given SHA1 signature.
+     * @param idSHA1 The SHA1 signature in hex format
+     * @return The decompressed bytes or null when the signature is not found
+     * @throws IOException When the data couldn't be read
+     */
+    public byte[] getBySHA1(final String idSHA1) throws IOException{
+        final BigEntry entry = getEntryBySHA1(idSHA1);
+        return entry == null ? null : read(entry);
+    }
+
+    /**
+     * @param path  The full path/name as written on the index
+     * @return The entry with this path or null when not found
+     */
+    public BigEntry getEntry(final String path){
+        final int number = index.find(path);
+        return number < 0 ? null : index.getEntry(number);
+    }
+
+    /**
+     * @param idSHA1 The SHA1 signature in hex format
+     * @return The first entry with this signature or null when not found
+     */
+    public BigEntry getEntryBySHA1(final String idSHA1){
+        final int number = index.findBySHA1(idSHA1);
+        return number < 0 ? null : index.getEntry(number);
+    }
+
+    /**
+     * @return All the entries in the order they were written, each one is
+     * created when it is read from the list
+     */
+    public List<BigEntry> getEntries(){
+        return index.asList();
+    }
+
+    /**
+     * @return The compact index with the entries of the archive
+     */
+    public BigCompactIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Reads and decompresses the content of an entry.
+     * @param entry An entry of this archive
+     * @return The decompressed bytes. When a cache is used, the array is
+     * shared and must not be modified.
+     * @throws IOException When the data couldn't be read
+     */
+    public byte[] read(final BigEntry entry) throws IOException{
+        if(entry.isSolid() == false){
+            return readBlock(entry);
+        }
+        // the files of a solid block are usually read one after the other
+        final BigEntry last = solidEntries.get();
+        byte[] block = solidBlocks.get();
+        if(last == null || last.getBlockKey() != entry.getBlockKey()){
+            block = readBlock(entry);
+            solidEntries.set(entry);
+            solidBlocks.set(block);
+        }
+        if(entry.getOffset() + entry.getLength() > block.length){
+            throw new IOException("BIG-READER-237 - File is outside of its solid block: " 
+                    + entry.getPath());
+        }
+        return Arrays.copyOfRange(block, (int) entry.getOffset(), 
+                (int) (entry.getOffset() + entry.getLength()));
+    }
+
+    /**
+     * Reads and decompresses a whole block.
+     */
+    private byte[] readBlock(final BigEntry entry) throws IOException{
+        final BigCache currentCache = cache;
+        if(currentCache != null){
+            final byte[] cached = currentCache.get(entry.getBlockKey());
+            if(cached != null){
+                return cached;
+            }
+        }
+        final ByteBuffer data = readCompressed(entry);
+        final byte[] result = codecs.decompress(data);
+        if(currentCache != null){
+            currentCache.put(entry.getBlockKey(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Opens an entry for streaming, the bytes are decompressed while they
+     * are read. Many streams can be open at the same time, each one must be
+     * used by a single thread.
+     * @param entry An entry of this archive
+     * @return A stream with the content of the file, it must be closed
+     * after use
+     * @throws IOException When the data couldn't be read
+     */
+    public InputStream openEntry(final BigEntry entry) throws IOException{
+        // the block is decompressed as a whole
+        if(entry.isSolid()){
+            return new ByteArrayInputStream(read(entry));
+        }
+        final BigCache currentCache = cache;
+        if(currentCache != null){
+            final byte[] cached = currentCache.get(entry.getBlockKey());
+            if(cached != null){
+                return new ByteArrayInputStream(cached);
+            }
+        }
+        if(memoryMapped){
+            return codecs.open(new BigBufferInputStream(segments.slice(
+                    entry.getSegment(), entry.getDataStart(), entry.getDataEnd())));
+        }
+        return codecs.open(new BigChannelInputStream(
+                segments.getChannel(entry.getSegment()),
+                entry.getDataStart(), entry.getDataEnd()));
+    }
+
+    /**
+     * Keeps the content of the files that were read in memory, so that
+     * reading them again is faster. The cache must not be shared with
+     * other archives.
+     * @param cache The cache to use, or null to disable caching
+     */
+    public void setCache(final BigCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return The cache of decompressed files, null when not used
+     */
+    public BigCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return The codecs that read the blocks, a dictionary codec must be
+     * registered here before its blocks can be read
+     */
+    public BigCodecs getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Reads the compressed bytes of an entry into the buffer of the
+     * current thread.
+     */
+    private ByteBuffer readCompressed(final BigEntry entry) throws IOException{
+        final long length = entry.getDataEnd() - entry.getDataStart();
+        if(length < 0 || length > Integer.MAX_VALUE){
+            throw new IOException("BIG-READER-196 - Invalid entry: " + entry.getPath());
+        }
+        if(memoryMapped){
+            return segments.slice(entry.getSegment(), entry.getDataStart(),
+                    entry.getDataEnd());
+        }
+        ByteBuffer buffer = buffers.get();
+        if(buffer == null || buffer.capacity() < length){
+            buffer = ByteBuffer.allocate((int) Math.max(length, 8192));
+            buffers.set(buffer);
+        }
+        while(true){
+            buffer.clear();
+            buffer.limit((int) length);
+            try{
+                readFully(segments.getChannel(entry.getSegment()), buffer, entry);
+                buffer.flip();
+                return buffer;
+            }catch(ClosedChannelException e){
+                // the current thread was the one interrupted, don't hide that
+                if(closed || e instanceof ClosedByInterruptException
+                        || Thread.currentThread().isInterrupted()){
+                    throw e;
+                }
+                // closed by another thread that was interrupted, the
+                // segment is opened again on the next attempt
+            }
+        }
+    }
+
+    private static void readFully(final FileChannel source, final ByteBuffer buffer,
+            final BigEntry entry) throws IOException{
+        long position = entry.getDataStart();
+        while(buffer.hasRemaining()){
+            final int count = source.read(buffer, position);
+            if(count < 0){
+                throw new IOException("BIG-READER-209 - Unexpected end of file: "
+                        + entry.getPath());
+            }
+            position += count;
+        }
+    }
+
+    /**
+     * @return The number of files inside the archive
+     */
+    public int size(){
+        return index.size();
+    }
+
+    /**
+     * @return The .big file that is being read
+     */
+    public File getFile() {
+        return fileMainBIG;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        segments.close();
+    }
+}
@@ -13,6 +13,9 @@ package big;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  *
@@ -21,7 +24,10 @@ import java.io.IOException;
 public class LOC {
 
     static BigZip big;
-    static long counter = 0;
+    // updated by all the threads that read the archive
+    static final AtomicLong 
+            counter = new AtomicLong(),
+            counterFiles = new AtomicLong();
     static boolean debug = false;
     
     /**
@@ -58,38 +64,37 @@ public class LOC {
 
         // open the big archive
         big = new BigZip(file);
-        // initialize the file iterator
-        big.getNextFileInitiate();
         // get some output about the processing progress
         launchMonitoringThread();
-        // now get to read the source code files in sequence
+        // now get to read the source code files, using all processors
         processFiles(big);
-        // conclude operations
-        big.getNextFileConclude();
+        big.close();
     }
 
     /**
-     * Go through all the files on the archive
+     * Go through all the files on the archive, each thread reads its own
+     * part of the index
      * @param big           The bigzip we want to process
-     * @throws IOException  If something went wrong
      */
-    private static void processFiles(BigZip big) throws IOException {
-        String sourceCode;
+    private static void processFiles(BigZip big) {
         // iterate all files inside the archive
-        while((sourceCode = big.getNextSourceCodeFile()) != null){
-            processSourceCode(sourceCode);
-        }
-      
+        big.contents().parallel().forEach(
+                new Consumer<Map.Entry<BigEntry, byte[]>>() {
+            @Override
+            public void accept(final Map.Entry<BigEntry, byte[]> file) {
+                processSourceCode(new String(file.getValue()));
+            }
+        });
     }
     
     /**
      * Do the line counting
      * @param sourceCode    The code to process
-     * @throws IOException  Error when something didn't work as expected
      */
-    private static void processSourceCode(final String sourceCode) throws IOException {
+    private static void processSourceCode(final String sourceCode) {
         // count lines, including empty ones
-        counter += utils.text.getLOC(sourceCode);
+        counter.addAndGet(utils.text.getLOC(sourceCode));
+        counterFiles.incrementAndGet();
     }
 
     /**
@@ -101,16 +106,16 @@ public class LOC {
                 public void run(){
                     utils.time.wait(3);
                     while(true){
-                        long counterFiles = big.getGetNextFileCounter();
+                        final long files = counterFiles.get();
                         
                         // get the number properly formatted
                         final String valueLines 
-                                = utils.text.convertToHumanNumbers(counter);
+                                = utils.text.convertToHumanNumbers(counter.get());
                         final String valueFiles 
-                                = utils.text.convertToHumanNumbers(counterFiles);
+                                = utils.text.convertToHumanNumbers(files);
                         
                         // only show after we indexed some results
-                        if(counterFiles > 1){
+                        if(files > 1){
                             System.out.println(valueFiles + " files: "
                                     + valueLines
                                     + " lines");
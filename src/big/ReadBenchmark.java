@@ -0,0 +1,131 @@
+/*
+ * SPDXVersion: SPDX-1.1
+ * Creator: Organization: TripleCheck (contact@triplecheck.de)
+ * Created: 2026-10-17T11:00:00Z
+ * LicenseName: EUPL-1.1-without-appendix
+ * FileName: ReadBenchmark.java
+ * FileType: SOURCE
+ * FileCopyrightText: <text> Copyright 2026 TripleCheck </text>
+ * FileComment: <text> Compares the speed of reading all entries from a BIG
+ * archive using one read() call per byte (how it was done before) against
+ * the positional channel reads that are used now.</text>
+ */
+
+package big;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * Usage: java -cp big.jar big.ReadBenchmark [archive.big] [rounds]
+ */
+public class ReadBenchmark {
+
+    /**
+     * Runs both read paths over every entry of the archive
+     * @param args  Optional location of the archive (default: run/test.big)
+     * and number of rounds (default: 5)
+     * @throws Exception When the archive couldn't be read
+     */
+    public static void main(String[] args) throws Exception {
+        final File file = new File(args.length > 0 ? args[0] : "run/test.big");
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        if(file.exists() == false){
+            System.err.println("Error, couldn't find: " + file.getAbsolutePath());
+            return;
+        }
+        final BigZip big = new BigZip(file);
+        final ArrayList<long[]> coordinates = getCoordinates(big);
+        System.out.println("Entries: " + coordinates.size() + ", rounds: " + rounds);
+
+        // the first round of each warms up the JIT and the page cache
+        long bytesOld = 0, bytesNew = 0;
+        long timeOld = 0, timeNew = 0;
+        for(int round = 0; round <= rounds; round++){
+            long time = System.nanoTime();
+            long bytes = 0;
+            for(final long[] entry : coordinates){
+                bytes += extractPerByte(file, entry[0], entry[1]).length();
+            }
+            if(round > 0){
+                timeOld += System.nanoTime() - time;
+                bytesOld += bytes;
+            }
+            time = System.nanoTime();
+            bytes = 0;
+            for(final long[] entry : coordinates){
+                bytes += big.extractBytesToRAM(entry[0], entry[1]).length();
+            }
+            if(round > 0){
+                timeNew += System.nanoTime() - time;
+                bytesNew += bytes;
+            }
+        }
+        big.close();
+        output("per-byte read()", timeOld, bytesOld, rounds);
+        output("positional reads", timeNew, bytesNew, rounds);
+        if(bytesOld != bytesNew){
+            System.err.println("Error, both methods returned different content!");
+        }
+    }
+
+    /**
+     * Collects the start and end of each entry from the index
+     */
+    private static ArrayList<long[]> getCoordinates(final BigZip big) throws IOException{
+        final ArrayList<long[]> result = new ArrayList<>();
+        final BigIndexReader reader = new BigIndexReader(big.getFileIndex(), 0);
+        try{
+            long[] previous = null;
+            while(reader.next()){
+                final long start = Long.parseLong(reader.getLine().substring(0, 15));
+                if(previous != null){
+                    previous[1] = start;
+                }
+                previous = new long[]{start + 7, big.getFile().length()};
+                result.add(previous);
+            }
+        }finally{
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * The previous implementation of extractBytesToRAM, one call per byte.
+     */
+    private static String extractPerByte(final File fileMainBIG, 
+            final long startPosition, final long endPosition) 
+            throws IOException, ArchiveException{
+        final RandomAccessFile dataBIG = new RandomAccessFile(fileMainBIG, "r");
+        dataBIG.seek(startPosition);
+        final ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+        while(dataBIG.getFilePointer() < endPosition){
+            byteOutput.write(dataBIG.read());
+        }
+        dataBIG.close();
+        final ByteArrayOutputStream textOutput = new ByteArrayOutputStream();
+        final ArchiveInputStream archiveStream = new ArchiveStreamFactory()
+                .createArchiveInputStream("zip", 
+                        new ByteArrayInputStream(byteOutput.toByteArray()));
+        archiveStream.getNextEntry();
+        IOUtils.copy(archiveStream, textOutput);
+        archiveStream.close();
+        return textOutput.toString();
+    }
+
+    private static void output(final String title, final long time, 
+            final long bytes, final int rounds){
+        final double millis = time / 1000000.0 / rounds;
+        System.out.println(String.format("%-18s %10.1f ms/round %10.1f MB/s",
+                title, millis, bytes / 1048576.0 / (time / 1000000000.0)));
+    }
+}
@@ -33,13 +33,16 @@
 
 package big;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.compress.archivers.ArchiveException;
@@ -151,6 +154,97 @@ public class zip {
     }
     
     
+    /**
+     * Decompresses the single file stored inside a zip container that is
+     * kept in memory, as used for each binary block of a BIG archive.
+     * @param data  The bytes of the zip container, from position to limit
+     * @return      The bytes of the stored file
+     * @throws IOException When the container is not valid
+     */
+    public static byte[] decompress(final ByteBuffer data) throws IOException{
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(
+                Math.max(32, data.remaining() * 3));
+        final InputStream archiveStream = open(new BigBufferInputStream(data));
+        try{
+            IOUtils.copy(archiveStream, output);
+        }finally{
+            archiveStream.close();
+        }
+        return output.toByteArray();
+    }
+
+
+    /**
+     * Opens the single file stored inside a zip container, the bytes are
+     * decompressed while they are read from the returned stream.
+     * @param container The bytes of the zip container
+     * @return A stream with the bytes of the stored file, closing it also
+     * closes the container stream
+     * @throws IOException When the container is not valid
+     */
+    public static InputStream open(final InputStream container) throws IOException{
+        try {
+            final ArchiveInputStream archiveStream = new ArchiveStreamFactory()
+                    .createArchiveInputStream("zip", container);
+            if(archiveStream.getNextEntry() == null){
+                archiveStream.close();
+                throw new IOException("ZIP185 - Empty zip container");
+            }
+            return archiveStream;
+        } catch (ArchiveException ex) {
+            throw new IOException(ex);
+        }
+    }
+    
+    
+    /**
+     * Starts a zip container with a single file on the given stream.
+     * @param target    Where the container is written, it is not closed
+     * @param name      The name of the file inside the container
+     * @return The stream that receives the uncompressed content, closing it
+     * finishes the container
+     * @throws IOException When the container couldn't be created
+     */
+    public static OutputStream create(final OutputStream target, final String name)
+            throws IOException{
+        final ArchiveOutputStream archive;
+        try {
+            archive = new ArchiveStreamFactory()
+                    .createArchiveOutputStream(ArchiveStreamFactory.ZIP, 
+                            new FilterOutputStream(target){
+                // the target stays open for the next block
+                @Override
+                public void write(final byte[] bytes, final int offset, 
+                        final int length) throws IOException {
+                    out.write(bytes, offset, length);
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            });
+        } catch (ArchiveException ex) {
+            throw new IOException(ex);
+        }
+        archive.putArchiveEntry(new ZipArchiveEntry(name));
+        return new FilterOutputStream(archive){
+            @Override
+            public void write(final byte[] bytes, final int offset, 
+                    final int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+            
+            @Override
+            public void close() throws IOException {
+                archive.closeArchiveEntry();
+                archive.finish();
+                archive.close();
+            }
+        };
+    }
+    
+    
     /**
      * Do a simple test with the compression and decompression, please verify
      * that the files exist on the location where this program is running or
@@ -10,9 +10,35 @@
  * FileComment: <text> Basic tests to the software functionality. </text>
  */
 
+import GUI.BigTreeModel;
+import big.BigAdaptiveSelector;
+import big.BigCache;
+import big.BigCodecStatistics;
+import big.BigCodecs;
+import big.BigCompactIndex;
+import big.BigContentIndex;
+import big.BigEntry;
+import big.BigEntrySpliterator;
+import big.BigGrep;
+import big.BigMatch;
+import big.BigMappedFile;
+import big.BigTrigramIndex;
 import big.BigZip;
+import big.BigZipReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -180,4 +206,1049 @@ public class bigZipUnitTest {
     }
     
     
+    @Test
+    public void testFindBySHA1() throws IOException{
+        System.out.println("[TEST] Finding files by their SHA1 signature");
+        
+        final String SHA1 = 
+                utils.hashing.checksum.generateFileChecksum("SHA-1", fileSingle);
+        final String content = utils.files.readAsString(fileSingle);
+        
+        db.quickStart();
+        db.quickWrite(content, SHA1, "/first/LICENSE");
+        db.quickEnd();
+        
+        // the sidecar is created when the write session ends
+        final File fileSHA1 = new File(folderTest, "zipTest.big-sha1idx");
+        assert(fileSHA1.exists());
+        assert(db.findFileWithSpecificSHA1(SHA1).equals("/first/LICENSE"));
+        assert(db.findFileWithSpecificSHA1(SHA1.toUpperCase()) != null);
+        
+        // lines added to the text index by other means are picked up too
+        utils.files.addTextToFile(fileZipIndex, "\n000000000000000 " 
+                + SHA1 + " /second/LICENSE");
+        assert(db.findFilesWithSpecificSHA1(SHA1).size() == 2);
+        
+        // the sidecar can be deleted and is rebuilt on demand
+        fileSHA1.delete();
+        assert(db.findFilesWithSpecificSHA1(SHA1).get(1).equals("/second/LICENSE"));
+        assert(db.findFileWithSpecificSHA1(
+                "0000000000000000000000000000000000000000") == null);
+    }
+    
+    @Test
+    public void testReplacedIndex() throws IOException{
+        System.out.println("[TEST] Rebuilding the sidecars of a replaced index");
+        
+        db.setContentIndex(true);
+        db.quickStart();
+        for(int i = 1; i <= 2; i++){
+            db.quickWrite("old " + i, String.format("%040d", i), "/old" + i + ".txt");
+        }
+        db.quickEnd();
+        assert(db.findFileWithSpecificSHA1(String.format("%040d", 1)).equals("/old1.txt"));
+        assert(db.getFileAsText("/old2.txt").equals("old 2"));
+        assert(db.grep("old 1").count() == 1);
+        final File fileTrigrams = new File(folderTest, "zipTest.big-trigramidx");
+        assert(new BigTrigramIndex(fileZipIndex, fileTrigrams).find("old").length == 2);
+        db.close();
+        
+        // another archive with more lines takes the place of the first one
+        final File fileOther = new File(folderTest, "other.big");
+        final BigZip other = new BigZip(fileOther);
+        other.quickStart();
+        for(int i = 1; i <= 3; i++){
+            other.quickWrite("new " + i, String.format("%040d", i + 10),
+                    "/replaced/new" + i + ".txt");
+        }
+        other.quickEnd();
+        other.close();
+        Files.copy(fileOther.toPath(), fileZip.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(new File(folderTest, "other.big-index").toPath(),
+                fileZipIndex.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        
+        // the old sidecars don't match the index and are not used
+        db = new BigZip(fileZip);
+        assert(db.findFileWithSpecificSHA1(String.format("%040d", 1)) == null);
+        for(int i = 1; i <= 3; i++){
+            assert(db.findFileWithSpecificSHA1(String.format("%040d", i + 10))
+                    .equals("/replaced/new" + i + ".txt"));
+            assert(db.getFileAsText("/replaced/new" + i + ".txt").equals("new " + i));
+        }
+        assert(db.getFileAsText("/old2.txt") == null);
+        assert(db.grep("old 1").count() == 0);
+        assert(db.grep("new 3").count() == 1);
+        final BigTrigramIndex trigrams = new BigTrigramIndex(fileZipIndex, fileTrigrams);
+        assert(trigrams.find("old").length == 0);
+        assert(trigrams.find("replaced").length == 3);
+    }
+    
+    
+    @Test
+    public void testGetFileByExactPath() throws IOException{
+        System.out.println("[TEST] Finding files by their full path");
+        
+        final String SHA1 = 
+                utils.hashing.checksum.generateFileChecksum("SHA-1", fileSingle);
+        
+        db.quickStart();
+        db.quickWrite(fileSingle, SHA1, "/other/MY-LICENSE");
+        db.quickWrite(fileSingle, SHA1, "/LICENSE");
+        db.quickEnd();
+        
+        assert(new File(folderTest, "zipTest.big-pathidx").exists());
+        // only the exact path matches, not the ones ending with the same text
+        assert(db.getFileAsText("/LICENSE").contains("The original code"));
+        assert(db.getFileAsText("LICENSE") == null);
+        assert(db.getFileAsText("/other/MY-LICENSE") != null);
+    }
+    
+    @Test
+    public void testEntrySize() throws IOException{
+        System.out.println("[TEST] Recording the compressed size on the index");
+        
+        db.quickStart();
+        db.quickWrite("first", null, "/first.txt");
+        db.quickWrite("second", null, "/second.txt");
+        db.quickEnd();
+        
+        // the last line knows where its data ends, without a next entry
+        final String content = utils.files.readAsString(fileZipIndex);
+        final String line = content.substring(content.lastIndexOf('\n') + 1);
+        assert(line.contains("/second.txt\tsize="));
+        final BigEntry entry = BigEntry.parse(line, 1, -1);
+        assert(entry.getDataEnd() == fileZip.length());
+        final List<BigEntry> entries = db.entries().collect(Collectors.toList());
+        assert(entries.get(1).getDataEnd() == fileZip.length());
+        
+        // bytes of a write that didn't finish are not read with the entry
+        utils.files.addTextToFile(fileZip, "BIG81nb unfinished write");
+        assert(db.getFileAsText("/second.txt").equals("second"));
+        assert(db.extractBytesToRAM(entries.get(1)).equals("second"));
+        
+        // stored content might have the magic signature, the size is used
+        db.setCodec(BigCodecs.stored());
+        db.quickStart();
+        db.quickWrite("before BIG81nb after", null, "/stored.txt");
+        db.quickWrite("next", null, "/next.txt");
+        db.quickEnd();
+        final BigEntry stored = db.entries().collect(Collectors.toList()).get(2);
+        assert(db.extractBytesToRAM(stored.getPosition())
+                .equals("before BIG81nb after"));
+    }
+    
+    
+    @Test
+    public void testSharedReader() throws Exception{
+        System.out.println("[TEST] Reading the same archive from many threads");
+        
+        final String SHA1 = 
+                utils.hashing.checksum.generateFileChecksum("SHA-1", fileSingle);
+        db.quickStart();
+        db.quickWrite(fileSingle, SHA1, "/LICENSE");
+        db.quickWrite(utils.files.readAsString(fileSingle) + "!", 
+                "0123456789012345678901234567890123456789", "/LICENSE-2");
+        db.quickEnd();
+        
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(reader.size() == 2);
+        final Thread[] threads = new Thread[8];
+        final boolean[] failed = new boolean[1];
+        for(int i = 0; i < threads.length; i++){
+            threads[i] = new Thread(){
+                @Override
+                public void run(){
+                    try{
+                        for(int j = 0; j < 100; j++){
+                            final String text1 = new String(reader.get("/LICENSE"));
+                            final String text2 = new String(reader.getBySHA1(
+                                "0123456789012345678901234567890123456789"));
+                            if(text2.equals(text1 + "!") == false){
+                                failed[0] = true;
+                            }
+                        }
+                    }catch(Exception e){
+                        failed[0] = true;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(final Thread thread : threads){
+            thread.join();
+        }
+        reader.close();
+        assert(failed[0] == false);
+        assert(reader.getEntry("/missing") == null);
+    }
+    
+    @Test
+    public void testInterruptedReader() throws Exception{
+        System.out.println("[TEST] Interrupting a thread that reads the archive");
+        
+        db.quickStart();
+        db.quickWrite("first", null, "/first.txt");
+        db.quickEnd();
+        
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(new String(reader.get("/first.txt")).equals("first"));
+        final Exception[] thrown = new Exception[1];
+        final Thread thread = new Thread(){
+            @Override
+            public void run(){
+                // the read closes the shared channel and must give up
+                Thread.currentThread().interrupt();
+                try{
+                    reader.get("/first.txt");
+                }catch(Exception e){
+                    thrown[0] = e;
+                }
+            }
+        };
+        // a thread that keeps trying doesn't stop the tests from ending
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(5000);
+        assert(thread.isAlive() == false);
+        assert(thrown[0] instanceof ClosedChannelException);
+        // the other threads open the channel again
+        assert(new String(reader.get("/first.txt")).equals("first"));
+        reader.close();
+    }
+    
+    
+    @Test
+    public void testExtractToFile() throws IOException{
+        System.out.println("[TEST] Extracting a file without temporary copies");
+        
+        final String SHA1 = 
+                utils.hashing.checksum.generateFileChecksum("SHA-1", fileSingle);
+        db.quickStart();
+        db.quickWrite(fileSingle, SHA1, "/LICENSE");
+        db.quickEnd();
+        
+        final File fileTarget = new File(folderTest, "extracted.txt");
+        assert(db.getFile("/LICENSE", fileTarget));
+        assert(utils.files.readAsString(fileTarget)
+                .equals(utils.files.readAsString(fileSingle)));
+        assert(new File("temp.zip").exists() == false);
+        assert(db.openEntry("/missing") == null);
+    }
+    
+    @Test
+    public void testAddingFolderParallel() throws IOException{
+        System.out.println("[TEST] Adding a folder with several threads");
+        
+        db.addFolder(folderWithFiles, 4);
+        
+        // each file has its own restore point on the log
+        final File folder = new File(folderWithFiles, "commons-compress-1.8.1");
+        final String contentLog = utils.files.readAsString(fileZipLog);
+        assert(contentLog.contains("start: 00000"));
+        assert(contentLog.split("start: ").length > folder.listFiles().length);
+        assert(contentLog.split("ended: ").length > folder.listFiles().length);
+        assert(contentLog.trim().substring(contentLog.trim().lastIndexOf('\n') + 1)
+                .startsWith("ended: "));
+        
+        // files were written in the order of the crawl
+        final String contentIndex = utils.files.readAsString(fileZipIndex);
+        int last = -1;
+        for(final File file : folder.listFiles()){
+            final String path = "/" + file.getName();
+            final int position = contentIndex.indexOf(" " + path + "\t");
+            assert(position > last);
+            last = position;
+            assert(db.getFileAsText(path).equals(utils.files.readAsString(file)));
+        }
+        
+        // the same paths as when adding the folder with a single thread
+        final BigZip sequential = new BigZip(new File(folderTest, "sequential.big"));
+        sequential.addFolder(folderWithFiles);
+        final List<String> paths = sequential.entries().map(BigEntry::getPath)
+                .collect(Collectors.toList());
+        assert(paths.equals(db.entries().map(BigEntry::getPath)
+                .collect(Collectors.toList())));
+        // nothing left from the previous call changes the paths
+        sequential.addFolder(folder, 4);
+        final List<String> again = sequential.entries().map(BigEntry::getPath)
+                .collect(Collectors.toList());
+        assert(again.subList(paths.size(), again.size()).equals(paths));
+        sequential.close();
+    }
+    
+    @Test
+    public void testFileSizeLimit() throws IOException{
+        System.out.println("[TEST] Refusing files bigger than the limit");
+        
+        final String SHA1 = "0123456789012345678901234567890123456789";
+        db.setFileSizeLimit(100);
+        db.quickStart();
+        assert(db.quickWrite(fileSingle, SHA1, "/LICENSE") == false);
+        // streams are only found to be too big while they are written
+        final String textBig = utils.files.readAsString(fileSingle);
+        assert(db.quickWrite(textBig, SHA1, "/big.txt") == false);
+        assert(db.quickWrite("first", SHA1, "/first.txt"));
+        assert(db.quickWrite("second", SHA1, "/second.txt"));
+        db.quickEnd();
+        
+        assert(db.getFileAsText("/LICENSE") == null);
+        assert(db.getFileAsText("/big.txt") == null);
+        assert(db.getFileAsText("/first.txt").equals("first"));
+        assert(db.getFileAsText("/second.txt").equals("second"));
+    }
+    
+    @Test
+    public void testCache() throws IOException{
+        System.out.println("[TEST] Keeping decompressed files in memory");
+        
+        final BigCache cache = new BigCache(1000);
+        cache.put(1, new byte[400]);
+        cache.put(2, new byte[400]);
+        assert(cache.get(1) != null);
+        assert(cache.get(3) == null);
+        // the budget is shared, the least recently used entry goes first
+        cache.put(3, new byte[400]);
+        assert(cache.getEvictions() == 1);
+        assert(cache.get(2) == null);
+        assert(cache.get(1) != null);
+        assert(cache.get(3) != null);
+        assert(cache.getSize() == 800);
+        // a single entry can use the whole budget, bigger ones are not kept
+        cache.put(4, new byte[1000]);
+        assert(cache.getSize() == 1000);
+        assert(cache.getEvictions() == 3);
+        cache.put(5, new byte[1001]);
+        assert(cache.get(5) == null);
+        assert(cache.get(4) != null);
+        assert(cache.getHits() == 4);
+        assert(cache.getMisses() == 3);
+        cache.clear();
+        assert(cache.getSize() == 0);
+        assert(cache.getHits() == 4);
+        
+        // files read again by the archive come from the cache
+        final BigCache cacheFiles = new BigCache(1 << 20);
+        db.setCache(cacheFiles);
+        db.quickStart();
+        db.quickWrite("first", null, "/first.txt");
+        db.quickWrite("second", null, "/second.txt");
+        db.quickEnd();
+        assert(db.getFileAsText("/first.txt").equals("first"));
+        assert(db.getFileAsText("/first.txt").equals("first"));
+        assert(db.getFileAsText("/second.txt").equals("second"));
+        assert(cacheFiles.getHits() == 1);
+        assert(cacheFiles.getMisses() == 2);
+        assert(cacheFiles.getSize() == "first".length() + "second".length());
+    }
+    
+    @Test
+    public void testGroupCommit() throws IOException{
+        System.out.println("[TEST] Writing files in batches with checkpoints");
+        
+        final String SHA1 = "0123456789012345678901234567890123456789";
+        db.setGroupCommit(3, 60000, false);
+        db.quickStart();
+        for(int i = 1; i <= 4; i++){
+            assert(db.quickWrite("file " + i, SHA1, "/file" + i + ".txt"));
+        }
+        // only the first batch has a checkpoint, the last file is lost
+        // as if the program had crashed before writing the next one
+        final String contentLog = utils.files.readAsString(fileZipLog);
+        assert(contentLog.split("ended: ").length == 2);
+        
+        final BigZip db2 = new BigZip(fileZip);
+        db2.quickStart();
+        assert(db2.quickWrite("file 5", SHA1, "/file5.txt"));
+        db2.quickEnd();
+        assert(db2.getFileAsText("/file3.txt").equals("file 3"));
+        assert(db2.getFileAsText("/file4.txt") == null);
+        assert(db2.getFileAsText("/file5.txt").equals("file 5"));
+        db2.close();
+    }
+    
+    @Test
+    public void testCrashRecovery() throws IOException{
+        System.out.println("[TEST] Recovering the sidecars after a crash");
+        
+        db.setGroupCommit(3, 60000, false);
+        db.setContentIndex(true);
+        db.quickStart();
+        for(int i = 1; i <= 4; i++){
+            assert(db.quickWrite("file " + i, null, "/file" + i + ".txt"));
+        }
+        // reading brings the sidecars up to date with the lost file
+        assert(db.getFileAsText("/file4.txt").equals("file 4"));
+        assert(db.grep("file 4").count() == 1);
+        
+        // the program crashed, the next start removes the last file
+        final BigZip restored = new BigZip(fileZip, true);
+        restored.quickStart();
+        final String longName = "/eeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeee";
+        for(int i = 1; i <= 3; i++){
+            assert(restored.quickWrite("after " + i, String.format("%040d", i),
+                    longName + i));
+        }
+        restored.quickEnd();
+        assert(restored.getFileAsText("/file4.txt") == null);
+        assert(restored.getFileAsText("/file3.txt").equals("file 3"));
+        for(int i = 1; i <= 3; i++){
+            assert(restored.getFileAsText(longName + i).equals("after " + i));
+        }
+        assert(restored.findFileWithSpecificSHA1(String.format("%040d", 2))
+                .equals(longName + 2));
+        assert(restored.grep("file 4").count() == 0);
+        assert(restored.grep("after 3").count() == 1);
+        restored.close();
+    }
+    
+    @Test
+    public void testDeduplication() throws Exception{
+        System.out.println("[TEST] Storing the same content only once");
+        
+        final String SHA1 = 
+                utils.hashing.checksum.generateFileChecksum("SHA-1", fileSingle);
+        db.setDeduplication(true);
+        db.quickStart();
+        db.quickWrite(fileSingle, SHA1, "/LICENSE");
+        final long sizeFirst = fileZip.length();
+        db.quickWrite(fileSingle, SHA1, "/copy/LICENSE");
+        db.quickWriteStreamStandalone(new java.io.FileInputStream(fileSingle), 
+                "/stream/LICENSE");
+        db.quickWrite("other", "0123456789012345678901234567890123456789", "/other.txt");
+        db.quickEnd();
+        
+        // a new session finds the stored content on the SHA1 sidecar
+        db.quickStart();
+        db.quickWrite(fileSingle, SHA1, "/later/LICENSE");
+        db.quickEnd();
+        
+        final String text = utils.files.readAsString(fileSingle);
+        assert(db.getFileAsText("/copy/LICENSE").equals(text));
+        assert(db.getFileAsText("/stream/LICENSE").equals(text));
+        assert(db.getFileAsText("/later/LICENSE").equals(text));
+        assert(db.getFileAsText("/other.txt").equals("other"));
+        assert(fileZip.length() < sizeFirst * 2);
+        
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(reader.size() == 5);
+        assert(new String(reader.get("/later/LICENSE")).equals(text));
+        assert(new String(reader.get("/other.txt")).equals("other"));
+        reader.close();
+    }
+    
+    @Test
+    public void testRawDeflate() throws IOException{
+        System.out.println("[TEST] Mixing zip and raw deflate blocks");
+        
+        final String SHA1 = 
+                utils.hashing.checksum.generateFileChecksum("SHA-1", fileSingle);
+        db.quickStart();
+        db.quickWrite(fileSingle, SHA1, "/zip/LICENSE");
+        final long sizeZip = fileZip.length();
+        db.setRawDeflate(true);
+        db.quickWrite(fileSingle, SHA1, "/raw/LICENSE");
+        db.quickWrite("", SHA1, "/raw/empty.txt");
+        db.quickEnd();
+        
+        // the compact block is smaller than the zip container
+        assert(fileZip.length() - sizeZip < sizeZip);
+        final String text = utils.files.readAsString(fileSingle);
+        assert(db.getFileAsText("/zip/LICENSE").equals(text));
+        assert(db.getFileAsText("/raw/LICENSE").equals(text));
+        assert(db.getFileAsText("/raw/empty.txt").isEmpty());
+        final File fileTarget = new File(folderTest, "extracted.txt");
+        assert(db.getFile("/raw/LICENSE", fileTarget));
+        assert(utils.files.readAsString(fileTarget).equals(text));
+        
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(new String(reader.get("/raw/LICENSE")).equals(text));
+        reader.close();
+    }
+    
+    @Test
+    public void testCodecs() throws IOException{
+        System.out.println("[TEST] Choosing the codec of each file");
+        
+        db.quickStart();
+        db.setCodecSelector(new BigAdaptiveSelector(BigCodecs.deflate(9), 
+                BigCodecs.stored(), 0.9));
+        // random bytes don't compress, text does
+        final byte[] random = new byte[20000];
+        new java.util.Random(7).nextBytes(random);
+        db.quickWriteGenericStream(new ByteArrayInputStream(random), null, 
+                "/random.bin");
+        db.quickWrite(fileSingle, null, "/LICENSE");
+        final byte[] dictionary = utils.files.readAsString(fileSingle).getBytes();
+        db.setCodec(BigCodecs.dictionary(dictionary, 9));
+        db.quickWrite(fileSingle, null, "/dictionary/LICENSE");
+        db.quickEnd();
+        
+        final BigCodecStatistics statistics = db.getCodecs().getStatistics();
+        assert(statistics.getWrites("stored") == 1);
+        assert(statistics.getWrites("deflate") == 1);
+        assert(statistics.getBytesOut("stored") == random.length + 1);
+        // the whole file is on the dictionary
+        assert(statistics.getBytesOut("dictionary") < statistics.getBytesOut("deflate"));
+        
+        final String text = utils.files.readAsString(fileSingle);
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(reader.getEntry("/random.bin").getCodec().equals("stored"));
+        assert(reader.getEntry("/LICENSE").getCodec().equals("deflate"));
+        assert(java.util.Arrays.equals(reader.get("/random.bin"), random));
+        assert(new String(reader.get("/LICENSE")).equals(text));
+        // blocks with a dictionary need the same dictionary to be read
+        try{
+            reader.get("/dictionary/LICENSE");
+            assert(false);
+        }catch(IOException e){
+        }
+        reader.getCodecs().register(BigCodecs.dictionary(dictionary, 9));
+        assert(new String(reader.get("/dictionary/LICENSE")).equals(text));
+        reader.close();
+        assert(db.getFileAsText("/dictionary/LICENSE").equals(text));
+    }
+    
+    @Test
+    public void testTrainedDictionary() throws IOException{
+        System.out.println("[TEST] Training a dictionary for small files");
+        
+        final String license = utils.files.readAsString(fileSingle);
+        db.quickStart();
+        db.setRawDeflate(true);
+        for(int i = 0; i < 20; i++){
+            db.quickWrite(license + "\nclass Sample" + i + " {}\n", null, 
+                    "/before/" + i + ".java");
+        }
+        assert(db.trainDictionary(10));
+        final long sizeBefore = fileZip.length();
+        for(int i = 0; i < 20; i++){
+            db.quickWrite(license + "\nclass Other" + i + " {}\n", null, 
+                    "/after/" + i + ".java");
+        }
+        db.quickEnd();
+        // the shared header is on the dictionary
+        final BigCodecStatistics statistics = db.getCodecs().getStatistics();
+        assert(statistics.getBytesOut("dictionary") * 2 
+                < statistics.getBytesOut("deflate"));
+        assert(fileZip.length() - sizeBefore < sizeBefore / 2);
+        
+        // the dictionary is found again when the archive is opened
+        final BigZip archive = new BigZip(fileZip);
+        assert(archive.getFileAsText("/after/7.java")
+                .equals(license + "\nclass Other7 {}\n"));
+        assert(archive.getDictionary() != null);
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(new String(reader.get("/after/19.java"))
+                .equals(license + "\nclass Other19 {}\n"));
+        assert(new String(reader.get("/before/3.java"))
+                .equals(license + "\nclass Sample3 {}\n"));
+        reader.close();
+        archive.close();
+    }
+    
+    @Test
+    public void testSolidBlocks() throws IOException{
+        System.out.println("[TEST] Packing small files on solid blocks");
+        
+        db.setSolidBlocks(65536);
+        db.setGroupCommit(1000, 60000, false);
+        db.setDeduplication(true);
+        db.quickStart();
+        final StringBuilder big = new StringBuilder();
+        for(int i = 0; i < 20000; i++){
+            big.append(i % 10);
+        }
+        for(int i = 0; i < 100; i++){
+            db.quickWrite("Small file number " + (i % 90), null, "/small/" + i);
+            if(i == 50){
+                db.quickWrite(big.toString(), null, "/big.txt");
+            }
+        }
+        db.quickEnd();
+        
+        // the small files share a few blocks, repeated content is not stored
+        final String contentIndex = utils.files.readAsString(fileZipIndex);
+        assert(contentIndex.contains("\toffset="));
+        assert(fileZip.length() < 2000);
+        final String[] lines = contentIndex.split("\n");
+        assert(lines[lines.length - 1].contains(" /small/99\t"));
+        BigEntry original = null;
+        for(final String line : lines){
+            if(line.contains(" /small/9\t")){
+                original = BigEntry.parse(line, 0, -1);
+            }
+        }
+        final BigEntry duplicate = BigEntry.parse(lines[lines.length - 1], 0, -1);
+        assert(duplicate.getPosition() == original.getPosition());
+        assert(duplicate.getOffset() == original.getOffset());
+        
+        assert(db.getFileAsText("/small/7").equals("Small file number 7"));
+        assert(db.getFileAsText("/small/97").equals("Small file number 7"));
+        assert(db.getFileAsText("/big.txt").equals(big.toString()));
+        // reading in sequence
+        db.getNextFileInitiate();
+        int count = 0;
+        String content;
+        while((content = db.getNextSourceCodeFile()) != null){
+            assert(content.startsWith("Small file number ") || content.length() == 20000);
+            count++;
+        }
+        db.getNextFileConclude();
+        assert(count == 101);
+        
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(new String(reader.get("/small/51")).equals("Small file number 51"));
+        assert(new String(reader.get("/small/0")).equals("Small file number 0"));
+        reader.close();
+        
+        // small files from several threads are packed in the crawl order
+        db.addFolder(folderWithFiles, 4);
+        final File file = new File(folderWithFiles, "commons-compress-1.8.1/NOTICE.txt");
+        assert(db.getFileAsText("/NOTICE.txt")
+                .equals(utils.files.readAsString(file)));
+        assert(utils.files.readAsString(fileZipIndex)
+                .contains(" /NOTICE.txt\tsize="));
+    }
+    
+    
+    @Test
+    public void testSegments() throws IOException{
+        System.out.println("[TEST] Splitting the archive on segments");
+        
+        db.setSegmentSize(4096);
+        db.setCodec(BigCodecs.stored());
+        db.setGroupCommit(1000, 60000, false);
+        db.quickStart();
+        final StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 100; i++){
+            text.append("line ").append(i).append('\n');
+        }
+        for(int i = 0; i < 20; i++){
+            db.quickWrite(i + text.toString(), null, "/file/" + i);
+        }
+        db.quickEnd();
+        
+        // the .big file is the first segment, the others follow it
+        final File segment1 = new File(folderTest, "zipTest.big.001");
+        final File segment3 = new File(folderTest, "zipTest.big.003");
+        assert(segment1.exists());
+        assert(segment3.exists());
+        assert(fileZip.length() < 4096 + 1000);
+        assert(utils.files.readAsString(fileZipIndex).contains("\tseg=3"));
+        
+        assert(db.getFileAsText("/file/0").equals(0 + text.toString()));
+        assert(db.getFileAsText("/file/19").equals(19 + text.toString()));
+        db.getNextFileInitiate();
+        int count = 0;
+        while(db.getNextSourceCodeFile() != null){
+            count++;
+        }
+        db.getNextFileConclude();
+        assert(count == 20);
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(reader.getEntry("/file/18").getSegment() == 3);
+        assert(new String(reader.get("/file/18")).equals(18 + text.toString()));
+        assert(new String(reader.get("/file/1")).equals(1 + text.toString()));
+        reader.close();
+        
+        // a batch that never finished is removed, including new segments
+        db.quickStart();
+        for(int i = 20; i < 40; i++){
+            db.quickWrite(i + text.toString(), null, "/file/" + i);
+        }
+        assert(new File(folderTest, "zipTest.big.006").exists());
+        final long sealed = segment3.length();
+        final BigZip restored = new BigZip(fileZip, true);
+        restored.setSegmentSize(4096);
+        restored.quickStart();
+        assert(new File(folderTest, "zipTest.big.006").exists() == false);
+        restored.quickWrite("after the crash", null, "/file/after");
+        restored.quickEnd();
+        // full segments are not written again
+        assert(segment3.length() == sealed);
+        assert(new File(folderTest, "zipTest.big.004").length() > 0);
+        assert(new File(folderTest, "zipTest.big.005").exists() == false);
+        assert(restored.getFileAsText("/file/after").equals("after the crash"));
+        assert(restored.getFileAsText("/file/19").equals(19 + text.toString()));
+        assert(restored.getFileAsText("/file/30") == null);
+        restored.close();
+    }
+    
+    
+    @Test
+    public void testParallelEntries() throws IOException{
+        System.out.println("[TEST] Reading the entries in parallel");
+        
+        db.setSolidBlocks(16384);
+        db.setSegmentSize(65536);
+        db.setGroupCommit(1000, 60000, false);
+        db.quickStart();
+        for(int i = 0; i < 3000; i++){
+            // every tenth file is too big for the solid blocks
+            final String text = i % 10 == 0 ? "File " + i + new String(new char[5000]) 
+                    : "File " + i;
+            db.quickWrite(text, null, "/parallel/" + i);
+        }
+        db.quickEnd();
+        
+        // the index is split in ranges of lines
+        final Spliterator<BigEntry> entries = new BigEntrySpliterator(fileZip,
+                fileZipIndex, 0, fileZipIndex.length());
+        assert(entries.trySplit() != null);
+        assert(db.entries().count() == 3000);
+        assert(db.entries().parallel().map(BigEntry::getPath)
+                .collect(Collectors.toSet()).size() == 3000);
+        
+        // each part reads the content with its own channels
+        final Map<String, String> contents = db.contents().parallel()
+                .collect(Collectors.toMap(
+                        e -> e.getKey().getPath(), 
+                        e -> new String(e.getValue()).trim()));
+        assert(contents.size() == 3000);
+        for(int i = 0; i < 3000; i++){
+            assert(contents.get("/parallel/" + i).equals("File " + i));
+        }
+    }
+    
+    
+    @Test
+    public void testPrefetch() throws IOException{
+        System.out.println("[TEST] Reading ahead during the sequential iteration");
+        
+        db.setSolidBlocks(16384);
+        db.setGroupCommit(1000, 60000, false);
+        db.quickStart();
+        for(int i = 0; i < 500; i++){
+            // every tenth file is too big for the solid blocks
+            final String text = i % 10 == 0 ? "File " + i + new String(new char[5000]) 
+                    : "File " + i;
+            db.quickWrite(text, null, "/prefetch/" + i);
+        }
+        db.quickEnd();
+        
+        // with the decompression ahead and without, a tiny memory limit
+        // still gives all the files
+        final boolean[] modes = {true, false};
+        for(final boolean decompress : modes){
+            db.setPrefetch(8, decompress ? 1 : 1000000, decompress);
+            db.getNextFileInitiate();
+            int count = 0;
+            String content;
+            while((content = db.getNextSourceCodeFile()) != null){
+                assert(content.trim().equals("File " + count));
+                count++;
+            }
+            db.getNextFileConclude();
+            assert(count == 500);
+        }
+        
+        // stopping early is fine too
+        db.getNextFileInitiate();
+        assert(db.getNextSourceCodeFile().trim().equals("File 0"));
+        db.getNextFileConclude();
+    }
+    
+    @Test
+    public void testMemoryMapped() throws IOException{
+        System.out.println("[TEST] Reading the archive from memory mappings");
+        
+        db.setSolidBlocks(16384);
+        db.setSegmentSize(65536);
+        db.setGroupCommit(1000, 60000, false);
+        db.quickStart();
+        for(int i = 0; i < 300; i++){
+            // every tenth file is too big for the solid blocks
+            final String text = i % 10 == 0 ? "File " + i + new String(new char[5000]) 
+                    : "File " + i;
+            db.quickWrite(text, null, "/mapped/" + i);
+        }
+        db.quickEnd();
+        
+        // the same content from the mappings as from the reads
+        db.setMemoryMapped(true);
+        final BigZipReader reader = new BigZipReader(fileZip, true);
+        for(int i = 0; i < 300; i++){
+            final String path = "/mapped/" + i;
+            assert(db.getFileAsText(path).trim().equals("File " + i));
+            assert(new String(reader.get(path)).trim().equals("File " + i));
+        }
+        reader.close();
+        db.setMemoryMapped(false);
+        
+        // blocks crossing the border of a window are copied
+        final BigMappedFile mapped = new BigMappedFile(fileZip, 4096);
+        final byte[] data = java.nio.file.Files.readAllBytes(fileZip.toPath());
+        final java.nio.ByteBuffer slice = mapped.slice(4000, 5000);
+        assert(slice.remaining() == 1000);
+        for(int i = 0; i < 1000; i++){
+            assert(slice.get(i) == data[4000 + i]);
+        }
+        assert(mapped.slice(4096, 4100).get(0) == data[4096]);
+        mapped.close();
+    }
+    
+    @Test
+    public void testCompactIndex() throws IOException{
+        System.out.println("[TEST] Keeping the index on primitive arrays");
+        
+        db.setSolidBlocks(16384);
+        db.setSegmentSize(65536);
+        db.setGroupCommit(1000, 60000, false);
+        db.quickStart();
+        for(int i = 0; i < 1000; i++){
+            // every tenth file is too big for the solid blocks
+            final String text = i % 10 == 0 ? "File " + i + new String(new char[5000]) 
+                    : "File " + i;
+            db.quickWrite(text, null, "/compact/folder" + (i / 100) + "/" + i);
+        }
+        // the same path and the same content written again
+        db.quickWrite("Again", null, "/compact/folder0/1");
+        db.quickWrite("File 2", null, "/compact/copy");
+        db.quickEnd();
+        
+        // the same entries as the text index, with all their fields
+        final BigCompactIndex index = new BigCompactIndex(fileZip);
+        final java.util.List<BigEntry> expected = db.entries()
+                .collect(Collectors.toList());
+        assert(index.size() == 1002);
+        assert(expected.size() == 1002);
+        for(int i = 0; i < expected.size(); i++){
+            final BigEntry entry = index.getEntry(i);
+            final BigEntry original = expected.get(i);
+            assert(entry.getPath().equals(original.getPath()));
+            assert(entry.getSignature().equals(original.getSignature()));
+            assert(entry.getPosition() == original.getPosition());
+            assert(entry.getDataEnd() == original.getDataEnd());
+            assert(entry.getSize() == original.getSize());
+            assert(entry.getSegment() == original.getSegment());
+            assert(entry.getOffset() == original.getOffset());
+            assert(entry.getLength() == original.getLength());
+            assert(entry.getBlockKey() == original.getBlockKey());
+            assert(String.valueOf(entry.getCodec())
+                    .equals(String.valueOf(original.getCodec())));
+        }
+        
+        // the first file written with a path or signature is found
+        assert(index.find("/compact/folder0/1") == 1);
+        assert(index.find("/compact/folder9/999") == 999);
+        assert(index.find("/compact/missing") == -1);
+        assert(index.findBySHA1(expected.get(1001).getSignature()) == 2);
+        assert(index.findBySHA1(expected.get(500).getSignature().toUpperCase()) == 500);
+        assert(index.findBySHA1("0123456789012345678901234567890123456789") == -1);
+        
+        // the paths shrink and the memory is known up front
+        assert(index.getMemoryUsage() < 1002 * 100);
+        
+        // the reader uses it too
+        final BigZipReader reader = new BigZipReader(fileZip);
+        assert(new String(reader.get("/compact/folder0/1")).equals("File 1"));
+        assert(reader.getEntries().get(1001).getPath().equals("/compact/copy"));
+        reader.close();
+    }
+    
+    @Test
+    public void testTreeModel() throws IOException{
+        System.out.println("[TEST] Showing the archive as a tree of folders");
+        
+        db.quickStart();
+        db.quickWrite("b", null, "/tree/b.txt");
+        db.quickWrite("a", null, "/tree/sub/a.txt");
+        db.quickWrite("c", null, "/tree/A.txt");
+        db.quickWrite("d", null, "/other/d.txt");
+        db.quickWrite("e", null, "root.txt");
+        db.quickEnd();
+        
+        final BigCompactIndex index = new BigCompactIndex(fileZip);
+        final BigTreeModel model = new BigTreeModel(index, "archive");
+        assert(model.getFileCount() == 5);
+        // folders first, then files, each sorted by name
+        final Object root = model.getRoot();
+        assert(root.toString().equals("archive"));
+        assert(model.getChildCount(root) == 3);
+        assert(model.getChild(root, 0).toString().equals("other"));
+        assert(model.getChild(root, 1).toString().equals("tree"));
+        assert(model.getChild(root, 2).toString().equals("root.txt"));
+        assert(model.isLeaf(model.getChild(root, 2)));
+        final Object tree = model.getChild(root, 1);
+        assert(model.isLeaf(tree) == false);
+        assert(model.getChildCount(tree) == 3);
+        assert(model.getChild(tree, 0).toString().equals("sub"));
+        assert(model.getChild(tree, 1).toString().equals("A.txt"));
+        assert(model.getChild(tree, 2).toString().equals("b.txt"));
+        assert(model.getIndexOfChild(tree, model.getChild(tree, 2)) == 2);
+        
+        // search results are a flat list with the whole paths
+        final BigTreeModel results = new BigTreeModel(index, "archive",
+                new int[]{0, 2});
+        assert(results.getChildCount(results.getRoot()) == 2);
+        assert(results.getChild(results.getRoot(), 1).toString()
+                .equals("/tree/A.txt"));
+    }
+    
+    @Test
+    public void testTrigramIndex() throws IOException{
+        System.out.println("[TEST] Searching the paths with trigrams");
+        
+        db.quickStart();
+        for(int i = 0; i < 200; i++){
+            db.quickWrite("File " + i, null, "/trigram/Folder" + (i % 7) + "/file" + i + ".txt");
+        }
+        db.quickEnd();
+        
+        final File fileSidecar = new File(fileZip.getParentFile(),
+                fileZip.getName() + "-trigramidx");
+        final BigTrigramIndex trigrams = new BigTrigramIndex(fileZipIndex, fileSidecar);
+        final BigCompactIndex index = new BigCompactIndex(fileZip);
+        // the candidates include every match, case is ignored
+        final long[] found = trigrams.find("folder3/FILE1");
+        int matches = 0;
+        for(final long ordinal : found){
+            final String path = index.getPath(index.findByOrdinal(ordinal));
+            if(path.toLowerCase().contains("folder3/file1")){
+                matches++;
+            }
+        }
+        int expected = 0;
+        for(int i = 0; i < 200; i++){
+            if(i % 7 == 3 && Integer.toString(i).startsWith("1")){
+                expected++;
+            }
+        }
+        assert(matches == expected);
+        assert(found.length < 200);
+        assert(trigrams.find("missing").length == 0);
+        // too short for trigrams
+        assert(trigrams.find("fo") == null);
+        
+        // new files are added to the sidecar kept on disk
+        db.quickStart();
+        db.quickWrite("New", null, "/trigram/later/brand-new.txt");
+        db.quickEnd();
+        final BigTrigramIndex reopened = new BigTrigramIndex(fileZipIndex, fileSidecar);
+        assert(reopened.find("brand-new").length == 1);
+        assert(reopened.find("brand-new")[0] == 200);
+        assert(reopened.getRunCount() == 1);
+        assert(reopened.find("folder3/file1").length == found.length);
+    }
+    
+    @Test
+    public void testContentIndex() throws IOException{
+        System.out.println("[TEST] Searching the content with trigrams");
+        
+        db.setContentIndex(true);
+        db.quickStart();
+        for(int i = 0; i < 100; i++){
+            final String text = i % 10 == 4 
+                    ? "int Count" + i + " = needle(" + i + ");"
+                    : "int other" + i + " = haystack(" + i + ");";
+            db.quickWrite(text, null, "/content/file" + i + ".c");
+        }
+        // binary files are not indexed but still searched
+        db.quickWrite("needle(\u0000binary", null, "/content/binary.bin");
+        db.quickEnd();
+        
+        final List<String> found = db.grep("needle(").map(BigEntry::getPath)
+                .collect(Collectors.toList());
+        assert(found.size() == 11);
+        assert(found.get(0).equals("/content/file4.c"));
+        assert(found.get(10).equals("/content/binary.bin"));
+        // only the matching files and the binary one are candidates
+        final BigContentIndex index = new BigContentIndex(db, new File(
+                fileZip.getParentFile(), fileZip.getName() + "-contentidx"));
+        assert(index.find("needle(").length == 11);
+        assert(index.find("NEEDLE").length == 11);
+        assert(index.find("missing").length == 1);
+        assert(index.find(Pattern.compile("count\\d+ = needle",
+                Pattern.CASE_INSENSITIVE)).length == 11);
+        // nothing required by the expression, every file is a candidate
+        assert(index.find(Pattern.compile("needle|haystack")) == null);
+        assert(db.grep(Pattern.compile("Count[0-9]+ = needle\\(4")).count() == 2);
+        assert(db.grep(Pattern.compile("(needle|haystack)\\(99")).count() == 1);
+        assert(db.grep("count4").count() == 0);
+        
+        // new files are added to the last run of the sidecar
+        db.quickStart();
+        db.quickWrite("late needle(", null, "/content/late.c");
+        db.quickEnd();
+        final BigZip reopened = new BigZip(fileZip, true);
+        assert(reopened.grep("needle(").count() == 12);
+        assert(index.find("needle(").length == 12);
+        assert(index.getRunCount() == 1);
+        
+        // adding files one at a time doesn't write the last run each time
+        final File fileSidecar = new File(fileZip.getParentFile(),
+                fileZip.getName() + "-contentidx");
+        final long length = fileSidecar.length();
+        for(int i = 0; i < 5; i++){
+            db.quickStart();
+            db.quickWrite("one needle(" + i, null, "/content/one" + i + ".c");
+            db.quickEnd();
+        }
+        assert(fileSidecar.length() == length);
+        assert(db.grep("needle(").count() == 17);
+        // the run is written when the archive is closed
+        db.close();
+        assert(fileSidecar.length() > length);
+        final BigContentIndex closed = new BigContentIndex(db, fileSidecar);
+        assert(closed.getRunCount() == 1);
+        assert(closed.find("needle(").length == 17);
+    }
+    
+    @Test
+    public void testGrep() throws IOException{
+        System.out.println("[TEST] Searching the lines of all files");
+        
+        // small files on solid blocks and larger ones on their own
+        db.setSolidBlocks(4096);
+        db.quickStart();
+        for(int i = 0; i < 60; i++){
+            final StringBuilder text = new StringBuilder();
+            for(int line = 1; line <= (i % 2 == 0 ? 5 : 2000); line++){
+                text.append(line == 3 && i % 3 == 0 ? "call Target(" + i + ")"
+                        : "line " + line).append("\r\n");
+            }
+            db.quickWrite(text.toString(), null, "/grep/file" + i + ".txt");
+        }
+        db.quickWriteGenericStream(new ByteArrayInputStream("first\nsecond caf\u00e9 ol\u00e9"
+                .getBytes(StandardCharsets.UTF_8)), null, "/grep/accents.txt");
+        db.quickEnd();
+        
+        final List<BigMatch> matches = Collections.synchronizedList(new ArrayList<>());
+        final BigGrep grep = new BigGrep("target(", true);
+        grep.setThreads(4);
+        assert(db.grep(grep, matches::add) == 20);
+        assert(matches.size() == 20);
+        for(final BigMatch match : matches){
+            assert(match.getLine() == 3);
+            assert(match.getSnippet().startsWith("call Target("));
+            assert(match.getSnippet().endsWith(")"));
+        }
+        // the case is respected unless ignored
+        assert(db.grep(new BigGrep("target(", false), matches::add) == 0);
+        
+        // expressions see the bytes, text that is not ASCII as UTF-8
+        matches.clear();
+        assert(db.grep(new BigGrep(Pattern.compile("caf\u00e9 o.\u00e9")),
+                matches::add) == 1);
+        assert(matches.get(0).getPath().equals("/grep/accents.txt"));
+        assert(matches.get(0).getLine() == 2);
+        assert(matches.get(0).getSnippet().equals("second caf\u00e9 ol\u00e9"));
+        assert(db.grep(new BigGrep(Pattern.compile("^line 1999$",
+                Pattern.MULTILINE)), match -> {}) == 30);
+        // like grep, the anchors match on every line without the flag
+        assert(db.grep(new BigGrep(Pattern.compile("^line 1999$")),
+                match -> {}) == 30);
+        matches.clear();
+        assert(db.grep(new BigGrep(Pattern.compile("^second")), matches::add) == 1);
+        assert(matches.get(0).getLine() == 2);
+        assert(db.grep(new BigGrep(Pattern.compile("^first$")), match -> {}) == 1);
+        
+        // the same results with the content index
+        db.setContentIndex(true);
+        assert(db.grep(new BigGrep("Target(", false), match -> {}) == 20);
+        assert(db.grep(new BigGrep(Pattern.compile("caf\u00e9 o.\u00e9")),
+                match -> {}) == 1);
+    }
+    
 }